@@ -0,0 +1,98 @@
+package io.emax.cosigner.client.benchmarks;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.api.core.CurrencyParametersRecipient;
+import io.emax.cosigner.client.currency.CurrencyParametersCodec;
+import io.emax.cosigner.client.currency.CurrencyParametersCodec.PooledContent;
+import io.emax.cosigner.common.Json;
+
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.util.StringContentProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request serialization and parsing.
+ *
+ * <p>The *RequestBody benchmarks compare building a request body the old way, through a String that
+ * is encoded again by StringContentProvider, with the codec. Run with -prof gc to compare the bytes
+ * allocated per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+  private CurrencyParameters params;
+  private String paramString;
+
+  /**
+   * Builds a payout sized request, a handful of source accounts and recipients.
+   */
+  @Setup
+  public void setup() {
+    params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    params.setUserKey("deadbeefdeadbeefdeadbeefdeadbeefdeadbeefdeadbeefdeadbeefdeadbeef");
+    params.setAccount(Collections.singletonList("1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2"));
+    List<CurrencyParametersRecipient> recipients = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      CurrencyParametersRecipient recipient = new CurrencyParametersRecipient();
+      recipient.setRecipientAddress("3J98t1WpEZ73CNmQviecrnyiWrnqRhWNL" + i);
+      recipient.setAmount("0.0" + i);
+      recipients.add(recipient);
+    }
+    params.setReceivingAccount(recipients);
+    paramString = Json.stringifyObject(CurrencyParameters.class, params);
+  }
+
+  @Benchmark
+  public String stringifyParams() {
+    return Json.stringifyObject(CurrencyParameters.class, params);
+  }
+
+  @Benchmark
+  public Object objectifyParams() {
+    return Json.objectifyString(CurrencyParameters.class, paramString);
+  }
+
+  @Benchmark
+  public Object codecFromString() {
+    return CurrencyParametersCodec.fromString(paramString);
+  }
+
+  @Benchmark
+  public ContentProvider stringRequestBody() {
+    return new StringContentProvider(Json.stringifyObject(CurrencyParameters.class, params),
+        "UTF-8");
+  }
+
+  @Benchmark
+  public ContentProvider codecRequestBody() throws Exception {
+    return CurrencyParametersCodec.toContent(params);
+  }
+
+  @Benchmark
+  public ContentProvider pooledRequestBody() throws Exception {
+    PooledContent body = CurrencyParametersCodec.toPooledContent(params);
+    // Stands in for the exchange completing, so the next call reuses the buffer
+    body.release();
+    return body;
+  }
+}
@@ -0,0 +1,83 @@
+package io.emax.cosigner.client.benchmarks;
+
+import io.emax.cosigner.client.currency.LocalSigner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local signing throughput.
+ *
+ * <p>singleSignature runs on one thread, so its score is signatures per second per core.
+ * batchSignature signs a 1000 input transaction across all cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalSignerBenchmark {
+  private static final int KEYS = 16;
+  private static final int BATCH_SIZE = 1000;
+  private static final String HASH =
+      "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+  private LocalSigner signer;
+  private List<Iterable<String>> batch;
+
+  /**
+   * Generates throwaway keys and a batch spread across them.
+   */
+  @Setup
+  public void setup() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(256);
+    Map<String, PrivateKey> keys = new HashMap<>();
+    for (int i = 0; i < KEYS; i++) {
+      keys.put("address" + i, generator.generateKeyPair().getPrivate());
+    }
+    signer = new LocalSigner(keys, 0);
+
+    batch = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      batch.add(Arrays.asList("address" + (i % KEYS), HASH));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    signer.close();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public String singleSignature() throws Exception {
+    return signer.sign("address0", HASH);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Iterable<Iterable<String>> batchSignature() throws Exception {
+    return signer.sign(batch);
+  }
+}
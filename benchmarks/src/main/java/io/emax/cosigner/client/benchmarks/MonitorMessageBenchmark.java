@@ -0,0 +1,119 @@
+package io.emax.cosigner.client.benchmarks;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.currency.MonitorListener;
+import io.emax.cosigner.client.currency.MonitorWebSocket;
+import io.emax.cosigner.common.Json;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of handling a websocket push, without the network.
+ *
+ * <p>The large balance pushes repeat the same amounts, like the server's periodic updates, so after
+ * the first one nothing changes. largeBalanceAllChanged alternates between two sets of amounts so
+ * every address changes on every push.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MonitorMessageBenchmark {
+  private static final String BALANCE_MESSAGE = "{\"currencySymbol\":\"BTC\","
+      + "\"receivingAccount\":[{\"recipientAddress\":\"1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2\","
+      + "\"amount\":\"12.50000000\"}]}";
+
+  private MonitorWebSocket socket;
+  private long transactionCount;
+  private String largeBalanceMessage;
+  private String[] changingBalanceMessages;
+  private byte[] largeBalanceBytes;
+  private long changes;
+  private long pushes;
+
+  /**
+   * Builds a balance push for 1000 addresses alongside the small messages.
+   */
+  @Setup
+  public void setup() {
+    socket = new MonitorWebSocket();
+    socket.addListener(new MonitorListener() {
+      @Override
+      public void onBalanceChange(String address, BigDecimal previous, BigDecimal balance) {
+        changes++;
+      }
+    });
+    largeBalanceMessage = largeBalance(0);
+    largeBalanceBytes = largeBalanceMessage.getBytes(StandardCharsets.UTF_8);
+    changingBalanceMessages = new String[] {largeBalance(0), largeBalance(1)};
+  }
+
+  private static String largeBalance(int offset) {
+    StringBuilder message = new StringBuilder("{\"currencySymbol\":\"BTC\",\"receivingAccount\":[");
+    for (int i = 0; i < 1000; i++) {
+      message.append(i == 0 ? "" : ",").append("{\"recipientAddress\":\"1BvBMSEYstWetqTFn5Au4m4GF")
+          .append(i).append("\",\"amount\":\"").append(i + offset).append(".00000000\"}");
+    }
+    return message.append("]}").toString();
+  }
+
+  @Benchmark
+  public MonitorWebSocket balanceUpdate() {
+    socket.onMessage(BALANCE_MESSAGE);
+    return socket;
+  }
+
+  /**
+   * The old handling of a large frame, decoded whole and bound to CurrencyParameters.
+   */
+  @Benchmark
+  public Object largeBalanceObjectify() {
+    return Json.objectifyString(CurrencyParameters.class, largeBalanceMessage);
+  }
+
+  @Benchmark
+  public MonitorWebSocket largeBalanceReader() {
+    socket.onMessage(new StringReader(largeBalanceMessage));
+    return socket;
+  }
+
+  @Benchmark
+  public long largeBalanceAllChanged() {
+    socket.onMessage(new StringReader(changingBalanceMessages[(int) (pushes++ & 1)]));
+    return changes;
+  }
+
+  @Benchmark
+  public MonitorWebSocket largeBalanceBinary() {
+    socket.onMessage(new ByteArrayInputStream(largeBalanceBytes));
+    return socket;
+  }
+
+  /**
+   * Every message carries a new transaction, so dedup never short-circuits it.
+   */
+  @Benchmark
+  public MonitorWebSocket newTransaction() {
+    socket.onMessage("{\"currencySymbol\":\"BTC\",\"transactionData\":\"" + transactionCount++
+        + "\",\"receivingAccount\":[{\"recipientAddress\":\"1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2\","
+        + "\"amount\":\"0.10000000\"}]}");
+    return socket;
+  }
+}
@@ -0,0 +1,70 @@
+package io.emax.cosigner.client.benchmarks;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.currency.CurrencyConnector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client overhead of a REST call against a server that answers instantly.
+ *
+ * <p>Sampled so the report includes p99. perCallConnector creates and closes a connector around
+ * every call, which is what every call used to cost before the HTTP client was shared.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RestRoundTripBenchmark {
+  private final StandInServer server = new StandInServer();
+  private CurrencyConnector connector;
+  private CurrencyParameters params;
+
+  /**
+   * Starts the stand-in server and a long-lived connector.
+   */
+  @Setup
+  public void setup() throws Exception {
+    server.start();
+    connector = new CurrencyConnector();
+    params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    params.setAccount(Collections.singletonList("1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2"));
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    connector.close();
+    server.stop();
+  }
+
+  @Benchmark
+  public String pooledConnector() throws Exception {
+    return connector.getBalance(params);
+  }
+
+  /**
+   * Pays for client start-up and shutdown on every call.
+   */
+  @Benchmark
+  public String perCallConnector() throws Exception {
+    try (CurrencyConnector perCall = new CurrencyConnector()) {
+      return perCall.getBalance(params);
+    }
+  }
+}
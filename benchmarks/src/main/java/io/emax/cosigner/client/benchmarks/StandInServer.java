@@ -0,0 +1,114 @@
+package io.emax.cosigner.client.benchmarks;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * In-process stand-in for the cosigner server, answering REST calls with canned responses.
+ *
+ * <p>Starting it points the client configuration at it, so it has to be started before anything
+ * in the forked benchmark JVM touches ClientConfiguration.
+ */
+public class StandInServer {
+  private static final Map<String, String> responses = new HashMap<>();
+
+  static {
+    responses.put("/rs/ListCurrencies", "{\"result\":\"[\\\"BTC\\\",\\\"ETH\\\"]\"}");
+    responses.put("/rs/GetBalance", "{\"result\":\"12.50000000\"}");
+    responses.put("/rs/GetNewAddress", "{\"result\":\"1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2\"}");
+  }
+
+  private final Server server = new Server();
+  private final ServerConnector connector = new ServerConnector(server);
+  private Semaphore capacity;
+  private long serviceTimeMillis;
+  private long queueTimeoutMillis;
+
+  /**
+   * Makes the server behave like one under load: it works on at most capacity requests at a time,
+   * each taking serviceTimeMillis. Requests beyond that queue, and get a 503 if they wait longer
+   * than queueTimeoutMillis.
+   */
+  public void injectLatency(int capacity, long serviceTimeMillis, long queueTimeoutMillis) {
+    this.capacity = new Semaphore(capacity, true);
+    this.serviceTimeMillis = serviceTimeMillis;
+    this.queueTimeoutMillis = queueTimeoutMillis;
+  }
+
+  public void start() throws Exception {
+    start("");
+  }
+
+  /**
+   * Starts the server on a free port and writes a client config that talks to it in plain HTTP.
+   *
+   * @param extraProperties additional client settings, one per line.
+   */
+  public void start(String extraProperties) throws Exception {
+    server.addConnector(connector);
+    server.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+          HttpServletResponse response) throws IOException {
+        try (InputStream body = request.getInputStream()) {
+          byte[] discard = new byte[4096];
+          while (body.read(discard) != -1) {
+            continue;
+          }
+        }
+        baseRequest.setHandled(true);
+        if (capacity != null) {
+          try {
+            if (!capacity.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+              response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+              return;
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          try {
+            Thread.sleep(serviceTimeMillis);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } finally {
+            capacity.release();
+          }
+        }
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("application/json");
+        try (Writer writer = response.getWriter()) {
+          writer.write(responses.getOrDefault(target, "{\"result\":\"ok\"}"));
+        }
+      }
+    });
+    server.start();
+
+    Path config = Files.createTempFile("cosigner-client-bench", ".properties");
+    config.toFile().deleteOnExit();
+    String properties = "rsServerUrl=http://localhost:" + connector.getLocalPort() + "\n"
+        + "wsServerUrl=ws://localhost:" + connector.getLocalPort() + "\n"
+        + "useTls=false\n" + extraProperties;
+    Files.write(config, properties.getBytes(StandardCharsets.UTF_8));
+    System.setProperty("cosigner.client.config", config.toString());
+  }
+
+  public void stop() throws Exception {
+    server.stop();
+  }
+}
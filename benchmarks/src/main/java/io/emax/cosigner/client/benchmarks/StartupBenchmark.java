@@ -0,0 +1,105 @@
+package io.emax.cosigner.client.benchmarks;
+
+import io.emax.cosigner.client.cli.Application;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock time of a one-off CLI command, from launching the JVM until it exits.
+ *
+ * <p>Each invocation runs "listCurrencies" in a fresh JVM against the stand-in server. With cds
+ * set, the JVM maps a class-data-sharing archive dumped from a training run of the same command,
+ * which is what the cosigner-client launcher does. Needs JDK 13 or later and has to run from
+ * benchmarks.jar, archives can't be built for a classpath of directories.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+  @Param({"false", "true"})
+  public boolean cds;
+
+  private final StandInServer server = new StandInServer();
+  private Path archive;
+  private Path log;
+  private List<String> command;
+
+  /**
+   * Starts the server and, for the cds runs, dumps the archive.
+   */
+  @Setup
+  public void setup() throws Exception {
+    server.start();
+    log = Files.createTempFile("cosigner-client-startup", ".log");
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    String classpath = new File(
+        Application.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    List<String> launch = Arrays.asList(
+        "-Dcosigner.client.config=" + System.getProperty("cosigner.client.config"),
+        "-cp", classpath, Application.class.getName(), "listCurrencies");
+
+    command = new ArrayList<>();
+    command.add(java);
+    if (cds) {
+      archive = Files.createTempFile("cosigner-client", ".jsa");
+      List<String> training = new ArrayList<>();
+      training.add(java);
+      training.add("-XX:ArchiveClassesAtExit=" + archive);
+      training.addAll(launch);
+      run(training);
+      command.add("-XX:SharedArchiveFile=" + archive);
+      command.add("-Xshare:on");
+    }
+    command.addAll(launch);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    server.stop();
+    Files.deleteIfExists(log);
+    if (archive != null) {
+      Files.deleteIfExists(archive);
+    }
+  }
+
+  @Benchmark
+  public int listCurrencies() throws Exception {
+    return run(command);
+  }
+
+  private int run(List<String> command) throws IOException, InterruptedException {
+    Process process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile()))
+        .start();
+    int exitCode = process.waitFor();
+    if (exitCode != 0) {
+      throw new IllegalStateException("CLI exited with " + exitCode + ", see " + log);
+    }
+    return exitCode;
+  }
+}
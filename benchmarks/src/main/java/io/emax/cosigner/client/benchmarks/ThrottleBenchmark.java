@@ -0,0 +1,96 @@
+package io.emax.cosigner.client.benchmarks;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.currency.CurrencyConnector;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch job flooding GetBalance against a server that can only work on 8 requests at a time.
+ *
+ * <p>Without a limiter every thread piles onto the server, requests queue past the server's
+ * timeout and come back as 503s. With adaptive concurrency the connector backs off to what the
+ * server sustains. Compare the successes and failures counters between the two runs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class ThrottleBenchmark {
+  @Param({"false", "true"})
+  public boolean adaptive;
+
+  private final StandInServer server = new StandInServer();
+  private CurrencyConnector connector;
+  private CurrencyParameters params;
+
+  /**
+   * Outcome of the calls made by one thread.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Outcomes {
+    public long successes;
+    public long failures;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      successes = 0;
+      failures = 0;
+    }
+  }
+
+  /**
+   * Starts an overloaded stand-in server and a connector with or without adaptive concurrency.
+   */
+  @Setup
+  public void setup() throws Exception {
+    server.injectLatency(8, 10, 50);
+    server.start("useAdaptiveConcurrency=" + adaptive + "\n"
+        + "concurrencyInitialLimit=16\n"
+        + "concurrencyLatencyTarget=30\n");
+    connector = new CurrencyConnector();
+    params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    params.setAccount(Collections.singletonList("1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2"));
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    connector.close();
+    server.stop();
+  }
+
+  /**
+   * One GetBalance call, failures are counted rather than thrown.
+   */
+  @Benchmark
+  public void getBalance(Outcomes outcomes) {
+    try {
+      connector.getBalance(params);
+      outcomes.successes++;
+    } catch (Exception e) {
+      outcomes.failures++;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package io.emax.cosigner.client.benchmarks;
+
+import io.emax.cosigner.api.currency.Wallet;
+import io.emax.cosigner.client.currency.CurrencyConnector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repeated getWallets calls once currency packages have been discovered.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalletDiscoveryBenchmark {
+  private static final List<String> BTC = Collections.singletonList("BTC");
+
+  private final StandInServer server = new StandInServer();
+  private CurrencyConnector connector;
+
+  @Setup
+  public void setup() throws Exception {
+    server.start();
+    connector = new CurrencyConnector();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    connector.close();
+    server.stop();
+  }
+
+  @Benchmark
+  public Iterable<Wallet> allWallets() throws Exception {
+    return connector.getWallets(null, false);
+  }
+
+  @Benchmark
+  public Iterable<Wallet> supportedWallet() throws Exception {
+    return connector.getWallets(BTC, true);
+  }
+}
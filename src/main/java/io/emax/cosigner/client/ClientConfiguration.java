@@ -7,100 +7,731 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
+/**
+ * Client settings, read from cosigner-client.properties or the file named by
+ * -Dcosigner.client.config.
+ *
+ * <p>Each instance is a snapshot of the file as it was when the instance was created. With
+ * configReload set, the file is watched and re-read when it changes; instances created after that
+ * see the new values and reload listeners are handed the new snapshot.
+ */
 public class ClientConfiguration {
   private static final Logger logger = LoggerFactory.getLogger(ClientConfiguration.class);
-  private static boolean configLoaded = false;
+  private static final List<Consumer<ClientConfiguration>> reloadListeners =
+      new CopyOnWriteArrayList<>();
+  private static volatile Settings current;
 
   // Configuration data
-  private static String rsServerUrl = "https://localhost:8443";
-  private static String wsServerUrl = "wss://localhost:8443";
-  private static boolean useTls = true;
-  private static String tlsKeystore = "./cosigner.jks";
-  private static String tlsKeystorePassword = "cosigner";
-  private static String tlsCertAlias = "cosigner";
+  private final Settings settings;
 
+  /**
+   * One loaded version of the config file, never changed once published.
+   */
+  private static final class Settings {
+    private String rsServerUrl = "https://localhost:8443";
+    private String wsServerUrl = "wss://localhost:8443";
+    private boolean useTls = true;
+    private String tlsKeystore = "./cosigner.jks";
+    private String tlsKeystorePassword = "cosigner";
+    private String tlsCertAlias = "cosigner";
+    private int maxConnectionsPerDestination = 64;
+    private int maxRequestsQueuedPerDestination = 1024;
+    private long connectTimeout = 15000;
+    private long idleTimeout = 60000;
+    private int tlsSessionCacheSize = 1024;
+    private int tlsSessionTimeout = 86400;
+    private int maxRequestsInFlight = 1024;
+    private int maxResponseSize = 16 * 1024 * 1024;
+    private int batchChunkSize = 100;
+    private int monitorSessionsPerCurrency = 4;
+    private boolean monitorAutoReconnect = true;
+    private long monitorReconnectInitialDelay = 1000;
+    private long monitorReconnectMaxDelay = 60000;
+    private int monitorBackfillDepth = 100;
+    private int monitorBackfillParallelism = 4;
+    private int monitorDedupSize = 100000;
+    private long monitorDedupWindow = 7L * 24 * 60 * 60 * 1000;
+    private int monitorHistorySize = 1000;
+    private long currencyListTtl = 300000;
+    private boolean useResponseCache = false;
+    private int responseCacheSize = 10000;
+    private long responseCacheTtlListCurrencies = 300000;
+    private long responseCacheTtlListAllAddresses = 60000;
+    private long responseCacheTtlGetSigners = 600000;
+    private long responseCacheTtlGetTransaction = 30000;
+    private boolean useMonitorBalances = false;
+    private long monitorBalanceMaxAge = 30000;
+    private int workflowStageThreads = 4;
+    private int workflowQueueSize = 1000;
+    private int workflowMaxRetries = 3;
+    private long workflowRetryDelay = 1000;
+    private String journalDirectory = "./journal";
+    private long journalSegmentSize = 64L * 1024 * 1024;
+    private int journalMaxBatch = 1024;
+    private String signingKeystore = "./signing.jks";
+    private String signingKeystorePassword = "cosigner";
+    private int signingThreads = 0;
+    private String signingRecoverableCurrencies = "ETH";
+    private String metricsProvider = "builtin";
+    private String rateLimits = "";
+    private int rateLimitBurst = 10;
+    private boolean useAdaptiveConcurrency = false;
+    private int concurrencyInitialLimit = 16;
+    private int concurrencyMinLimit = 1;
+    private int concurrencyMaxLimit = 256;
+    private long concurrencyLatencyTarget = 2000;
+    private String nodeSelection = "round-robin";
+    private int nodeEjectionFailures = 3;
+    private long nodeEjectionTime = 30000;
+    private boolean pinTransactionStages = true;
+    private int batchParallelism = 8;
+    private int monitorBufferSize = 256;
+    private String monitorOverflowPolicy = "drop-oldest";
+    private boolean configReload = false;
+  }
+
+  public ClientConfiguration() {
+    settings = current();
+  }
+
+
+  /**
+   * The first REST server, rsServerUrl may list several separated by commas.
+   */
   public String getRsServerUrl() {
-    return rsServerUrl;
+    return getRsServerUrls().get(0);
   }
 
+  public List<String> getRsServerUrls() {
+    return splitUrls(settings.rsServerUrl);
+  }
+
+  /**
+   * The first websocket server, wsServerUrl may list several separated by commas.
+   */
   public String getWsServerUrl() {
-    return wsServerUrl;
+    return getWsServerUrls().get(0);
+  }
+
+  public List<String> getWsServerUrls() {
+    return splitUrls(settings.wsServerUrl);
+  }
+
+  private static List<String> splitUrls(String urls) {
+    List<String> split = new ArrayList<>();
+    for (String url : urls.split(",")) {
+      if (!url.trim().isEmpty()) {
+        split.add(url.trim());
+      }
+    }
+    if (split.isEmpty()) {
+      split.add(urls);
+    }
+    return split;
   }
 
   public boolean useTls() {
-    return useTls;
+    return settings.useTls;
   }
 
   public String getTlsKeystore() {
-    return tlsKeystore;
+    return settings.tlsKeystore;
   }
 
   public String getTlsKeystorePassword() {
-    return tlsKeystorePassword;
+    return settings.tlsKeystorePassword;
   }
 
   public String getTlsCertAlias() {
-    return tlsCertAlias;
+    return settings.tlsCertAlias;
+  }
+
+  public int getMaxConnectionsPerDestination() {
+    return settings.maxConnectionsPerDestination;
+  }
+
+  public int getMaxRequestsQueuedPerDestination() {
+    return settings.maxRequestsQueuedPerDestination;
+  }
+
+  public long getConnectTimeout() {
+    return settings.connectTimeout;
+  }
+
+  public long getIdleTimeout() {
+    return settings.idleTimeout;
+  }
+
+  public int getTlsSessionCacheSize() {
+    return settings.tlsSessionCacheSize;
+  }
+
+  public int getTlsSessionTimeout() {
+    return settings.tlsSessionTimeout;
+  }
+
+  public int getMaxRequestsInFlight() {
+    return settings.maxRequestsInFlight;
+  }
+
+  public int getMaxResponseSize() {
+    return settings.maxResponseSize;
+  }
+
+  public int getBatchChunkSize() {
+    return settings.batchChunkSize;
+  }
+
+  public int getMonitorSessionsPerCurrency() {
+    return settings.monitorSessionsPerCurrency;
+  }
+
+  public boolean useMonitorAutoReconnect() {
+    return settings.monitorAutoReconnect;
+  }
+
+  public long getMonitorReconnectInitialDelay() {
+    return settings.monitorReconnectInitialDelay;
+  }
+
+  public long getMonitorReconnectMaxDelay() {
+    return settings.monitorReconnectMaxDelay;
+  }
+
+  public int getMonitorBackfillDepth() {
+    return settings.monitorBackfillDepth;
+  }
+
+  public int getMonitorBackfillParallelism() {
+    return settings.monitorBackfillParallelism;
+  }
+
+  public int getMonitorDedupSize() {
+    return settings.monitorDedupSize;
+  }
+
+  public long getMonitorDedupWindow() {
+    return settings.monitorDedupWindow;
+  }
+
+  public int getMonitorHistorySize() {
+    return settings.monitorHistorySize;
+  }
+
+  public long getCurrencyListTtl() {
+    return settings.currencyListTtl;
+  }
+
+  public boolean useResponseCache() {
+    return settings.useResponseCache;
+  }
+
+  public int getResponseCacheSize() {
+    return settings.responseCacheSize;
+  }
+
+  public long getResponseCacheTtlListCurrencies() {
+    return settings.responseCacheTtlListCurrencies;
+  }
+
+  public long getResponseCacheTtlListAllAddresses() {
+    return settings.responseCacheTtlListAllAddresses;
+  }
+
+  public long getResponseCacheTtlGetSigners() {
+    return settings.responseCacheTtlGetSigners;
+  }
+
+  public long getResponseCacheTtlGetTransaction() {
+    return settings.responseCacheTtlGetTransaction;
+  }
+
+  public boolean useMonitorBalances() {
+    return settings.useMonitorBalances;
+  }
+
+  public long getMonitorBalanceMaxAge() {
+    return settings.monitorBalanceMaxAge;
+  }
+
+  public int getWorkflowStageThreads() {
+    return settings.workflowStageThreads;
+  }
+
+  public int getWorkflowQueueSize() {
+    return settings.workflowQueueSize;
+  }
+
+  public int getWorkflowMaxRetries() {
+    return settings.workflowMaxRetries;
   }
 
-  private static synchronized void loadConfig() {
-    if (!configLoaded) {
-      FileInputStream propertiesFile = null;
+  public long getWorkflowRetryDelay() {
+    return settings.workflowRetryDelay;
+  }
+
+  public String getJournalDirectory() {
+    return settings.journalDirectory;
+  }
+
+  public long getJournalSegmentSize() {
+    return settings.journalSegmentSize;
+  }
+
+  public int getJournalMaxBatch() {
+    return settings.journalMaxBatch;
+  }
+
+  public String getSigningKeystore() {
+    return settings.signingKeystore;
+  }
+
+  public String getSigningKeystorePassword() {
+    return settings.signingKeystorePassword;
+  }
+
+  public int getSigningThreads() {
+    return settings.signingThreads;
+  }
+
+  public String getSigningRecoverableCurrencies() {
+    return settings.signingRecoverableCurrencies;
+  }
+
+  public String getMetricsProvider() {
+    return settings.metricsProvider;
+  }
+
+  public String getRateLimits() {
+    return settings.rateLimits;
+  }
+
+  public int getRateLimitBurst() {
+    return settings.rateLimitBurst;
+  }
+
+  public boolean useAdaptiveConcurrency() {
+    return settings.useAdaptiveConcurrency;
+  }
+
+  public int getConcurrencyInitialLimit() {
+    return settings.concurrencyInitialLimit;
+  }
+
+  public int getConcurrencyMinLimit() {
+    return settings.concurrencyMinLimit;
+  }
+
+  public int getConcurrencyMaxLimit() {
+    return settings.concurrencyMaxLimit;
+  }
+
+  public long getConcurrencyLatencyTarget() {
+    return settings.concurrencyLatencyTarget;
+  }
+
+  public String getNodeSelection() {
+    return settings.nodeSelection;
+  }
+
+  public int getNodeEjectionFailures() {
+    return settings.nodeEjectionFailures;
+  }
+
+  public long getNodeEjectionTime() {
+    return settings.nodeEjectionTime;
+  }
+
+  public boolean usePinTransactionStages() {
+    return settings.pinTransactionStages;
+  }
+
+  public int getBatchParallelism() {
+    return settings.batchParallelism;
+  }
+
+  public int getMonitorBufferSize() {
+    return settings.monitorBufferSize;
+  }
+
+  public String getMonitorOverflowPolicy() {
+    return settings.monitorOverflowPolicy;
+  }
+
+  public boolean useConfigReload() {
+    return settings.configReload;
+  }
+
+  /**
+   * Registers a listener that is handed the new configuration after every successful reload, and
+   * starts watching the config file if configReload is set.
+   */
+  public static void addReloadListener(Consumer<ClientConfiguration> listener) {
+    reloadListeners.add(listener);
+    if (new ClientConfiguration().useConfigReload()) {
+      ConfigurationWatcher.start(Paths.get(getConfigPath()));
+    }
+  }
+
+  public static void removeReloadListener(Consumer<ClientConfiguration> listener) {
+    reloadListeners.remove(listener);
+  }
+
+  /**
+   * Reads the config file again and makes it the configuration new instances get.
+   *
+   * <p>If the file can't be read or has a bad value in it nothing changes, so a half written file
+   * never gets applied.
+   *
+   * @return true if the new configuration was applied.
+   */
+  public static synchronized boolean reload() {
+    Settings loaded = new Settings();
+    try {
+      read(loaded);
+    } catch (IOException | NumberFormatException e) {
+      logger.warn("Could not reload cosigner-client configuration, keeping the current one: {}",
+          e.toString());
+      return false;
+    }
+    current = loaded;
+    logger.info("Reloaded cosigner-client configuration.");
+
+    ClientConfiguration updated = new ClientConfiguration();
+    for (Consumer<ClientConfiguration> listener : reloadListeners) {
       try {
-        // Get the config file
-        String propertiesFilePath = "./cosigner-client.properties";
-        Properties cosignerProperties = new Properties();
-        propertiesFile = new FileInputStream(propertiesFilePath);
-        cosignerProperties.load(propertiesFile);
-        propertiesFile.close();
-
-        // Load config
-        // rsServerUrl
-        rsServerUrl = EnvironmentVariableParser
-            .resolveEnvVars(cosignerProperties.getProperty("rsServerUrl", rsServerUrl));
-
-        // wsServerUrl
-        wsServerUrl = EnvironmentVariableParser
-            .resolveEnvVars(cosignerProperties.getProperty("wsServerUrl", wsServerUrl));
-
-        // tlsKeystore
-        tlsKeystore = EnvironmentVariableParser
-            .resolveEnvVars(cosignerProperties.getProperty("tlsKeystore", tlsKeystore));
-
-        // tlsKeystorePassword
-        tlsKeystorePassword = EnvironmentVariableParser.resolveEnvVars(
-            cosignerProperties.getProperty("tlsKeystorePassword", tlsKeystorePassword));
-
-        // tlsCertAlias
-        tlsCertAlias = EnvironmentVariableParser
-            .resolveEnvVars(cosignerProperties.getProperty("tlsCertAlias", tlsCertAlias));
-
-        // useTls
-        useTls = Boolean.parseBoolean(EnvironmentVariableParser
-            .resolveEnvVars(cosignerProperties.getProperty("useTls", String.valueOf(useTls))));
-
-      } catch (IOException e) {
-        if (propertiesFile != null) {
+        listener.accept(updated);
+      } catch (RuntimeException e) {
+        logger.warn("Configuration reload listener failed", e);
+      }
+    }
+    return true;
+  }
+
+  static String getConfigPath() {
+    // Overridable with -Dcosigner.client.config=<path>
+    return System.getProperty("cosigner.client.config", "./cosigner-client.properties");
+  }
+
+  private static Settings current() {
+    Settings loaded = current;
+    if (loaded == null) {
+      synchronized (ClientConfiguration.class) {
+        if (current == null) {
+          // Parsed into its own object so a bad value can't leave half the file applied
+          Settings initial = new Settings();
           try {
-            propertiesFile.close();
-          } catch (IOException e1) {
-            StringWriter errors = new StringWriter();
-            e1.printStackTrace(new PrintWriter(errors));
-            logger.warn(errors.toString());
+            read(initial);
+          } catch (IOException e) {
+            logger.info("Could not load cosigner-client configuration, using defaults.");
+            initial = new Settings();
+          } catch (NumberFormatException e) {
+            logger.warn("Bad value in cosigner-client configuration, using defaults for every "
+                + "setting: {}", e.getMessage());
+            initial = new Settings();
           }
+          current = initial;
         }
-        logger.info("Could not load cosigner-client configuration, using defaults.");
+        loaded = current;
       }
-      configLoaded = true;
     }
+    return loaded;
   }
 
-  public ClientConfiguration() {
-    loadConfig();
+  private static void read(Settings loaded) throws IOException {
+    Properties cosignerProperties = new Properties();
+    try (FileInputStream propertiesFile = new FileInputStream(getConfigPath())) {
+      cosignerProperties.load(propertiesFile);
+    }
+
+    // Load config
+    // rsServerUrl
+    loaded.rsServerUrl = EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("rsServerUrl", loaded.rsServerUrl));
+
+    // wsServerUrl
+    loaded.wsServerUrl = EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("wsServerUrl", loaded.wsServerUrl));
+
+    // tlsKeystore
+    loaded.tlsKeystore = EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("tlsKeystore", loaded.tlsKeystore));
+
+    // tlsKeystorePassword
+    loaded.tlsKeystorePassword = EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("tlsKeystorePassword", loaded.tlsKeystorePassword));
+
+    // tlsCertAlias
+    loaded.tlsCertAlias = EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("tlsCertAlias", loaded.tlsCertAlias));
+
+    // useTls
+    loaded.useTls = Boolean.parseBoolean(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("useTls", String.valueOf(loaded.useTls))));
+
+    // maxConnectionsPerDestination
+    loaded.maxConnectionsPerDestination = Integer.parseInt(EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("maxConnectionsPerDestination",
+            String.valueOf(loaded.maxConnectionsPerDestination))));
+
+    // maxRequestsQueuedPerDestination
+    loaded.maxRequestsQueuedPerDestination = Integer.parseInt(EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("maxRequestsQueuedPerDestination",
+            String.valueOf(loaded.maxRequestsQueuedPerDestination))));
+
+    // connectTimeout
+    loaded.connectTimeout = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("connectTimeout", String.valueOf(loaded.connectTimeout))));
+
+    // idleTimeout
+    loaded.idleTimeout = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("idleTimeout", String.valueOf(loaded.idleTimeout))));
+
+    // tlsSessionCacheSize
+    loaded.tlsSessionCacheSize = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("tlsSessionCacheSize",
+            String.valueOf(loaded.tlsSessionCacheSize))));
+
+    // tlsSessionTimeout
+    loaded.tlsSessionTimeout = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("tlsSessionTimeout",
+            String.valueOf(loaded.tlsSessionTimeout))));
+
+    // maxRequestsInFlight
+    loaded.maxRequestsInFlight = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("maxRequestsInFlight",
+            String.valueOf(loaded.maxRequestsInFlight))));
+
+    // maxResponseSize
+    loaded.maxResponseSize = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("maxResponseSize",
+            String.valueOf(loaded.maxResponseSize))));
+
+    // batchChunkSize
+    loaded.batchChunkSize = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("batchChunkSize", String.valueOf(loaded.batchChunkSize))));
+
+    // monitorSessionsPerCurrency
+    loaded.monitorSessionsPerCurrency = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorSessionsPerCurrency",
+            String.valueOf(loaded.monitorSessionsPerCurrency))));
+
+    // monitorAutoReconnect
+    loaded.monitorAutoReconnect = Boolean.parseBoolean(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorAutoReconnect",
+            String.valueOf(loaded.monitorAutoReconnect))));
+
+    // monitorReconnectInitialDelay
+    loaded.monitorReconnectInitialDelay = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorReconnectInitialDelay",
+            String.valueOf(loaded.monitorReconnectInitialDelay))));
+
+    // monitorReconnectMaxDelay
+    loaded.monitorReconnectMaxDelay = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorReconnectMaxDelay",
+            String.valueOf(loaded.monitorReconnectMaxDelay))));
+
+    // monitorBackfillDepth
+    loaded.monitorBackfillDepth = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorBackfillDepth",
+            String.valueOf(loaded.monitorBackfillDepth))));
+
+    // monitorBackfillParallelism
+    loaded.monitorBackfillParallelism = Integer.parseInt(EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("monitorBackfillParallelism",
+            String.valueOf(loaded.monitorBackfillParallelism))));
+
+    // monitorDedupSize
+    loaded.monitorDedupSize = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorDedupSize",
+            String.valueOf(loaded.monitorDedupSize))));
+
+    // monitorDedupWindow
+    loaded.monitorDedupWindow = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorDedupWindow",
+            String.valueOf(loaded.monitorDedupWindow))));
+
+    // monitorHistorySize
+    loaded.monitorHistorySize = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorHistorySize",
+            String.valueOf(loaded.monitorHistorySize))));
+
+    // currencyListTtl
+    loaded.currencyListTtl = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("currencyListTtl",
+            String.valueOf(loaded.currencyListTtl))));
+
+    // useResponseCache
+    loaded.useResponseCache = Boolean.parseBoolean(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("useResponseCache",
+            String.valueOf(loaded.useResponseCache))));
+
+    // responseCacheSize
+    loaded.responseCacheSize = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("responseCacheSize",
+            String.valueOf(loaded.responseCacheSize))));
+
+    // responseCacheTtlListCurrencies
+    loaded.responseCacheTtlListCurrencies = Long.parseLong(EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("responseCacheTtlListCurrencies",
+            String.valueOf(loaded.responseCacheTtlListCurrencies))));
+
+    // responseCacheTtlListAllAddresses
+    loaded.responseCacheTtlListAllAddresses = Long.parseLong(EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("responseCacheTtlListAllAddresses",
+            String.valueOf(loaded.responseCacheTtlListAllAddresses))));
+
+    // responseCacheTtlGetSigners
+    loaded.responseCacheTtlGetSigners = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("responseCacheTtlGetSigners",
+            String.valueOf(loaded.responseCacheTtlGetSigners))));
+
+    // responseCacheTtlGetTransaction
+    loaded.responseCacheTtlGetTransaction = Long.parseLong(EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("responseCacheTtlGetTransaction",
+            String.valueOf(loaded.responseCacheTtlGetTransaction))));
+
+    // useMonitorBalances
+    loaded.useMonitorBalances = Boolean.parseBoolean(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("useMonitorBalances",
+            String.valueOf(loaded.useMonitorBalances))));
+
+    // monitorBalanceMaxAge
+    loaded.monitorBalanceMaxAge = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorBalanceMaxAge",
+            String.valueOf(loaded.monitorBalanceMaxAge))));
+
+    // workflowStageThreads
+    loaded.workflowStageThreads = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("workflowStageThreads",
+            String.valueOf(loaded.workflowStageThreads))));
+
+    // workflowQueueSize
+    loaded.workflowQueueSize = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("workflowQueueSize",
+            String.valueOf(loaded.workflowQueueSize))));
+
+    // workflowMaxRetries
+    loaded.workflowMaxRetries = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("workflowMaxRetries",
+            String.valueOf(loaded.workflowMaxRetries))));
+
+    // workflowRetryDelay
+    loaded.workflowRetryDelay = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("workflowRetryDelay",
+            String.valueOf(loaded.workflowRetryDelay))));
+
+    // journalDirectory
+    loaded.journalDirectory = EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("journalDirectory", loaded.journalDirectory));
+
+    // journalSegmentSize
+    loaded.journalSegmentSize = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("journalSegmentSize",
+            String.valueOf(loaded.journalSegmentSize))));
+
+    // journalMaxBatch
+    loaded.journalMaxBatch = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("journalMaxBatch",
+            String.valueOf(loaded.journalMaxBatch))));
+
+    // signingKeystore
+    loaded.signingKeystore = EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("signingKeystore", loaded.signingKeystore));
+
+    // signingKeystorePassword
+    loaded.signingKeystorePassword = EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("signingKeystorePassword",
+            loaded.signingKeystorePassword));
+
+    // signingThreads
+    loaded.signingThreads = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("signingThreads", String.valueOf(loaded.signingThreads))));
+
+    // signingRecoverableCurrencies
+    loaded.signingRecoverableCurrencies = EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("signingRecoverableCurrencies",
+            loaded.signingRecoverableCurrencies));
+
+    // metricsProvider
+    loaded.metricsProvider = EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("metricsProvider", loaded.metricsProvider));
+
+    // rateLimits
+    loaded.rateLimits = EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("rateLimits", loaded.rateLimits));
+
+    // rateLimitBurst
+    loaded.rateLimitBurst = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("rateLimitBurst", String.valueOf(loaded.rateLimitBurst))));
+
+    // useAdaptiveConcurrency
+    loaded.useAdaptiveConcurrency = Boolean.parseBoolean(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("useAdaptiveConcurrency",
+            String.valueOf(loaded.useAdaptiveConcurrency))));
+
+    // concurrencyInitialLimit
+    loaded.concurrencyInitialLimit = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("concurrencyInitialLimit",
+            String.valueOf(loaded.concurrencyInitialLimit))));
+
+    // concurrencyMinLimit
+    loaded.concurrencyMinLimit = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("concurrencyMinLimit",
+            String.valueOf(loaded.concurrencyMinLimit))));
+
+    // concurrencyMaxLimit
+    loaded.concurrencyMaxLimit = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("concurrencyMaxLimit",
+            String.valueOf(loaded.concurrencyMaxLimit))));
+
+    // concurrencyLatencyTarget
+    loaded.concurrencyLatencyTarget = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("concurrencyLatencyTarget",
+            String.valueOf(loaded.concurrencyLatencyTarget))));
+
+    // nodeSelection
+    loaded.nodeSelection = EnvironmentVariableParser
+        .resolveEnvVars(cosignerProperties.getProperty("nodeSelection", loaded.nodeSelection));
+
+    // nodeEjectionFailures
+    loaded.nodeEjectionFailures = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("nodeEjectionFailures",
+            String.valueOf(loaded.nodeEjectionFailures))));
+
+    // nodeEjectionTime
+    loaded.nodeEjectionTime = Long.parseLong(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("nodeEjectionTime",
+            String.valueOf(loaded.nodeEjectionTime))));
+
+    // pinTransactionStages
+    loaded.pinTransactionStages = Boolean.parseBoolean(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("pinTransactionStages",
+            String.valueOf(loaded.pinTransactionStages))));
+
+    // batchParallelism
+    loaded.batchParallelism = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("batchParallelism",
+            String.valueOf(loaded.batchParallelism))));
+
+    // monitorBufferSize
+    loaded.monitorBufferSize = Integer.parseInt(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorBufferSize",
+            String.valueOf(loaded.monitorBufferSize))));
+
+    // monitorOverflowPolicy
+    loaded.monitorOverflowPolicy = EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("monitorOverflowPolicy", loaded.monitorOverflowPolicy));
+
+    // configReload
+    loaded.configReload = Boolean.parseBoolean(EnvironmentVariableParser.resolveEnvVars(
+        cosignerProperties.getProperty("configReload", String.valueOf(loaded.configReload))));
   }
 }
-
@@ -0,0 +1,105 @@
+package io.emax.cosigner.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the config file and calls {@link ClientConfiguration#reload()} when it changes.
+ *
+ * <p>The watch is on the file's directory, so editors that save by writing a new file and renaming
+ * it over the old one are picked up too. Events that arrive close together, like the several
+ * writes of a single save, cause one reload. The watcher stops once a reload turns configReload
+ * off.
+ */
+final class ConfigurationWatcher implements Runnable {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigurationWatcher.class);
+  private static final long SETTLE_TIME = 100;
+  private static ConfigurationWatcher running;
+
+  private final Path file;
+  private final WatchService watchService;
+
+  private ConfigurationWatcher(Path file, WatchService watchService) {
+    this.file = file;
+    this.watchService = watchService;
+  }
+
+  /**
+   * Starts watching the file, unless a watcher is already running.
+   */
+  static synchronized void start(Path file) {
+    if (running != null) {
+      return;
+    }
+    Path absolute = file.toAbsolutePath();
+    try {
+      WatchService watchService = FileSystems.getDefault().newWatchService();
+      absolute.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY);
+      running = new ConfigurationWatcher(absolute, watchService);
+    } catch (IOException e) {
+      logger.warn("Can't watch {} for changes, configuration won't be reloaded: {}", absolute,
+          e.toString());
+      return;
+    }
+    Thread thread = new Thread(running, "cosigner-config-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private static synchronized void stopped(ConfigurationWatcher watcher) {
+    if (running == watcher) {
+      running = null;
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        boolean changed = touchesFile(key);
+        // Let the rest of the write land before reading it
+        while ((key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS)) != null) {
+          changed |= touchesFile(key);
+        }
+        if (changed && ClientConfiguration.reload()
+            && !new ClientConfiguration().useConfigReload()) {
+          logger.info("configReload turned off, no longer watching {}", file);
+          return;
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      stopped(this);
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        logger.debug("Error closing watch service", e);
+      }
+    }
+  }
+
+  private boolean touchesFile(WatchKey key) {
+    boolean touched = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW
+          || file.getFileName().equals(event.context())) {
+        touched = true;
+      }
+    }
+    key.reset();
+    return touched;
+  }
+}
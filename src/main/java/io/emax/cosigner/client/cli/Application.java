@@ -6,12 +6,14 @@ import ch.qos.logback.classic.Logger;
 import io.emax.cosigner.api.core.CurrencyParameters;
 import io.emax.cosigner.api.core.CurrencyParametersRecipient;
 import io.emax.cosigner.client.currency.CurrencyConnector;
+import io.emax.cosigner.client.currency.MonitorListener;
 import io.emax.cosigner.client.currency.MonitorWebSocket;
 
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
 
 
 /**
@@ -46,10 +48,30 @@ public class Application {
           .println("\tapproveTransaction(String currency, String transaction, String address)");
       System.out.println("\tbroadcastTransaction(String currency, String transaction)");
       System.out.println("\tmonitorAddress(String currency, String address)");
+      System.out.println("\tbatch([String file], [--parallelism n], [--unordered])");
       return;
     }
 
-    CurrencyConnector connector = new CurrencyConnector();
+    if ("batch".equals(args[0])) {
+      BatchRunner.run(args);
+      return;
+    }
+
+    try (CurrencyConnector connector = new CurrencyConnector()) {
+      if ("monitorAddress".equals(args[0])) {
+        monitorAddress(connector, args);
+      } else {
+        System.out.println(runCommand(connector, args));
+      }
+    }
+  }
+
+  /**
+   * Runs a single request style command, returning what the server sent back.
+   *
+   * @param args Method name followed by its arguments, as given on the command line.
+   */
+  static String runCommand(CurrencyConnector connector, String[] args) throws Exception {
     CurrencyParameters params = new CurrencyParameters();
     String accountName = "";
     String currency = "";
@@ -60,8 +82,7 @@ public class Application {
     String tx = "";
     switch (args[0]) {
       case "listCurrencies":
-        System.out.println(connector.listCurrencies());
-        break;
+        return String.valueOf(connector.listCurrencies());
       case "registerAddress":
         if (args.length >= 2) {
           currency = args[1];
@@ -75,8 +96,7 @@ public class Application {
         params.setCurrencySymbol(currency);
         params.setUserKey(accountName);
         params.setAccount(Collections.singletonList(address));
-        System.out.println(connector.registerAddress(params));
-        break;
+        return String.valueOf(connector.registerAddress(params));
       case "getNewAddress":
         if (args.length >= 2) {
           currency = args[1];
@@ -86,8 +106,7 @@ public class Application {
         }
         params.setCurrencySymbol(currency);
         params.setUserKey(accountName);
-        System.out.println(connector.getNewAddress(params));
-        break;
+        return String.valueOf(connector.getNewAddress(params));
       case "listAllAddresses":
         if (args.length >= 2) {
           currency = args[1];
@@ -97,8 +116,7 @@ public class Application {
         }
         params.setCurrencySymbol(currency);
         params.setUserKey(accountName);
-        System.out.println(connector.listAllAddresses(params));
-        break;
+        return String.valueOf(connector.listAllAddresses(params));
       case "listTransactions":
         if (args.length >= 2) {
           currency = args[1];
@@ -115,8 +133,7 @@ public class Application {
         params.setCurrencySymbol(currency);
         params.setAccount(Collections.singletonList(address));
         params.setTransactionData(tx);
-        System.out.println(connector.listTransactions(params));
-        break;
+        return String.valueOf(connector.listTransactions(params));
       case "getBalance":
         if (args.length >= 2) {
           currency = args[1];
@@ -126,8 +143,7 @@ public class Application {
         }
         params.setCurrencySymbol(currency);
         params.setAccount(Collections.singletonList(address));
-        System.out.println(connector.getBalance(params));
-        break;
+        return String.valueOf(connector.getBalance(params));
       case "prepareTransaction":
         if (args.length >= 2) {
           currency = args[1];
@@ -150,8 +166,7 @@ public class Application {
         rcpt.setAmount(amount.toPlainString());
         rcpt.setRecipientAddress(rcptAddress);
         params.setReceivingAccount(Collections.singletonList(rcpt));
-        System.out.println(connector.prepareTransaction(params));
-        break;
+        return String.valueOf(connector.prepareTransaction(params));
       case "getSigners":
         if (args.length >= 2) {
           currency = args[1];
@@ -161,8 +176,7 @@ public class Application {
         }
         params.setCurrencySymbol(currency);
         params.setTransactionData(tx);
-        System.out.println(connector.getSignersForTransaction(params));
-        break;
+        return String.valueOf(connector.getSignersForTransaction(params));
       case "approveTransaction":
         if (args.length >= 2) {
           currency = args[1];
@@ -176,8 +190,7 @@ public class Application {
         params.setCurrencySymbol(currency);
         params.setAccount(Collections.singletonList(address));
         params.setTransactionData(tx);
-        System.out.println(connector.approveTransaction(params));
-        break;
+        return String.valueOf(connector.approveTransaction(params));
       case "broadcastTransaction":
         if (args.length >= 2) {
           currency = args[1];
@@ -187,33 +200,42 @@ public class Application {
         }
         params.setCurrencySymbol(currency);
         params.setTransactionData(tx);
-        System.out.println(connector.broadcastTransaction(params));
-        break;
+        return String.valueOf(connector.broadcastTransaction(params));
       default:
-        System.out.println("Method not valid or not supported yet");
-        break;
-      case "monitorAddress":
-        if (args.length >= 2) {
-          currency = args[1];
-        }
-        if (args.length >= 3) {
-          address = args[2];
-        }
-        params.setCurrencySymbol(currency);
-        params.setAccount(Collections.singletonList(address));
+        return "Method not valid or not supported yet";
+    }
+  }
 
-        System.out.println("Hit Ctrl+C to close the websocket.");
-        MonitorWebSocket socket = connector.monitorBalance(params);
-        while (true) {
-          // Sleep 5 seconds
-          Thread.sleep(1000 * 5);
+  private static void monitorAddress(CurrencyConnector connector, String[] args)
+      throws InterruptedException {
+    CurrencyParameters params = new CurrencyParameters();
+    String currency = "";
+    String address = "";
+    if (args.length >= 2) {
+      currency = args[1];
+    }
+    if (args.length >= 3) {
+      address = args[2];
+    }
+    params.setCurrencySymbol(currency);
+    params.setAccount(Collections.singletonList(address));
 
-          // Print the information
-          socket.getAllBalances().forEach((balAddress, balance) -> System.out
-              .println("Address: " + balAddress + " Balance: " + balance));
-          socket.getNewTransactions()
-              .forEach(transaction -> System.out.println("New Transaction: " + transaction));
-        }
+    System.out.println("Hit Ctrl+C to close the websocket.");
+    MonitorWebSocket socket = connector.monitorBalance(params, new MonitorListener() {
+      @Override
+      public void onBalance(String balAddress, String balance) {
+        System.out.println("Address: " + balAddress + " Balance: " + balance);
+      }
+
+      @Override
+      public void onTransaction(CurrencyParameters transaction) {
+        System.out.println("New Transaction: " + transaction);
+      }
+    });
+    if (socket == null) {
+      System.out.println("Could not connect to the monitor.");
+      return;
     }
+    new CountDownLatch(1).await();
   }
 }
@@ -0,0 +1,199 @@
+package io.emax.cosigner.client.cli;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.emax.cosigner.client.ClientConfiguration;
+import io.emax.cosigner.client.currency.CurrencyConnector;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many commands in one JVM over a single shared connector.
+ *
+ * <p>Commands are read one per line from a file, or from stdin when no file is given. A line is
+ * either a method and its arguments separated by whitespace, just like the command line, or a JSON
+ * object such as {"id": "a1", "method": "getBalance", "args": ["BTC", "1abc"]}. Blank lines and
+ * lines starting with # are skipped.
+ *
+ * <p>Up to batchParallelism commands run at once. By default results are printed in input order,
+ * each one as soon as everything before it is done. With --unordered they're printed as they
+ * finish, prefixed with the line number. JSON commands always get a JSON result line carrying their
+ * id, or the line number if they have none.
+ */
+final class BatchRunner {
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final Command runner;
+  private final ExecutorService executor;
+  private final Semaphore window;
+  private final boolean ordered;
+  private final PrintStream out;
+
+  /**
+   * Runs one command, given as its method and arguments.
+   */
+  interface Command {
+    String run(String[] args) throws Exception;
+  }
+
+  BatchRunner(CurrencyConnector connector, int parallelism, boolean ordered, PrintStream out) {
+    this(args -> Application.runCommand(connector, args), parallelism, ordered, out);
+  }
+
+  BatchRunner(Command runner, int parallelism, boolean ordered, PrintStream out) {
+    this.runner = runner;
+    this.ordered = ordered;
+    this.out = out;
+    // Lets the reader run a little ahead of the workers without buffering the whole input
+    this.window = new Semaphore(parallelism * 4);
+    AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+      Thread thread = new Thread(runnable, "cosigner-batch-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Entry point for "batch [file] [--parallelism n] [--unordered]".
+   */
+  static void run(String[] args) throws Exception {
+    String file = null;
+    int parallelism = new ClientConfiguration().getBatchParallelism();
+    boolean ordered = true;
+    for (int i = 1; i < args.length; i++) {
+      if ("--parallelism".equals(args[i]) && i + 1 < args.length) {
+        parallelism = Integer.parseInt(args[++i]);
+      } else if ("--unordered".equals(args[i])) {
+        ordered = false;
+      } else if (!"-".equals(args[i])) {
+        file = args[i];
+      }
+    }
+
+    try (CurrencyConnector connector = new CurrencyConnector();
+        BufferedReader reader = file == null
+            ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+            : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+      new BatchRunner(connector, Math.max(parallelism, 1), ordered, System.out).execute(reader);
+    }
+  }
+
+  /**
+   * Runs every command from the reader, returning once all results have been printed.
+   */
+  void execute(BufferedReader reader) throws IOException, InterruptedException {
+    Deque<CompletableFuture<String>> pending = new ArrayDeque<>();
+    long lineNumber = 0;
+    String line;
+    try {
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        String command = line.trim();
+        if (command.isEmpty() || command.startsWith("#")) {
+          continue;
+        }
+
+        if (ordered) {
+          // Permits come back as results are printed, so wait on the oldest rather than block
+          while (!window.tryAcquire()) {
+            printNext(pending);
+          }
+          pending.add(submit(lineNumber, command));
+          while (!pending.isEmpty() && pending.peek().isDone()) {
+            printNext(pending);
+          }
+        } else {
+          window.acquire();
+          submit(lineNumber, command).thenAccept(result -> {
+            print(result);
+            window.release();
+          });
+        }
+      }
+      while (!pending.isEmpty()) {
+        printNext(pending);
+      }
+    } finally {
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private CompletableFuture<String> submit(long lineNumber, String command) {
+    return CompletableFuture.supplyAsync(() -> runLine(lineNumber, command), executor);
+  }
+
+  private void printNext(Deque<CompletableFuture<String>> pending) {
+    print(pending.remove().join());
+    window.release();
+  }
+
+  private void print(String result) {
+    synchronized (out) {
+      out.println(result);
+    }
+  }
+
+  /**
+   * Runs one command, returning the line to print for it. Failures are reported in that line.
+   */
+  private String runLine(long lineNumber, String command) {
+    boolean json = command.startsWith("{");
+    String id = String.valueOf(lineNumber);
+    try {
+      String[] args;
+      if (json) {
+        JsonNode request = objectMapper.readTree(command);
+        if (request.hasNonNull("id")) {
+          id = request.get("id").asText();
+        }
+        List<String> values = new ArrayList<>();
+        values.add(request.path("method").asText());
+        request.path("args").forEach(arg -> values.add(arg.asText()));
+        args = values.toArray(new String[values.size()]);
+      } else {
+        args = command.split("\\s+");
+      }
+      if ("monitorAddress".equals(args[0]) || "batch".equals(args[0])) {
+        throw new IllegalArgumentException(args[0] + " can't be run in batch mode");
+      }
+      return format(json, id, runner.run(args), null);
+    } catch (Exception e) {
+      return format(json, id, null, e.getMessage() == null ? e.toString() : e.getMessage());
+    }
+  }
+
+  private String format(boolean json, String id, String result, String error) {
+    if (json) {
+      ObjectNode line = objectMapper.createObjectNode();
+      line.put("id", id);
+      if (error == null) {
+        line.put("result", result);
+      } else {
+        line.put("error", error);
+      }
+      return line.toString();
+    }
+    String text = error == null ? result : "Error: " + error;
+    return ordered ? text : id + "\t" + text;
+  }
+}
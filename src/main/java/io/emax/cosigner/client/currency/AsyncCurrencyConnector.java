@@ -0,0 +1,305 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.ClientConfiguration;
+import io.emax.cosigner.client.metrics.ClientMetrics;
+import io.emax.cosigner.common.Json;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Non-blocking version of {@link CurrencyConnector}.
+ *
+ * <p>Shares the HTTP client of the connector it wraps. Every call returns immediately with a future
+ * that is completed from Jetty's I/O threads, so dependent stages that do real work should use the
+ * *Async variants of {@link CompletableFuture}.
+ *
+ * <p>The number of requests in flight is bounded, once the limit is reached new calls are queued
+ * and sent as earlier ones complete. Per-endpoint rate and concurrency limits configured on the
+ * connector hold requests back the same way. Neither ever blocks the caller, so it's safe to make
+ * further calls from a dependent stage running on an I/O thread.
+ */
+public class AsyncCurrencyConnector {
+  private static final Logger logger = LoggerFactory.getLogger(AsyncCurrencyConnector.class);
+  private final ClientConfiguration config = new ClientConfiguration();
+  private final CurrencyConnector connector;
+  private final Semaphore inFlight;
+  private final int maxInFlight;
+  private final ConcurrentLinkedQueue<Runnable> queued = new ConcurrentLinkedQueue<>();
+
+  public AsyncCurrencyConnector(CurrencyConnector connector) {
+    this(connector, new ClientConfiguration().getMaxRequestsInFlight());
+  }
+
+  /**
+   * Creates an async connector with a custom in-flight limit.
+   */
+  public AsyncCurrencyConnector(CurrencyConnector connector, int maxInFlight) {
+    this.connector = connector;
+    this.maxInFlight = maxInFlight;
+    this.inFlight = new Semaphore(maxInFlight);
+    connector.getMetrics().registerGauge("async.inFlight", this::getRequestsInFlight);
+    connector.getMetrics().registerGauge("async.queued", this::getRequestsQueued);
+  }
+
+  public CurrencyConnector getConnector() {
+    return connector;
+  }
+
+  /**
+   * Number of requests currently waiting on the server.
+   */
+  public int getRequestsInFlight() {
+    return maxInFlight - inFlight.availablePermits();
+  }
+
+  /**
+   * Number of requests waiting for an in-flight slot.
+   */
+  public int getRequestsQueued() {
+    return queued.size();
+  }
+
+  /**
+   * Runs the send once an in-flight slot is free, queueing it if there is none.
+   */
+  private void admit(Runnable send) {
+    if (inFlight.tryAcquire()) {
+      send.run();
+      return;
+    }
+    queued.add(send);
+    // A slot may have been released between the failed tryAcquire and the add
+    runQueued();
+  }
+
+  /**
+   * Gives up an in-flight slot, passing it on to the oldest queued send if there is one.
+   */
+  private void releaseSlot() {
+    inFlight.release();
+    runQueued();
+  }
+
+  private void runQueued() {
+    while (!queued.isEmpty() && inFlight.tryAcquire()) {
+      Runnable next = queued.poll();
+      if (next == null) {
+        inFlight.release();
+        return;
+      }
+      next.run();
+    }
+  }
+
+  private CompletableFuture<String> restPostRequest(String endpoint, CurrencyParameters params) {
+    try {
+      return sendRequest(HttpMethod.POST, endpoint, CurrencyParametersCodec.toBytes(params),
+          connector.selectNode(endpoint, params));
+    } catch (IOException e) {
+      logger.error(null, e);
+      CompletableFuture<String> future = new CompletableFuture<>();
+      future.completeExceptionally(e);
+      return future;
+    }
+  }
+
+  private CompletableFuture<String> sendRequest(HttpMethod method, String endpoint,
+      byte[] body, CosignerNode node) {
+    String content = null;
+    ResponseCache cache = connector.getResponseCache();
+    if (cache != null && cache.isCacheable(endpoint)) {
+      content = body == null ? null : new String(body, StandardCharsets.UTF_8);
+      String cached = connector.getCachedResponse(endpoint, content);
+      if (cached != null) {
+        return CompletableFuture.completedFuture(cached);
+      }
+    }
+
+    String cacheKey = content;
+    CompletableFuture<String> future = new CompletableFuture<>();
+    EndpointLimiter limiter = connector.getLimiter();
+    admit(() -> {
+      if (limiter == null) {
+        send(method, endpoint, body, node, cacheKey, future);
+      } else {
+        limiter.acquire(endpoint, connector.getScheduler(),
+            () -> send(method, endpoint, body, node, cacheKey, future));
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Sends a request that has been admitted by the in-flight and endpoint limits, both are released
+   * once it completes.
+   */
+  private void send(HttpMethod method, String endpoint, byte[] body, CosignerNode node,
+      String cacheKey, CompletableFuture<String> future) {
+    EndpointLimiter limiter = connector.getLimiter();
+    ClientMetrics metrics = connector.getMetrics();
+    long bytesSent = body == null ? 0 : body.length;
+    metrics.requestStarted(endpoint);
+    long start = System.nanoTime();
+    try {
+      Request request = node == null ? connector.newRequest(method, endpoint)
+          : connector.newRequest(method, endpoint, node);
+      if (body != null) {
+        request = request.content(new BytesContentProvider("text/plain;charset=UTF-8", body));
+      }
+      request.send(new BufferingResponseListener(config.getMaxResponseSize()) {
+        @Override
+        public void onComplete(Result result) {
+          long duration = System.nanoTime() - start;
+          if (limiter != null) {
+            limiter.release(endpoint, duration,
+                result.isFailed() || result.getResponse().getStatus() >= 500);
+          }
+          releaseSlot();
+          if (result.isFailed()) {
+            metrics.requestCompleted(endpoint, duration, bytesSent, 0, false);
+            logger.error(null, result.getFailure());
+            future.completeExceptionally(result.getFailure());
+            return;
+          }
+          long bytesReceived = getContent().length;
+          try {
+            String response = CurrencyConnector.parseResponse(getContent());
+            metrics.requestCompleted(endpoint, duration, bytesSent, bytesReceived, true);
+            if (node != null) {
+              connector.pinResponse(endpoint, node, response);
+            }
+            future.complete(connector.cacheResponse(endpoint, cacheKey, response));
+          } catch (Exception e) {
+            metrics.requestCompleted(endpoint, duration, bytesSent, bytesReceived, false);
+            logger.error(null, e);
+            future.completeExceptionally(e);
+          }
+        }
+      });
+    } catch (Exception e) {
+      long duration = System.nanoTime() - start;
+      if (limiter != null) {
+        limiter.release(endpoint, duration, true);
+      }
+      releaseSlot();
+      metrics.requestCompleted(endpoint, duration, bytesSent, 0, false);
+      logger.error(null, e);
+      future.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * List currencies provided by cosigner server.
+   */
+  public CompletableFuture<String> listCurrencies() {
+    return sendRequest(HttpMethod.GET, "/rs/ListCurrencies", null, null);
+  }
+
+  /**
+   * Registers addresses for currency libraries that need a watch list.
+   */
+  public CompletableFuture<String> registerAddress(CurrencyParameters params) {
+    return restPostRequest("/rs/RegisterAddress", params).whenComplete(
+        (result, error) -> connector.invalidateCachedResponses("/rs/ListAllAddresses"));
+  }
+
+  /**
+   * Get a new address.
+   */
+  public CompletableFuture<String> getNewAddress(CurrencyParameters params) {
+    return restPostRequest("/rs/GetNewAddress", params).whenComplete(
+        (result, error) -> connector.invalidateCachedResponses("/rs/ListAllAddresses"));
+  }
+
+  /**
+   * Convert a public key into the relevant address.
+   */
+  public CompletableFuture<String> convertKeytoAddress(CurrencyParameters params) {
+    return restPostRequest("/rs/GenerateAddressFromKey", params);
+  }
+
+  /**
+   * List all addresses that we have generated for the given user key and currency.
+   */
+  public CompletableFuture<String> listAllAddresses(CurrencyParameters params) {
+    return restPostRequest("/rs/ListAllAddresses", params);
+  }
+
+  /**
+   * List transactions for the given address and currency.
+   */
+  public CompletableFuture<String> listTransactions(CurrencyParameters params) {
+    return restPostRequest("/rs/ListTransactions", params);
+  }
+
+  public CompletableFuture<String> getTransaction(CurrencyParameters params) {
+    return restPostRequest("/rs/GetTransaction", params);
+  }
+
+  /**
+   * Returns the combined balance of all addresses provided in the parameters.
+   */
+  public CompletableFuture<String> getBalance(CurrencyParameters params) {
+    return restPostRequest("/rs/GetBalance", params);
+  }
+
+  /**
+   * Create and sign a transaction.
+   */
+  public CompletableFuture<String> prepareTransaction(CurrencyParameters params) {
+    return restPostRequest("/rs/PrepareTransaction", params);
+  }
+
+  /**
+   * Get list of addresses that could sign the transaction.
+   */
+  @SuppressWarnings("unchecked")
+  public CompletableFuture<Iterable<String>> getSignersForTransaction(CurrencyParameters params) {
+    return restPostRequest("/rs/GetSignersForTransaction", params)
+        .thenApply(response -> (Iterable<String>) Json.objectifyString(Iterable.class, response));
+  }
+
+  /**
+   * Get signing data for offline signature.
+   */
+  @SuppressWarnings("unchecked")
+  public CompletableFuture<Iterable<Iterable<String>>> getSignatureString(
+      CurrencyParameters params) {
+    return restPostRequest("/rs/GetSignatureString", params).thenApply(
+        response -> (Iterable<Iterable<String>>) Json.objectifyString(Iterable.class, response));
+  }
+
+  /**
+   * Apply an offline signature to transaction.
+   */
+  public CompletableFuture<String> applySignature(CurrencyParameters params) {
+    return restPostRequest("/rs/ApplySignature", params);
+  }
+
+  /**
+   * Approve a transaction that's been signed off on by the user.
+   */
+  public CompletableFuture<String> approveTransaction(CurrencyParameters params) {
+    return restPostRequest("/rs/ApproveTransaction", params);
+  }
+
+  /**
+   * Submits a transaction for processing on the network.
+   */
+  public CompletableFuture<String> broadcastTransaction(CurrencyParameters params) {
+    return restPostRequest("/rs/BroadcastTransaction", params);
+  }
+}
@@ -0,0 +1,155 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.ClientConfiguration;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Fans multi-address queries out over an {@link AsyncCurrencyConnector}.
+ *
+ * <p>Identical requests that are already in flight, from this or any other thread, are coalesced
+ * so that only one of them reaches the server.
+ */
+public class BatchCurrencyConnector {
+  private final AsyncCurrencyConnector connector;
+  private final int chunkSize;
+  private final ConcurrentHashMap<String, CompletableFuture<String>> pendingRequests =
+      new ConcurrentHashMap<>();
+
+  public BatchCurrencyConnector(AsyncCurrencyConnector connector) {
+    this(connector, new ClientConfiguration().getBatchChunkSize());
+  }
+
+  /**
+   * Creates a batch connector that puts at most chunkSize addresses in a single request.
+   */
+  public BatchCurrencyConnector(AsyncCurrencyConnector connector, int chunkSize) {
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("Chunk size must be at least 1");
+    }
+    this.connector = connector;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Returns the balance of each address.
+   *
+   * <p>The server sums the balances of every address in a GetBalance request, so a per-address
+   * answer needs one request per address. They are all issued in parallel.
+   */
+  public CompletableFuture<Map<String, String>> getBalances(String currency,
+      Collection<String> addresses) {
+    return perAddress(currency, addresses, connector::getBalance, "/rs/GetBalance");
+  }
+
+  /**
+   * Returns the balance of each address, grouped by currency symbol.
+   */
+  public CompletableFuture<Map<String, Map<String, String>>> getBalances(
+      Map<String, ? extends Collection<String>> addressesByCurrency) {
+    Map<String, CompletableFuture<Map<String, String>>> futures = new LinkedHashMap<>();
+    addressesByCurrency
+        .forEach((currency, addresses) -> futures.put(currency, getBalances(currency, addresses)));
+    return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+        .thenApply(ignored -> {
+          Map<String, Map<String, String>> results = new LinkedHashMap<>();
+          futures.forEach((currency, future) -> results.put(currency, future.join()));
+          return results;
+        });
+  }
+
+  /**
+   * Returns the combined balance of all the addresses.
+   *
+   * <p>Addresses are split into requests of up to chunkSize accounts each, the chunks run in
+   * parallel and their totals are added up.
+   */
+  public CompletableFuture<String> getCombinedBalance(String currency,
+      Collection<String> addresses) {
+    List<String> addressList = new ArrayList<>(addresses);
+    List<CompletableFuture<String>> futures = new ArrayList<>();
+    for (int i = 0; i < addressList.size(); i += chunkSize) {
+      List<String> chunk =
+          new ArrayList<>(addressList.subList(i, Math.min(i + chunkSize, addressList.size())));
+      futures.add(coalesce("/rs/GetBalance", buildParams(currency, chunk), connector::getBalance));
+    }
+
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+        .thenApply(ignored -> {
+          BigDecimal total = BigDecimal.ZERO;
+          for (CompletableFuture<String> future : futures) {
+            String balance = future.join();
+            if (balance != null && !balance.isEmpty()) {
+              total = total.add(new BigDecimal(balance));
+            }
+          }
+          return total.toPlainString();
+        });
+  }
+
+  /**
+   * Lists the transactions of each address.
+   */
+  public CompletableFuture<Map<String, String>> listTransactions(String currency,
+      Collection<String> addresses) {
+    return perAddress(currency, addresses, connector::listTransactions, "/rs/ListTransactions");
+  }
+
+  private CompletableFuture<Map<String, String>> perAddress(String currency,
+      Collection<String> addresses, Function<CurrencyParameters, CompletableFuture<String>> call,
+      String endpoint) {
+    Map<String, CompletableFuture<String>> futures = new LinkedHashMap<>();
+    addresses.forEach(address -> futures.computeIfAbsent(address,
+        key -> coalesce(endpoint, buildParams(currency, Collections.singletonList(key)), call)));
+
+    return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+        .thenApply(ignored -> {
+          Map<String, String> results = new LinkedHashMap<>();
+          futures.forEach((address, future) -> results.put(address, future.join()));
+          return results;
+        });
+  }
+
+  private CompletableFuture<String> coalesce(String endpoint, CurrencyParameters params,
+      Function<CurrencyParameters, CompletableFuture<String>> call) {
+    String key;
+    try {
+      key = endpoint + CurrencyParametersCodec.toString(params);
+    } catch (IOException e) {
+      return call.apply(params);
+    }
+    CompletableFuture<String> created = new CompletableFuture<>();
+    CompletableFuture<String> existing = pendingRequests.putIfAbsent(key, created);
+    if (existing != null) {
+      return existing;
+    }
+
+    call.apply(params).whenComplete((result, error) -> {
+      pendingRequests.remove(key, created);
+      if (error != null) {
+        created.completeExceptionally(error);
+      } else {
+        created.complete(result);
+      }
+    });
+    return created;
+  }
+
+  private static CurrencyParameters buildParams(String currency, List<String> addresses) {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol(currency);
+    params.setAccount(addresses);
+    return params;
+  }
+}
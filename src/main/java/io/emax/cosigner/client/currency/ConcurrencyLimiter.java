@@ -0,0 +1,110 @@
+package io.emax.cosigner.client.currency;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits requests in flight, adapting the limit to how the server is coping (AIMD).
+ *
+ * <p>Every request that comes back within the latency target while the limit is being used grows
+ * the limit by 1/limit, roughly one more request per round trip. A request that is slower than the
+ * target, or that fails to get a response, cuts the limit by 10%. Throughput settles just below the
+ * point where the server starts queueing instead of pushing it into timeouts.
+ *
+ * <p>A burst of slow responses is one overload, not many, so the limit is cut at most once per
+ * latency target. The slow responses right after a cut are mostly from requests sent under the old
+ * limit.
+ */
+class ConcurrencyLimiter {
+  private static final double BACKOFF_RATIO = 0.9;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long latencyTargetNanos;
+  private final LongSupplier nanoClock;
+  private double limit;
+  private long lastDecrease;
+  private int inFlight = 0;
+  private final Queue<Runnable> waiting = new ArrayDeque<>();
+
+  ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyTargetMillis) {
+    this(initialLimit, minLimit, maxLimit, latencyTargetMillis, System::nanoTime);
+  }
+
+  ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyTargetMillis,
+      LongSupplier nanoClock) {
+    this.minLimit = Math.max(minLimit, 1);
+    this.maxLimit = Math.max(maxLimit, this.minLimit);
+    this.latencyTargetNanos = latencyTargetMillis * 1_000_000;
+    this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+    this.nanoClock = nanoClock;
+    this.lastDecrease = nanoClock.getAsLong() - latencyTargetNanos;
+  }
+
+  /**
+   * Waits for a slot under the current limit.
+   */
+  synchronized void acquire() throws InterruptedException {
+    while (inFlight >= (int) limit) {
+      wait();
+    }
+    inFlight++;
+  }
+
+  /**
+   * Takes a slot if one is free, otherwise queues the task to be run with the next slot that frees
+   * up, on the thread that frees it.
+   *
+   * @return true if the caller got a slot and should run the task itself.
+   */
+  synchronized boolean tryAcquire(Runnable whenAcquired) {
+    if (inFlight < (int) limit && waiting.isEmpty()) {
+      inFlight++;
+      return true;
+    }
+    waiting.add(whenAcquired);
+    return false;
+  }
+
+  /**
+   * Returns a slot and adjusts the limit from the request's outcome.
+   *
+   * @param overloaded true if the request failed without a usable response from the server.
+   */
+  void release(long latencyNanos, boolean overloaded) {
+    List<Runnable> admitted = new ArrayList<>();
+    synchronized (this) {
+      boolean saturated = inFlight >= limit / 2;
+      inFlight--;
+      if (overloaded || latencyNanos > latencyTargetNanos) {
+        long now = nanoClock.getAsLong();
+        if (now - lastDecrease >= latencyTargetNanos) {
+          limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+          lastDecrease = now;
+        }
+      } else if (saturated) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+      // Freed slots go straight to the oldest queued tasks
+      while (!waiting.isEmpty() && inFlight < (int) limit) {
+        inFlight++;
+        admitted.add(waiting.poll());
+      }
+      notifyAll();
+    }
+    for (Runnable task : admitted) {
+      task.run();
+    }
+  }
+
+  synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  synchronized int getInFlight() {
+    return inFlight;
+  }
+}
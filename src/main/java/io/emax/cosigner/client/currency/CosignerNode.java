@@ -0,0 +1,89 @@
+package io.emax.cosigner.client.currency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One cosigner server, with the health and load figures used to pick between servers.
+ */
+public class CosignerNode {
+  private static final double LATENCY_DECAY = 0.2;
+
+  private final String rsUrl;
+  private final String wsUrl;
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private volatile double latencyNanos = 0;
+  private int consecutiveFailures = 0;
+  private volatile long ejectedUntil = 0;
+
+  CosignerNode(String rsUrl, String wsUrl) {
+    this.rsUrl = rsUrl;
+    this.wsUrl = wsUrl;
+  }
+
+  public String getRsUrl() {
+    return rsUrl;
+  }
+
+  public String getWsUrl() {
+    return wsUrl;
+  }
+
+  /**
+   * Requests sent to this node that haven't completed yet.
+   */
+  public int getOutstanding() {
+    return outstanding.get();
+  }
+
+  /**
+   * Moving average of request latency in nanoseconds, 0 until a request has completed.
+   */
+  public double getLatencyNanos() {
+    return latencyNanos;
+  }
+
+  /**
+   * True while the node is ejected for failing.
+   */
+  public boolean isEjected() {
+    return System.currentTimeMillis() < ejectedUntil;
+  }
+
+  long getEjectedUntil() {
+    return ejectedUntil;
+  }
+
+  void requestStarted() {
+    outstanding.incrementAndGet();
+  }
+
+  void requestFinished() {
+    outstanding.decrementAndGet();
+  }
+
+  synchronized void requestSucceeded(long durationNanos) {
+    consecutiveFailures = 0;
+    latencyNanos = latencyNanos == 0 ? durationNanos
+        : latencyNanos + LATENCY_DECAY * (durationNanos - latencyNanos);
+  }
+
+  /**
+   * Records a failure, ejecting the node once enough happen in a row.
+   *
+   * <p>After the ejection time the node gets traffic again. One more failure ejects it straight
+   * away, a success re-admits it fully.
+   */
+  synchronized boolean requestFailed(int ejectionFailures, long ejectionMillis) {
+    consecutiveFailures++;
+    if (consecutiveFailures >= ejectionFailures && !isEjected()) {
+      ejectedUntil = System.currentTimeMillis() + ejectionMillis;
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return rsUrl;
+  }
+}
@@ -1,41 +1,86 @@
 package io.emax.cosigner.client.currency;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import io.emax.cosigner.api.core.CosignerResponse;
-import io.emax.cosigner.api.core.CurrencyPackageInterface;
 import io.emax.cosigner.api.core.CurrencyParameters;
 import io.emax.cosigner.api.currency.Wallet;
 import io.emax.cosigner.client.ClientConfiguration;
+import io.emax.cosigner.client.currency.CurrencyParametersCodec.PooledContent;
+import io.emax.cosigner.client.metrics.ClientMetrics;
+import io.emax.cosigner.client.metrics.ScopedMetrics;
 import io.emax.cosigner.common.Json;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
-import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.component.LifeCycle;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
 import java.net.URI;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.util.Enumeration;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-
-
-public class CurrencyConnector {
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+public class CurrencyConnector implements AutoCloseable {
   private static final Logger logger = LoggerFactory.getLogger(CurrencyConnector.class);
-  private final ClientConfiguration config = new ClientConfiguration();
-  private HttpClient httpClient = new HttpClient();
-  private WebSocketClient webSocketClient = new WebSocketClient();
-  private final MonitorWebSocket monitorSocket = new MonitorWebSocket();
-
-  // TODO create a local signing method for "bring-your-own-keys" setups.
+  private static final Set<String> TRANSACTION_STAGES = new HashSet<>(Arrays.asList(
+      "/rs/PrepareTransaction", "/rs/GetSignersForTransaction", "/rs/GetSignatureString",
+      "/rs/ApplySignature", "/rs/ApproveTransaction", "/rs/BroadcastTransaction"));
+  private static final Set<String> TRANSACTION_PRODUCERS = new HashSet<>(Arrays.asList(
+      "/rs/PrepareTransaction", "/rs/ApplySignature", "/rs/ApproveTransaction"));
+  private static final Set<String> IDEMPOTENT_READS = new HashSet<>(Arrays.asList(
+      "/rs/ListCurrencies", "/rs/ListAllAddresses", "/rs/ListTransactions", "/rs/GetTransaction",
+      "/rs/GetBalance"));
+  private static final long HTTP_DRAIN_INTERVAL = 100;
+  private static final long WEBSOCKET_DRAIN_INTERVAL = 5000;
+  private volatile ClientConfiguration config = new ClientConfiguration();
+  private volatile HttpClientGeneration httpClient;
+  private WebSocketClient webSocketClient;
+  private final Set<LifeCycle> retiredClients = ConcurrentHashMap.newKeySet();
+  private final Consumer<ClientConfiguration> reloadListener = this::applyConfiguration;
+  private SslContextFactory sslContext;
+  private ScheduledExecutorService scheduler;
+  private ExecutorService backfillExecutor;
+  private volatile Set<String> supportedCurrencies;
+  private volatile long supportedCurrenciesExpiry;
+  private ResponseCache responseCache;
+  private static final AtomicInteger connectorCount = new AtomicInteger();
+  private final ScopedMetrics metrics;
+  private final EndpointLimiter limiter;
+  private volatile NodeSelector nodeSelector = new NodeSelector();
+  private final ConcurrentHashMap<String, Set<MonitorState>> monitoredAddresses =
+      new ConcurrentHashMap<>();
 
   public String stringifyParams(CurrencyParameters params) {
     return Json.stringifyObject(CurrencyParameters.class, params);
@@ -48,130 +93,634 @@ public class CurrencyConnector {
   /**
    * Constructor for the connector.
    *
-   * <p>Sets up TLS if it's configured.
+   * <p>The HTTP client, websocket client and TLS context are created on first use, so commands
+   * that never open a monitor don't pay for websocket setup. The HTTP client is long-lived, it
+   * keeps its connection pool and TLS sessions between requests until {@link #close()} is called.
+   *
+   * <p>With configReload set the connector follows changes to the config file, see
+   * {@link #applyConfiguration(ClientConfiguration)}.
    */
   public CurrencyConnector() {
-    if (config.useTls()) {
-      SslContextFactory sslContext = new SslContextFactory(config.getTlsKeystore());
+    this(ClientMetrics.create(new ClientConfiguration().getMetricsProvider()));
+  }
+
+  /**
+   * Constructor for a connector that reports to the given metrics.
+   *
+   * <p>The metrics may be shared with other connectors, this connector's gauges are registered
+   * under its own scope, connector-[n], and removed when it's closed.
+   */
+  public CurrencyConnector(ClientMetrics metrics) {
+    this.metrics = new ScopedMetrics(metrics, "connector-" + connectorCount.incrementAndGet());
+    EndpointLimiter endpointLimiter = new EndpointLimiter(this.metrics);
+    this.limiter = endpointLimiter.isEnabled() ? endpointLimiter : null;
+    if (config.useResponseCache()) {
+      responseCache = new ResponseCache(config.getResponseCacheSize());
+      responseCache.setTtl("/rs/ListCurrencies", config.getResponseCacheTtlListCurrencies());
+      responseCache.setTtl("/rs/ListAllAddresses", config.getResponseCacheTtlListAllAddresses());
+      responseCache
+          .setTtl("/rs/GetSignersForTransaction", config.getResponseCacheTtlGetSigners());
+      responseCache.setTtl("/rs/GetTransaction", config.getResponseCacheTtlGetTransaction());
+      this.metrics.registerGauge("cache.size", responseCache::size);
+      this.metrics.registerGauge("cache.hits", responseCache::getHits);
+      this.metrics.registerGauge("cache.misses", responseCache::getMisses);
+    }
+    this.metrics.registerGauge("monitor.pendingTransactions",
+        () -> sumMonitors(MonitorState::getPendingTransactionCount));
+    this.metrics.registerGauge("monitor.dedupSize",
+        () -> sumMonitors(state -> state.getDedupIndex().size()));
+    this.metrics.registerGauge("monitor.dedupEvictions",
+        () -> sumMonitors(state -> state.getDedupIndex().getEvictions()));
+    this.metrics.registerGauge("monitor.dedupBytes",
+        () -> sumMonitors(state -> state.getDedupIndex().getEstimatedBytes()));
+    registerNodeGauges();
+    if (config.useConfigReload()) {
+      ClientConfiguration.addReloadListener(reloadListener);
+    }
+  }
+
+  private void registerNodeGauges() {
+    if (nodeSelector.getNodes().size() > 1) {
+      for (CosignerNode node : nodeSelector.getNodes()) {
+        metrics.registerGauge("node." + node.getRsUrl() + ".outstanding", node::getOutstanding);
+        metrics.registerGauge("node." + node.getRsUrl() + ".ejected",
+            () -> node.isEjected() ? 1 : 0);
+      }
+    }
+  }
+
+  /**
+   * Removes the gauges of nodes the current selector no longer reports on.
+   */
+  private void removeNodeGauges(List<CosignerNode> previousNodes) {
+    List<CosignerNode> current = nodeSelector.getNodes();
+    for (CosignerNode node : previousNodes) {
+      if (current.size() == 1 || !current.contains(node)) {
+        metrics.removeGauge("node." + node.getRsUrl() + ".outstanding");
+        metrics.removeGauge("node." + node.getRsUrl() + ".ejected");
+      }
+    }
+  }
+
+  /**
+   * Metrics this connector reports to, gauges registered here are scoped to the connector.
+   */
+  public ScopedMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * The configured cosigner servers and their current health.
+   */
+  public List<CosignerNode> getNodes() {
+    return nodeSelector.getNodes();
+  }
+
+  /**
+   * Per-endpoint rate and concurrency limits, null if none are configured.
+   */
+  EndpointLimiter getLimiter() {
+    return limiter;
+  }
+
+  private long sumMonitors(ToLongFunction<MonitorState> value) {
+    return monitoredAddresses.values().stream().flatMap(Set::stream).distinct()
+        .filter(MonitorState::isActive).mapToLong(value).sum();
+  }
+
+  /**
+   * Starts the HTTP client.
+   *
+   * <p>Requests will start the client on demand, calling this ahead of time just moves the startup
+   * cost out of the first request.
+   */
+  public void start() throws Exception {
+    getHttpClient();
+  }
+
+  /**
+   * An HTTP client and the number of requests running on it, so that once a reload replaces it the
+   * old client can be stopped when they're done.
+   */
+  /**
+   * Builds a request against a given server.
+   */
+  private interface NodeRequest {
+    Request build(CosignerNode node) throws Exception;
+  }
+
+  /**
+   * Thrown by sendRequest when the server didn't answer, wrapping the original failure.
+   */
+  private static final class NodeUnavailableException extends Exception {
+    private static final long serialVersionUID = 1L;
+    private final Exception failure;
+
+    NodeUnavailableException(Exception failure) {
+      super(failure);
+      this.failure = failure;
+    }
+  }
+
+  private static final class HttpClientGeneration {
+    private final HttpClient client;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    HttpClientGeneration(HttpClient client) {
+      this.client = client;
+    }
+  }
+
+  /**
+   * The started HTTP client, created along with the TLS context on first use.
+   */
+  private HttpClientGeneration getHttpClient() throws Exception {
+    HttpClientGeneration generation = httpClient;
+    if (generation != null && generation.client.isStarted()) {
+      return generation;
+    }
+    synchronized (this) {
+      if (httpClient == null) {
+        HttpClient client = config.useTls() ? new HttpClient(getSslContext()) : new HttpClient();
+        client.setMaxConnectionsPerDestination(config.getMaxConnectionsPerDestination());
+        client.setMaxRequestsQueuedPerDestination(config.getMaxRequestsQueuedPerDestination());
+        client.setConnectTimeout(config.getConnectTimeout());
+        client.setIdleTimeout(config.getIdleTimeout());
+        httpClient = new HttpClientGeneration(client);
+      }
+      if (!httpClient.client.isStarted()) {
+        httpClient.client.start();
+      }
+      return httpClient;
+    }
+  }
+
+  /**
+   * The started websocket client, created on first use.
+   */
+  private synchronized WebSocketClient getWebSocketClient() throws Exception {
+    if (webSocketClient == null) {
+      webSocketClient =
+          config.useTls() ? new WebSocketClient(getSslContext()) : new WebSocketClient();
+    }
+    if (!webSocketClient.isStarted()) {
+      webSocketClient.start();
+    }
+    return webSocketClient;
+  }
+
+  /**
+   * TLS settings shared by the HTTP and websocket clients. The keystore is only read when the first
+   * of them starts.
+   */
+  private synchronized SslContextFactory getSslContext() {
+    if (sslContext == null) {
+      sslContext = new SslContextFactory(config.getTlsKeystore());
       sslContext.setKeyStorePassword(config.getTlsKeystorePassword());
       sslContext.setTrustStorePath(config.getTlsKeystore());
       sslContext.setTrustStorePassword(config.getTlsKeystorePassword());
       sslContext.setCertAlias(config.getTlsCertAlias());
-      httpClient = new HttpClient(sslContext);
-      webSocketClient = new WebSocketClient(sslContext);
+      sslContext.setSessionCachingEnabled(true);
+      sslContext.setSslSessionCacheSize(config.getTlsSessionCacheSize());
+      sslContext.setSslSessionTimeout(config.getTlsSessionTimeout());
     }
+    return sslContext;
   }
 
-  private String restPostRequest(String endpoint, String content) throws Exception {
+  /**
+   * Stops the HTTP and websocket clients, releasing pooled connections and threads, and removes
+   * the connector's gauges.
+   */
+  @Override
+  public synchronized void close() {
+    ClientConfiguration.removeReloadListener(reloadListener);
+    metrics.close();
     try {
-      logger.debug("Sending POST request to: " + config.getRsServerUrl() + endpoint);
-      httpClient.start();
-      Request request = httpClient.newRequest(config.getRsServerUrl() + endpoint);
-      request = request.method(HttpMethod.POST);
-      request = request.content(new StringContentProvider(content, "UTF-8"));
-      ContentResponse response = request.send();
-      logger.debug("Got response: " + response.getContentAsString());
-      CosignerResponse cosignerResponse = (CosignerResponse) Json
-          .objectifyString(CosignerResponse.class, response.getContentAsString());
-      if (cosignerResponse.getError() != null && !cosignerResponse.getError().isEmpty()) {
-        throw new Exception(cosignerResponse.getError());
+      if (httpClient != null && httpClient.client.isStarted()) {
+        httpClient.client.stop();
       }
-      return cosignerResponse.getResult();
     } catch (Exception e) {
       logger.error(null, e);
-      throw e;
-    } finally {
+    }
+    try {
+      if (webSocketClient != null && webSocketClient.isStarted()) {
+        webSocketClient.stop();
+      }
+    } catch (Exception e) {
+      logger.error(null, e);
+    }
+    for (LifeCycle retired : retiredClients) {
+      stopRetired(retired);
+    }
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+      scheduler = null;
+    }
+    if (backfillExecutor != null) {
+      backfillExecutor.shutdownNow();
+      backfillExecutor = null;
+    }
+  }
+
+  /**
+   * Switches the connector over to a reloaded configuration.
+   *
+   * <p>Only what the changed settings feed into is rebuilt. New TLS settings replace the TLS
+   * context along with both clients, new connection pool settings replace the HTTP client, and new
+   * server or node selection settings replace the node selector, keeping the health and pinned
+   * transactions of servers that are still listed. A replaced HTTP client keeps serving the
+   * requests already running on it and is stopped once they finish, or after the old idleTimeout.
+   * A replaced websocket client keeps its open monitors until they close, reconnects go through
+   * the new one.
+   */
+  synchronized void applyConfiguration(ClientConfiguration updated) {
+    ClientConfiguration previous = config;
+    config = updated;
+
+    boolean tlsChanged = !tlsSettings(previous).equals(tlsSettings(updated));
+    boolean poolChanged = !poolSettings(previous).equals(poolSettings(updated));
+    if (tlsChanged) {
+      sslContext = null;
+      if (webSocketClient != null) {
+        WebSocketClient retired = webSocketClient;
+        webSocketClient = null;
+        logger.info("TLS settings changed, replacing the websocket client");
+        retire(retired, () -> retired.getOpenSessions().isEmpty(), Long.MAX_VALUE,
+            WEBSOCKET_DRAIN_INTERVAL);
+      }
+    }
+    if ((tlsChanged || poolChanged) && httpClient != null) {
+      HttpClientGeneration retired = httpClient;
+      httpClient = null;
+      logger.info("Connection settings changed, replacing the HTTP client");
+      retire(retired.client, () -> retired.inFlight.get() == 0,
+          System.currentTimeMillis() + previous.getIdleTimeout(), HTTP_DRAIN_INTERVAL);
+    }
+    if (!nodeSettings(previous).equals(nodeSettings(updated))) {
+      List<CosignerNode> previousNodes = nodeSelector.getNodes();
+      nodeSelector = new NodeSelector(updated, nodeSelector);
+      removeNodeGauges(previousNodes);
+      registerNodeGauges();
+      logger.info("Cosigner servers now {}", nodeSelector.getNodes());
+    }
+  }
+
+  private static List<Object> tlsSettings(ClientConfiguration config) {
+    return Arrays.asList(config.useTls(), config.getTlsKeystore(), config.getTlsKeystorePassword(),
+        config.getTlsCertAlias(), config.getTlsSessionCacheSize(), config.getTlsSessionTimeout());
+  }
+
+  private static List<Object> poolSettings(ClientConfiguration config) {
+    return Arrays.asList(config.getMaxConnectionsPerDestination(),
+        config.getMaxRequestsQueuedPerDestination(), config.getConnectTimeout(),
+        config.getIdleTimeout());
+  }
+
+  private static List<Object> nodeSettings(ClientConfiguration config) {
+    return Arrays.asList(config.getRsServerUrls(), config.getWsServerUrls(),
+        config.getNodeSelection(), config.getNodeEjectionFailures(),
+        config.getNodeEjectionTime());
+  }
+
+  /**
+   * Stops a replaced client once it's idle or the deadline has passed, checking every interval.
+   */
+  private void retire(LifeCycle client, BooleanSupplier idle, long deadline, long interval) {
+    retiredClients.add(client);
+    ScheduledExecutorService retirement = getScheduler();
+    retirement.schedule(new Runnable() {
+      @Override
+      public void run() {
+        if (!idle.getAsBoolean() && System.currentTimeMillis() < deadline) {
+          retirement.schedule(this, interval, TimeUnit.MILLISECONDS);
+        } else {
+          stopRetired(client);
+        }
+      }
+    }, interval, TimeUnit.MILLISECONDS);
+  }
+
+  private void stopRetired(LifeCycle client) {
+    if (retiredClients.remove(client)) {
       try {
-        httpClient.stop();
+        client.stop();
       } catch (Exception e) {
-        logger.error(null, e);
+        logger.warn("Error stopping replaced client", e);
+      }
+    }
+  }
+
+  /**
+   * Scheduler for background work such as monitor reconnects, created on first use.
+   */
+  synchronized ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cosigner-client-scheduler");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return scheduler;
+  }
+
+  /**
+   * Pool that fetches missed transactions after monitor reconnects, created on first use.
+   */
+  synchronized ExecutorService getBackfillExecutor() {
+    if (backfillExecutor == null) {
+      AtomicInteger count = new AtomicInteger();
+      backfillExecutor = Executors.newFixedThreadPool(
+          Math.max(config.getMonitorBackfillParallelism(), 1), runnable -> {
+            Thread thread = new Thread(runnable, "cosigner-monitor-backfill-"
+                + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+    }
+    return backfillExecutor;
+  }
+
+  private String restPostRequest(String endpoint, CurrencyParameters params) throws Exception {
+    // The pooled buffer is only reused once the exchange completes, a timed out send returns
+    // while the client may still be writing the body
+    PooledContent body = CurrencyParametersCodec.toPooledContent(params);
+    String content = null;
+    CosignerNode node;
+    Request request;
+    try {
+      if (responseCache != null && responseCache.isCacheable(endpoint)) {
+        content = body.asString();
+        String cached = getCachedResponse(endpoint, content);
+        if (cached != null) {
+          body.release();
+          return cached;
+        }
       }
+      node = selectNode(endpoint, params);
+      request = newRequest(HttpMethod.POST, endpoint, node).content(body).onComplete(body);
+    } catch (RuntimeException e) {
+      body.release();
+      throw e;
+    }
+    return cacheResponse(endpoint, content, pinResponse(endpoint, node,
+        sendWithFailover(endpoint, node, request,
+            other -> newRequest(HttpMethod.POST, endpoint, other)
+                .content(CurrencyParametersCodec.toContent(params)))));
+  }
+
+  /**
+   * Picks the server for a request, keeping transaction stages on the server that prepared the
+   * transaction when pinTransactionStages is set.
+   */
+  CosignerNode selectNode(String endpoint, CurrencyParameters params) {
+    if (config.usePinTransactionStages() && TRANSACTION_STAGES.contains(endpoint)) {
+      return nodeSelector.select(params.getTransactionData());
     }
+    return nodeSelector.select();
+  }
+
+  /**
+   * Pins transaction data returned by a transaction stage to the server that returned it.
+   */
+  String pinResponse(String endpoint, CosignerNode node, String response) {
+    if (config.usePinTransactionStages() && TRANSACTION_PRODUCERS.contains(endpoint)) {
+      nodeSelector.pin(response, node);
+    }
+    return response;
   }
 
   private String restGetRequest(String endpoint) throws Exception {
+    String cached = getCachedResponse(endpoint, null);
+    if (cached != null) {
+      return cached;
+    }
+    CosignerNode node = nodeSelector.select();
+    return cacheResponse(endpoint, null, sendWithFailover(endpoint, node,
+        newRequest(HttpMethod.GET, endpoint, node),
+        other -> newRequest(HttpMethod.GET, endpoint, other)));
+  }
+
+  /**
+   * Cache for read-only calls, null unless responseCacheEnabled is set.
+   */
+  public ResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  String getCachedResponse(String endpoint, String content) {
+    if (responseCache == null || !responseCache.isCacheable(endpoint)) {
+      return null;
+    }
+    return responseCache.get(endpoint, content);
+  }
+
+  String cacheResponse(String endpoint, String content, String response) {
+    if (responseCache != null) {
+      responseCache.put(endpoint, content, response);
+    }
+    return response;
+  }
+
+  void invalidateCachedResponses(String endpoint) {
+    if (responseCache != null) {
+      responseCache.invalidate(endpoint);
+    }
+  }
+
+  /**
+   * Sends the request to its node. If the node doesn't answer an idempotent read, the read is sent
+   * to each other healthy node in turn until one does, otherwise the node's failure is thrown.
+   */
+  private String sendWithFailover(String endpoint, CosignerNode node, Request request,
+      NodeRequest retry) throws Exception {
+    Set<CosignerNode> tried = new HashSet<>();
+    CosignerNode current = node;
+    Request attempt = request;
+    while (true) {
+      tried.add(current);
+      try {
+        return sendRequest(attempt);
+      } catch (NodeUnavailableException e) {
+        CosignerNode other =
+            IDEMPOTENT_READS.contains(endpoint) ? nodeSelector.selectOther(tried) : null;
+        if (other == null) {
+          throw e.failure;
+        }
+        logger.warn("{} failed on {}, retrying on {}", endpoint, current, other);
+        current = other;
+        attempt = retry.build(other);
+      }
+    }
+  }
+
+  /**
+   * Sends a request, throwing a NodeUnavailableException if there was no response or the server
+   * answered with a 5xx.
+   */
+  private String sendRequest(Request request) throws Exception {
+    String endpoint = request.getPath();
+    long bytesSent =
+        request.getContent() == null ? 0 : Math.max(request.getContent().getLength(), 0);
+    long bytesReceived = 0;
+    boolean success = false;
+    boolean overloaded = true;
+    if (limiter != null) {
+      limiter.acquire(endpoint);
+    }
+    metrics.requestStarted(endpoint);
+    long start = System.nanoTime();
     try {
-      logger.debug("Sending GET request to: " + config.getRsServerUrl() + endpoint);
-      httpClient.start();
-      Request request = httpClient.newRequest(config.getRsServerUrl() + endpoint);
-      request = request.method(HttpMethod.GET);
       ContentResponse response = request.send();
-      logger.debug("Got response: " + response.getContentAsString());
-      CosignerResponse cosignerResponse = (CosignerResponse) Json
-          .objectifyString(CosignerResponse.class, response.getContentAsString());
-      if (cosignerResponse.getError() != null && !cosignerResponse.getError().isEmpty()) {
-        throw new Exception(cosignerResponse.getError());
+      overloaded = response.getStatus() >= 500;
+      bytesReceived = response.getContent().length;
+      if (logger.isDebugEnabled()) {
+        logger.debug("Got response: {}", response.getContentAsString());
       }
-      return cosignerResponse.getResult();
-    } catch (Exception e) {
+      String result = parseResponse(response.getContent());
+      success = true;
+      return result;
+    } catch (InterruptedException e) {
       logger.error(null, e);
       throw e;
+    } catch (Exception e) {
+      logger.error(null, e);
+      throw overloaded ? new NodeUnavailableException(e) : e;
     } finally {
-      try {
-        httpClient.stop();
-      } catch (Exception e) {
-        logger.error(null, e);
+      long duration = System.nanoTime() - start;
+      metrics.requestCompleted(endpoint, duration, bytesSent, bytesReceived, success);
+      if (limiter != null) {
+        limiter.release(endpoint, duration, overloaded);
       }
     }
   }
 
   /**
-   * Get wallets, with optional filter on currency code.
+   * Sends a request and iterates over the elements of its result array as the response streams in.
+   *
+   * <p>The returned stream holds an open response, close it if it isn't read to the end.
    */
-  @SuppressWarnings("unchecked")
-  public Iterable<Wallet> getWallets(Iterable<String> currencies, boolean onlyShowSupported)
+  private Stream<JsonNode> streamPostRequest(String endpoint, CurrencyParameters params)
       throws Exception {
-    // Build collection of all known currencies first.
-    LinkedList<CurrencyPackageInterface> currencyPackages = new LinkedList<>();
+    byte[] content = CurrencyParametersCodec.toBytes(params);
+    Request request = newRequest(HttpMethod.POST, endpoint, nodeSelector.select())
+        .content(new BytesContentProvider("text/plain;charset=UTF-8", content));
+    InputStreamResponseListener listener = new InputStreamResponseListener();
+    boolean success = false;
+    boolean overloaded = true;
+    if (limiter != null) {
+      limiter.acquire(endpoint);
+    }
+    metrics.requestStarted(endpoint);
+    long start = System.nanoTime();
+    try {
+      request.send(listener);
+      Response response = listener.get(config.getIdleTimeout(), TimeUnit.MILLISECONDS);
+      logger.debug("Got response status: {}", response.getStatus());
+      overloaded = response.getStatus() >= 500;
+      if (response.getStatus() / 100 != 2) {
+        throw new Exception(endpoint + " returned HTTP " + response.getStatus());
+      }
+      success = true;
+    } catch (Exception e) {
+      // Nothing will read the response, free the connection instead of leaving it half open
+      request.abort(e);
+      listener.getInputStream().close();
+      logger.error(null, e);
+      throw e;
+    } finally {
+      // Streamed bodies are timed to the response headers, their size isn't known up front
+      long duration = System.nanoTime() - start;
+      metrics.requestCompleted(endpoint, duration, content.length, 0, success);
+      if (limiter != null) {
+        limiter.release(endpoint, duration, overloaded);
+      }
+    }
 
-    String path =
-        CurrencyConnector.class.getProtectionDomain().getCodeSource().getLocation().toURI()
-            .getPath();
+    JsonResultIterator results = new JsonResultIterator(listener.getInputStream());
+    return StreamSupport
+        .stream(Spliterators.spliteratorUnknownSize(results, Spliterator.ORDERED), false)
+        .onClose(results::close);
+  }
 
-    JarFile jarFile = new JarFile(path);
-    Enumeration<JarEntry> e = jarFile.entries();
+  /**
+   * Builds a request against the next selected server, starting the HTTP client if needed.
+   */
+  Request newRequest(HttpMethod method, String endpoint) throws Exception {
+    return newRequest(method, endpoint, nodeSelector.select());
+  }
 
-    URL[] urls = {new URL("jar:file:" + path + "!/")};
-    URLClassLoader cl = URLClassLoader.newInstance(urls);
+  /**
+   * Builds a request against the given server, starting the HTTP client if needed.
+   *
+   * <p>The outcome is reported back to the node once the request completes, transport failures
+   * and 5xx responses count towards ejecting it.
+   */
+  Request newRequest(HttpMethod method, String endpoint, CosignerNode node) throws Exception {
+    logger.debug("Sending {} request to: {}{}", method, node.getRsUrl(), endpoint);
+    long[] start = new long[1];
+    HttpClientGeneration generation = getHttpClient();
+    NodeSelector selector = nodeSelector;
+    return generation.client.newRequest(node.getRsUrl() + endpoint).method(method)
+        .onRequestQueued(request -> {
+          start[0] = System.nanoTime();
+          node.requestStarted();
+          generation.inFlight.incrementAndGet();
+        })
+        .onComplete(result -> {
+          // Requests rejected before they were queued never counted as outstanding
+          if (start[0] != 0) {
+            node.requestFinished();
+            generation.inFlight.decrementAndGet();
+          }
+          selector.completed(node, System.nanoTime() - start[0],
+              result.isFailed() || result.getResponse().getStatus() >= 500);
+        });
+  }
 
-    while (e.hasMoreElements()) {
-      JarEntry je = e.nextElement();
-      if (je.isDirectory() || !je.getName().endsWith(".class")) {
-        continue;
-      }
-      // -6 because of .class
-      String className = je.getName().substring(0, je.getName().length() - 6);
-      className = className.replace('/', '.');
-      try {
-        Class c = cl.loadClass(className);
-        if (CurrencyPackageInterface.class.isAssignableFrom(c)) {
-          CurrencyPackageInterface newCurrency = (CurrencyPackageInterface) c.newInstance();
-          currencyPackages.add(newCurrency);
-        }
-      } catch (NoClassDefFoundError | Exception ex) {
-        // It's ok if the class isn't valid, we may be trying to load the actual interface.
-        logger.debug("Failed to load", ex);
-      }
-    }
+  /**
+   * Unwraps a cosigner response body, throwing if the server reported an error.
+   */
+  static String parseResponse(String content) throws Exception {
+    return parseResponse(content.getBytes(StandardCharsets.UTF_8));
+  }
 
-    LinkedList<String> supportedCurrencies = new LinkedList<>();
-    if (onlyShowSupported) {
-      supportedCurrencies
-          .addAll((LinkedList<String>) Json.objectifyString(LinkedList.class, listCurrencies()));
+  /**
+   * Unwraps a cosigner response body straight from the received bytes.
+   */
+  static String parseResponse(byte[] content) throws Exception {
+    CosignerResponse cosignerResponse = CurrencyParametersCodec.readResponse(content);
+    if (cosignerResponse == null) {
+      throw new Exception(
+          "Could not parse response: " + new String(content, StandardCharsets.UTF_8));
     }
+    if (cosignerResponse.getError() != null && !cosignerResponse.getError().isEmpty()) {
+      throw new Exception(cosignerResponse.getError());
+    }
+    return cosignerResponse.getResult();
+  }
+
+  /**
+   * Get wallets, with optional filter on currency code.
+   *
+   * <p>Currency packages are discovered once per JVM and wallets are shared per currency.
+   */
+  public Iterable<Wallet> getWallets(Iterable<String> currencies, boolean onlyShowSupported)
+      throws Exception {
+    Set<String> supportedCurrencies =
+        onlyShowSupported ? getSupportedCurrencies() : Collections.emptySet();
 
     LinkedList<Wallet> wallets = new LinkedList<>();
-    currencyPackages.forEach(currency -> {
-      if (!onlyShowSupported || supportedCurrencies
-          .contains(currency.getConfiguration().getCurrencySymbol())) {
+    CurrencyPackageRegistry.getPackages().keySet().forEach(symbol -> {
+      if (!onlyShowSupported || supportedCurrencies.contains(symbol)) {
         if (currencies != null && currencies.iterator().hasNext()) {
           currencies.forEach(filter -> {
-            if (filter.equalsIgnoreCase(currency.getConfiguration().getCurrencySymbol())) {
-              wallets.add(currency.getWallet());
+            if (filter.equalsIgnoreCase(symbol)) {
+              wallets.add(CurrencyPackageRegistry.getWallet(symbol));
             }
           });
         } else {
-          wallets.add(currency.getWallet());
+          wallets.add(CurrencyPackageRegistry.getWallet(symbol));
         }
       }
     });
@@ -179,6 +728,21 @@ public class CurrencyConnector {
     return wallets;
   }
 
+  /**
+   * Currencies supported by the server, cached for currencyListTtl milliseconds.
+   */
+  @SuppressWarnings("unchecked")
+  private Set<String> getSupportedCurrencies() throws Exception {
+    Set<String> current = supportedCurrencies;
+    if (current == null || System.currentTimeMillis() > supportedCurrenciesExpiry) {
+      current = new HashSet<>(
+          (LinkedList<String>) Json.objectifyString(LinkedList.class, listCurrencies()));
+      supportedCurrencies = current;
+      supportedCurrenciesExpiry = System.currentTimeMillis() + config.getCurrencyListTtl();
+    }
+    return current;
+  }
+
   /**
    * List currencies provided by cosigner server.
    */
@@ -190,53 +754,129 @@ public class CurrencyConnector {
    * Registers addresses for currency libraries that need a watch list.
    */
   public String registerAddress(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/RegisterAddress", paramString);
+    try {
+      return restPostRequest("/rs/RegisterAddress", params);
+    } finally {
+      invalidateCachedResponses("/rs/ListAllAddresses");
+    }
   }
 
   /**
    * Get a new address.
    */
   public String getNewAddress(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/GetNewAddress", paramString);
+    try {
+      return restPostRequest("/rs/GetNewAddress", params);
+    } finally {
+      invalidateCachedResponses("/rs/ListAllAddresses");
+    }
   }
 
   /**
    * Convert a public key into the relevant address.
    */
   public String convertKeytoAddress(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/GenerateAddressFromKey", paramString);
+    return restPostRequest("/rs/GenerateAddressFromKey", params);
   }
 
   /**
    * List all addresses that we have generated for the given user key and currency.
    */
   public String listAllAddresses(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/ListAllAddresses", paramString);
+    return restPostRequest("/rs/ListAllAddresses", params);
+  }
+
+  /**
+   * Streams the addresses generated for the given user key and currency one at a time.
+   */
+  public Stream<String> streamAllAddresses(CurrencyParameters params) throws Exception {
+    return streamPostRequest("/rs/ListAllAddresses", params).map(JsonNode::asText);
   }
 
   /**
    * List transactions for the given address and currency.
    */
   public String listTransactions(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/ListTransactions", paramString);
+    return restPostRequest("/rs/ListTransactions", params);
+  }
+
+  /**
+   * Streams the transactions for the given address and currency one at a time.
+   *
+   * <p>Use this instead of listTransactions for addresses with a long history, the response is
+   * never buffered as a whole. The stream must be closed if it isn't consumed fully.
+   */
+  public Stream<JsonNode> streamTransactions(CurrencyParameters params) throws Exception {
+    return streamPostRequest("/rs/ListTransactions", params);
   }
 
   public String getTransaction(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/GetTransaction", paramString);
+    return restPostRequest("/rs/GetTransaction", params);
   }
 
   /**
    * Returns the combined balance of all addresses provided in the parameters.
+   *
+   * <p>With useMonitorBalances set, addresses covered by a live monitor are answered from the
+   * balances it has been pushed, as long as they're no older than monitorBalanceMaxAge. The server
+   * is asked whenever any of the addresses isn't covered.
    */
   public String getBalance(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/GetBalance", paramString);
+    if (config.useMonitorBalances()) {
+      String monitoredBalance = getMonitoredBalance(params);
+      if (monitoredBalance != null) {
+        return monitoredBalance;
+      }
+    }
+    return restPostRequest("/rs/GetBalance", params);
+  }
+
+  private String getMonitoredBalance(CurrencyParameters params) {
+    if (params.getAccount() == null || params.getAccount().isEmpty()) {
+      return null;
+    }
+    BigDecimal total = BigDecimal.ZERO;
+    for (String address : params.getAccount()) {
+      BigDecimal balance = findMonitoredBalance(params.getCurrencySymbol(), address);
+      if (balance == null) {
+        return null;
+      }
+      total = total.add(balance);
+    }
+    return total.toPlainString();
+  }
+
+  private BigDecimal findMonitoredBalance(String currency, String address) {
+    Set<MonitorState> monitors = monitoredAddresses.get(currency + ":" + address);
+    if (monitors == null) {
+      return null;
+    }
+    for (MonitorState monitor : monitors) {
+      BigDecimal balance = monitor.getFreshBalance(address, config.getMonitorBalanceMaxAge());
+      if (balance != null) {
+        return balance;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Makes a monitor's balances available to getBalance while useMonitorBalances is set, until the
+   * monitor is closed.
+   */
+  void registerMonitor(String currency, Collection<String> addresses, MonitorState monitor) {
+    if (!config.useMonitorBalances() || addresses == null) {
+      return;
+    }
+    Set<String> registered = new HashSet<>(addresses);
+    registered.forEach(address -> monitoredAddresses
+        .computeIfAbsent(currency + ":" + address, key -> ConcurrentHashMap.newKeySet())
+        .add(monitor));
+    monitor.setCloseHandler(() -> registered.forEach(address -> monitoredAddresses
+        .computeIfPresent(currency + ":" + address, (key, monitors) -> {
+          monitors.remove(monitor);
+          return monitors.isEmpty() ? null : monitors;
+        })));
   }
 
   /**
@@ -246,33 +886,71 @@ public class CurrencyConnector {
    * initialized, and any new transactions that come in while it's active. Transactions can be
    * distinguished from balance updates in that the transaction data portion of the response has
    * data, it contains the transaction hash.
+   *
+   * <p>Each call opens its own session on the shared websocket client, use a
+   * {@link MonitorSubscriptionManager} when watching many address sets.
    */
   public MonitorWebSocket monitorBalance(CurrencyParameters params) {
-    try {
-      logger.debug("Connecting to websocket: " + config.getWsServerUrl() + "/ws/MonitorBalance");
-      logger.debug(
-          "Starting websocket with: " + Json.stringifyObject(CurrencyParameters.class, params));
-
-      if (!webSocketClient.isStarted()) {
-        webSocketClient.start();
-      }
-      Future<Session> session = webSocketClient
-          .connect(monitorSocket, new URI(config.getWsServerUrl() + "/ws/MonitorBalance"));
-
-      session.get().getRemote().sendString(Json.stringifyObject(CurrencyParameters.class, params));
+    return monitorBalance(params, null);
+  }
 
+  /**
+   * Sets up a monitor for the given addresses, registering the listener before the subscription is
+   * sent so that it sees the initial balances and transactions.
+   */
+  public MonitorWebSocket monitorBalance(CurrencyParameters params, MonitorListener listener) {
+    MonitorWebSocket monitorSocket = new MonitorWebSocket();
+    if (listener != null) {
+      monitorSocket.addListener(listener);
+    }
+    if (config.useMonitorAutoReconnect()) {
+      enableReconnect(monitorSocket, () -> params);
+    }
+    try {
+      connectMonitor(monitorSocket, params);
+      registerMonitor(params.getCurrencySymbol(), params.getAccount(), monitorSocket.getState());
       return monitorSocket;
     } catch (Exception e) {
       logger.error(null, e);
-      try {
-        webSocketClient.stop();
-      } catch (Exception e1) {
-        logger.error(null, e);
-      }
+      monitorSocket.closeConnection();
       return null;
     }
   }
 
+  /**
+   * Reconnects the socket whenever it drops, resending the subscription and backfilling missed
+   * transactions.
+   */
+  MonitorReconnector enableReconnect(MonitorWebSocket monitorSocket,
+      Supplier<CurrencyParameters> subscription) {
+    return new MonitorReconnector(this, monitorSocket, subscription, getScheduler());
+  }
+
+  /**
+   * Opens a monitor session on the shared websocket client and sends the subscription.
+   */
+  void connectMonitor(MonitorWebSocket monitorSocket, CurrencyParameters params)
+      throws Exception {
+    // Each connect picks a server again, so reconnects fail over when a node goes away
+    String wsUrl = nodeSelector.select().getWsUrl();
+    logger.debug("Connecting to websocket: {}/ws/MonitorBalance", wsUrl);
+    String subscription = CurrencyParametersCodec.toString(params);
+    logger.debug("Starting websocket with: {}", subscription);
+    monitorSocket.setMetrics(metrics);
+
+    Future<Session> session = getWebSocketClient()
+        .connect(monitorSocket, new URI(wsUrl + "/ws/MonitorBalance"));
+
+    Session opened = session.get();
+    try {
+      opened.getRemote().sendString(subscription);
+    } catch (Exception e) {
+      // Don't leave an unsubscribed session behind, the caller retries with a new one
+      opened.close();
+      throw e;
+    }
+  }
+
   /**
    * Create and sign a transaction.
    *
@@ -280,8 +958,7 @@ public class CurrencyConnector {
    * transaction. The server keys are not used until the approve stage.
    */
   public String prepareTransaction(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/PrepareTransaction", paramString);
+    return restPostRequest("/rs/PrepareTransaction", params);
   }
 
   /**
@@ -289,8 +966,7 @@ public class CurrencyConnector {
    */
   @SuppressWarnings("unchecked")
   public Iterable<String> getSignersForTransaction(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    String response = restPostRequest("/rs/GetSignersForTransaction", paramString);
+    String response = restPostRequest("/rs/GetSignersForTransaction", params);
     return (Iterable<String>) Json.objectifyString(Iterable.class, response);
   }
 
@@ -299,17 +975,27 @@ public class CurrencyConnector {
    */
   @SuppressWarnings("unchecked")
   public Iterable<Iterable<String>> getSignatureString(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    String response = restPostRequest("/rs/GetSignatureString", paramString);
+    String response = restPostRequest("/rs/GetSignatureString", params);
     return (Iterable<Iterable<String>>) Json.objectifyString(Iterable.class, response);
   }
 
+  /**
+   * Signs the transaction's offline signing data with keys held by the local signer.
+   *
+   * <p>Returns the signing data with a signature appended to each entry, in the format
+   * {@link LocalSigner} documents for the parameters' currency, for use with
+   * {@link #applySignature(CurrencyParameters)}.
+   */
+  public Iterable<Iterable<String>> signLocally(CurrencyParameters params, LocalSigner signer)
+      throws Exception {
+    return signer.sign(params.getCurrencySymbol(), getSignatureString(params));
+  }
+
   /**
    * Apply an offline signature to transaction.
    */
   public String applySignature(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/ApplySignature", paramString);
+    return restPostRequest("/rs/ApplySignature", params);
   }
 
   /**
@@ -319,15 +1005,13 @@ public class CurrencyConnector {
    * checks and validation required.
    */
   public String approveTransaction(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/ApproveTransaction", paramString);
+    return restPostRequest("/rs/ApproveTransaction", params);
   }
 
   /**
    * Submits a transaction for processing on the network.
    */
   public String broadcastTransaction(CurrencyParameters params) throws Exception {
-    String paramString = Json.stringifyObject(CurrencyParameters.class, params);
-    return restPostRequest("/rs/BroadcastTransaction", paramString);
+    return restPostRequest("/rs/BroadcastTransaction", params);
   }
 }
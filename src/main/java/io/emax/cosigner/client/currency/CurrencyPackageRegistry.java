@@ -0,0 +1,111 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.api.core.CurrencyPackageInterface;
+import io.emax.cosigner.api.currency.Wallet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Finds the currency packages available to the client, once per JVM.
+ *
+ * <p>Packages registered through {@link ServiceLoader} are used when there are any. Otherwise the
+ * client's jar is scanned a single time, as getWallets used to do on every call. Wallets are
+ * created on first use and then shared per currency symbol.
+ */
+final class CurrencyPackageRegistry {
+  private static final Logger logger = LoggerFactory.getLogger(CurrencyPackageRegistry.class);
+  private static volatile Map<String, CurrencyPackageInterface> packages;
+  private static final ConcurrentHashMap<String, Wallet> wallets = new ConcurrentHashMap<>();
+
+  private CurrencyPackageRegistry() {
+  }
+
+  /**
+   * Currency packages keyed by currency symbol.
+   */
+  static Map<String, CurrencyPackageInterface> getPackages() {
+    Map<String, CurrencyPackageInterface> current = packages;
+    if (current == null) {
+      synchronized (CurrencyPackageRegistry.class) {
+        current = packages;
+        if (current == null) {
+          current = Collections.unmodifiableMap(discover());
+          packages = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Returns the shared wallet for a currency symbol, or null if there's no such package.
+   */
+  static Wallet getWallet(String currencySymbol) {
+    CurrencyPackageInterface currency = getPackages().get(currencySymbol);
+    if (currency == null) {
+      return null;
+    }
+    return wallets.computeIfAbsent(currencySymbol, symbol -> currency.getWallet());
+  }
+
+  private static Map<String, CurrencyPackageInterface> discover() {
+    Map<String, CurrencyPackageInterface> found = new LinkedHashMap<>();
+    ClassLoader classLoader = CurrencyPackageRegistry.class.getClassLoader();
+
+    for (CurrencyPackageInterface currency : ServiceLoader
+        .load(CurrencyPackageInterface.class, classLoader)) {
+      found.putIfAbsent(currency.getConfiguration().getCurrencySymbol(), currency);
+    }
+    if (!found.isEmpty()) {
+      return found;
+    }
+
+    try {
+      String path =
+          CurrencyConnector.class.getProtectionDomain().getCodeSource().getLocation().toURI()
+              .getPath();
+      if (!new File(path).isFile()) {
+        logger.debug("Not running from a jar, skipping currency package scan");
+        return found;
+      }
+
+      try (JarFile jarFile = new JarFile(path)) {
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+          JarEntry entry = entries.nextElement();
+          if (entry.isDirectory() || !entry.getName().endsWith(".class")) {
+            continue;
+          }
+          // -6 because of .class
+          String className = entry.getName().substring(0, entry.getName().length() - 6);
+          className = className.replace('/', '.');
+          try {
+            Class<?> candidate = Class.forName(className, false, classLoader);
+            if (CurrencyPackageInterface.class.isAssignableFrom(candidate)) {
+              CurrencyPackageInterface currency =
+                  (CurrencyPackageInterface) candidate.newInstance();
+              found.putIfAbsent(currency.getConfiguration().getCurrencySymbol(), currency);
+            }
+          } catch (NoClassDefFoundError | Exception ex) {
+            // It's ok if the class isn't valid, we may be trying to load the actual interface.
+            logger.debug("Failed to load", ex);
+          }
+        }
+      }
+    } catch (Exception e) {
+      logger.warn("Could not scan for currency packages", e);
+    }
+    return found;
+  }
+}
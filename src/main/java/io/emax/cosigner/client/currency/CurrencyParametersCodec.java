@@ -0,0 +1,159 @@
+package io.emax.cosigner.client.currency;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import io.emax.cosigner.api.core.CosignerResponse;
+import io.emax.cosigner.api.core.CurrencyParameters;
+
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.ByteBufferContentProvider;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reads and writes request and response bodies without going through intermediate strings.
+ *
+ * <p>Readers and writers are created once and shared, they're immutable and thread safe. Requests
+ * are encoded straight to UTF-8 bytes instead of a String that the HTTP client encodes again.
+ */
+public final class CurrencyParametersCodec {
+  private static final String CONTENT_TYPE = "text/plain;charset=UTF-8";
+  private static final int MAX_POOLED_BUFFER = 64 * 1024;
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static final ObjectWriter paramsWriter =
+      objectMapper.writerFor(CurrencyParameters.class);
+  private static final ObjectReader paramsReader =
+      objectMapper.readerFor(CurrencyParameters.class);
+  private static final ObjectReader responseReader =
+      objectMapper.readerFor(CosignerResponse.class);
+  private static final ThreadLocal<ReusableBuffer> buffers =
+      ThreadLocal.withInitial(ReusableBuffer::new);
+
+  private static class ReusableBuffer extends ByteArrayOutputStream {
+    private final AtomicBoolean inUse = new AtomicBoolean();
+
+    ReusableBuffer() {
+      super(1024);
+    }
+
+    ByteBuffer wrap() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    void release() {
+      if (buf.length > MAX_POOLED_BUFFER) {
+        buf = new byte[1024];
+      }
+      reset();
+    }
+  }
+
+  /**
+   * Request body backed by a buffer that goes back to its thread's pool once released.
+   *
+   * <p>Register it as the request's complete listener, the HTTP client may still be reading the
+   * buffer after an aborted or timed out send has returned, but never after the exchange
+   * completes. A body that's never sent has to be released by hand, a body that's never released
+   * just costs its thread a new buffer.
+   */
+  public static final class PooledContent extends ByteBufferContentProvider
+      implements Response.CompleteListener {
+    private final ReusableBuffer buffer;
+
+    private PooledContent(ReusableBuffer buffer) {
+      super(CONTENT_TYPE, buffer.wrap());
+      this.buffer = buffer;
+    }
+
+    /**
+     * The encoded body as a string, for use as a cache key.
+     */
+    public String asString() {
+      ByteBuffer content = buffer.wrap();
+      return new String(content.array(), content.arrayOffset() + content.position(),
+          content.remaining(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Hands the buffer back for reuse, later calls do nothing.
+     */
+    public void release() {
+      buffer.inUse.set(false);
+    }
+
+    @Override
+    public void onComplete(Result result) {
+      release();
+    }
+  }
+
+  private CurrencyParametersCodec() {
+  }
+
+  /**
+   * Encodes the parameters as UTF-8 JSON.
+   */
+  public static byte[] toBytes(CurrencyParameters params) throws IOException {
+    return paramsWriter.writeValueAsBytes(params);
+  }
+
+  public static String toString(CurrencyParameters params) throws IOException {
+    return paramsWriter.writeValueAsString(params);
+  }
+
+  /**
+   * Parses parameters, returns null if the JSON isn't valid.
+   */
+  public static CurrencyParameters fromString(String json) {
+    try {
+      return paramsReader.readValue(json);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Request body that owns its bytes, safe to use with asynchronous sends.
+   */
+  public static ContentProvider toContent(CurrencyParameters params) throws IOException {
+    return new BytesContentProvider(CONTENT_TYPE, toBytes(params));
+  }
+
+  /**
+   * Request body backed by a buffer owned by the calling thread.
+   *
+   * <p>The buffer isn't reused until the body is released, see {@link PooledContent}. If the
+   * thread's buffer is still held by an earlier request the thread moves on to a new one.
+   */
+  public static PooledContent toPooledContent(CurrencyParameters params) throws IOException {
+    ReusableBuffer buffer = buffers.get();
+    if (!buffer.inUse.compareAndSet(false, true)) {
+      buffer = new ReusableBuffer();
+      buffer.inUse.set(true);
+      buffers.set(buffer);
+    }
+    buffer.release();
+    paramsWriter.writeValue(buffer, params);
+    return new PooledContent(buffer);
+  }
+
+  /**
+   * Parses a cosigner response body, returns null if it isn't valid.
+   */
+  static CosignerResponse readResponse(byte[] content) {
+    try {
+      return responseReader.readValue(content);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.client.ClientConfiguration;
+import io.emax.cosigner.client.metrics.ClientMetrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-endpoint throttling for requests to the cosigner server.
+ *
+ * <p>rateLimits is a comma separated list of endpoint:requestsPerSecond pairs, for example
+ * "/rs/GetBalance:200,/rs/ListTransactions:50". Endpoints that aren't listed have no rate limit.
+ * With useAdaptiveConcurrency each endpoint also gets its own {@link ConcurrencyLimiter}.
+ */
+class EndpointLimiter {
+  private final ClientConfiguration config = new ClientConfiguration();
+  private final ClientMetrics metrics;
+  private final Map<String, TokenBucket> rateLimits = new HashMap<>();
+  private final ConcurrentHashMap<String, ConcurrencyLimiter> concurrencyLimits =
+      new ConcurrentHashMap<>();
+
+  EndpointLimiter(ClientMetrics metrics) {
+    this.metrics = metrics;
+    for (String entry : config.getRateLimits().split(",")) {
+      int separator = entry.lastIndexOf(':');
+      if (separator <= 0) {
+        continue;
+      }
+      rateLimits.put(entry.substring(0, separator).trim(),
+          new TokenBucket(Double.parseDouble(entry.substring(separator + 1).trim()),
+              config.getRateLimitBurst()));
+    }
+  }
+
+  /**
+   * True if any endpoint is throttled, the connector skips the limiter entirely otherwise.
+   */
+  boolean isEnabled() {
+    return !rateLimits.isEmpty() || config.useAdaptiveConcurrency();
+  }
+
+  /**
+   * Waits until the endpoint's rate limit and concurrency limit allow another request.
+   */
+  void acquire(String endpoint) throws InterruptedException {
+    TokenBucket bucket = rateLimits.get(endpoint);
+    if (bucket != null) {
+      bucket.acquire();
+    }
+    ConcurrencyLimiter limiter = getConcurrencyLimiter(endpoint);
+    if (limiter != null) {
+      limiter.acquire();
+    }
+  }
+
+  /**
+   * Runs the task once the endpoint's rate limit and concurrency limit allow another request,
+   * without blocking the caller.
+   *
+   * <p>A rate limited task is delayed on the scheduler, a task held back by the concurrency limit
+   * runs on the thread of the request that frees its slot.
+   */
+  void acquire(String endpoint, ScheduledExecutorService scheduler, Runnable task) {
+    TokenBucket bucket = rateLimits.get(endpoint);
+    long wait = bucket == null ? 0 : bucket.reserve();
+    Runnable admit = () -> {
+      ConcurrencyLimiter limiter = getConcurrencyLimiter(endpoint);
+      if (limiter == null || limiter.tryAcquire(task)) {
+        task.run();
+      }
+    };
+    if (wait > 0) {
+      scheduler.schedule(admit, wait, TimeUnit.NANOSECONDS);
+    } else {
+      admit.run();
+    }
+  }
+
+  /**
+   * Reports how a request acquired through {@link #acquire} went.
+   */
+  void release(String endpoint, long latencyNanos, boolean overloaded) {
+    ConcurrencyLimiter limiter = getConcurrencyLimiter(endpoint);
+    if (limiter != null) {
+      limiter.release(latencyNanos, overloaded);
+    }
+  }
+
+  private ConcurrencyLimiter getConcurrencyLimiter(String endpoint) {
+    if (!config.useAdaptiveConcurrency()) {
+      return null;
+    }
+    return concurrencyLimits.computeIfAbsent(endpoint, key -> {
+      ConcurrencyLimiter limiter = new ConcurrencyLimiter(config.getConcurrencyInitialLimit(),
+          config.getConcurrencyMinLimit(), config.getConcurrencyMaxLimit(),
+          config.getConcurrencyLatencyTarget());
+      metrics.registerGauge("limiter." + key + ".limit", limiter::getLimit);
+      return limiter;
+    });
+  }
+}
@@ -0,0 +1,325 @@
+package io.emax.cosigner.client.currency;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks the elements of the array held in a cosigner response's result field.
+ *
+ * <p>The server encodes the result as a JSON string. Rather than letting a parser read that whole
+ * string into memory, the response is scanned by hand up to the result field and the string is
+ * unescaped on the fly into the parser that reads the array. Heap use stays at a small read buffer
+ * plus the current element, whatever the size of the response.
+ *
+ * <p>A non-empty error field fails the iterator wherever it appears. Before the result it's thrown
+ * from the constructor, after it from the call that reaches the end of the array.
+ */
+class JsonResultIterator implements Iterator<JsonNode>, AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(JsonResultIterator.class);
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static final JsonFactory jsonFactory = objectMapper.getFactory();
+
+  private final ResponseScanner response;
+  private Reader resultString;
+  private JsonParser resultParser;
+  private JsonNode next;
+  private boolean finished = false;
+
+  JsonResultIterator(InputStream input) throws Exception {
+    this.response = new ResponseScanner(new InputStreamReader(input, StandardCharsets.UTF_8));
+    try {
+      openResult();
+      advance();
+    } catch (Exception e) {
+      close();
+      throw e;
+    }
+  }
+
+  private void openResult() throws Exception {
+    if (response.nextSignificant() != '{') {
+      throw new Exception("Response is not a JSON object");
+    }
+    if (!readFields(response.nextSignificant())) {
+      finished = true;
+      return;
+    }
+    if (resultParser.nextToken() != JsonToken.START_ARRAY) {
+      throw new Exception("Result is not a JSON array");
+    }
+  }
+
+  /**
+   * Reads the object's fields from the given first character, stopping once the result string is
+   * open. Returns false if the object ended without one.
+   */
+  private boolean readFields(int separator) throws IOException {
+    while (separator == '"') {
+      String field = response.readString();
+      if (response.nextSignificant() != ':') {
+        throw new IOException("Malformed response");
+      }
+      int value = response.nextSignificant();
+      if ("error".equals(field) && value == '"') {
+        String error = response.readString();
+        if (!error.isEmpty()) {
+          throw new IOException(error);
+        }
+      } else if ("result".equals(field) && value == '"' && resultParser == null) {
+        resultString = response.stringReader();
+        resultParser = jsonFactory.createParser(resultString);
+        return true;
+      } else {
+        response.skipValue(value);
+      }
+      separator = response.nextSignificant();
+      if (separator == ',') {
+        separator = response.nextSignificant();
+      }
+    }
+    return false;
+  }
+
+  private void advance() throws IOException {
+    if (!finished && resultParser.nextToken() != JsonToken.END_ARRAY) {
+      next = objectMapper.readTree(resultParser);
+      return;
+    }
+    next = null;
+    try {
+      if (!finished) {
+        finished = true;
+        // The rest of the result string, then whatever fields follow it
+        resultString.skip(Long.MAX_VALUE);
+        int separator = response.nextSignificant();
+        if (separator == ',') {
+          readFields(response.nextSignificant());
+        }
+      }
+    } finally {
+      close();
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return next != null;
+  }
+
+  @Override
+  public JsonNode next() {
+    if (next == null) {
+      throw new NoSuchElementException();
+    }
+    JsonNode current = next;
+    try {
+      advance();
+    } catch (IOException e) {
+      close();
+      throw new UncheckedIOException(e);
+    }
+    return current;
+  }
+
+  @Override
+  public void close() {
+    try {
+      if (resultParser != null) {
+        resultParser.close();
+      }
+      response.close();
+    } catch (IOException e) {
+      logger.debug("Failed to close response stream", e);
+    }
+  }
+
+  /**
+   * Just enough of a JSON reader to find a field in the top-level object, buffered over the
+   * response.
+   */
+  private static final class ResponseScanner {
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position = 0;
+    private int limit = 0;
+
+    ResponseScanner(Reader reader) {
+      this.reader = reader;
+    }
+
+    int read() throws IOException {
+      if (position == limit) {
+        limit = reader.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+          limit = 0;
+          return -1;
+        }
+      }
+      return buffer[position++];
+    }
+
+    int nextSignificant() throws IOException {
+      int next;
+      do {
+        next = read();
+      } while (next == ' ' || next == '\n' || next == '\r' || next == '\t');
+      return next;
+    }
+
+    /**
+     * Reads the rest of a string whose opening quote has been consumed.
+     */
+    String readString() throws IOException {
+      StringBuilder value = new StringBuilder();
+      try (Reader string = stringReader()) {
+        int next;
+        while ((next = string.read()) != -1) {
+          value.append((char) next);
+        }
+      }
+      return value.toString();
+    }
+
+    /**
+     * The unescaped characters of a string whose opening quote has been consumed, ending at its
+     * closing quote.
+     */
+    Reader stringReader() {
+      return new StringValueReader(this);
+    }
+
+    /**
+     * Skips a value whose first character has been consumed.
+     */
+    void skipValue(int first) throws IOException {
+      if (first == '"') {
+        skipString();
+        return;
+      }
+      if (first != '{' && first != '[') {
+        // Number or literal, runs up to the next separator which is put back
+        int next = read();
+        while (next != -1 && next != ',' && next != '}' && next != ']') {
+          next = read();
+        }
+        if (next != -1) {
+          position--;
+        }
+        return;
+      }
+      int depth = 1;
+      while (depth > 0) {
+        int next = read();
+        if (next == -1) {
+          throw new IOException("Response ended inside a value");
+        } else if (next == '"') {
+          skipString();
+        } else if (next == '{' || next == '[') {
+          depth++;
+        } else if (next == '}' || next == ']') {
+          depth--;
+        }
+      }
+    }
+
+    private void skipString() throws IOException {
+      int next;
+      while ((next = read()) != '"') {
+        if (next == -1) {
+          throw new IOException("Response ended inside a string");
+        } else if (next == '\\') {
+          read();
+        }
+      }
+    }
+
+    void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  /**
+   * Unescapes a JSON string literal as it is read, stopping at the closing quote.
+   */
+  private static final class StringValueReader extends Reader {
+    private final ResponseScanner scanner;
+    private boolean ended = false;
+
+    StringValueReader(ResponseScanner scanner) {
+      this.scanner = scanner;
+    }
+
+    @Override
+    public int read(char[] target, int offset, int length) throws IOException {
+      if (ended) {
+        return -1;
+      }
+      int count = 0;
+      while (count < length) {
+        int next = scanner.read();
+        if (next == -1) {
+          throw new IOException("Response ended inside a string");
+        } else if (next == '"') {
+          ended = true;
+          break;
+        } else if (next == '\\') {
+          next = unescape(scanner.read());
+        }
+        target[offset + count++] = (char) next;
+      }
+      return count == 0 && ended ? -1 : count;
+    }
+
+    private int unescape(int escaped) throws IOException {
+      switch (escaped) {
+        case 'b':
+          return '\b';
+        case 'f':
+          return '\f';
+        case 'n':
+          return '\n';
+        case 'r':
+          return '\r';
+        case 't':
+          return '\t';
+        case 'u':
+          int code = 0;
+          for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(scanner.read(), 16);
+            if (digit < 0) {
+              throw new IOException("Bad unicode escape in response");
+            }
+            code = code * 16 + digit;
+          }
+          return code;
+        case '"':
+        case '\\':
+        case '/':
+          return escaped;
+        default:
+          throw new IOException("Bad escape in response");
+      }
+    }
+
+    @Override
+    public void close() {
+      // The response is closed by the iterator, the rest of it is never read
+    }
+  }
+}
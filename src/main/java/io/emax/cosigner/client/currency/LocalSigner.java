@@ -0,0 +1,323 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.client.ClientConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Signs offline signing data in-process for "bring-your-own-keys" setups.
+ *
+ * <p>Keys are read once from a keystore, each stored under the address it signs for. Every entry
+ * returned by {@link CurrencyConnector#getSignatureString} is expected to start with the address
+ * followed by the hex encoded hash to sign. The signed result is the same entry with the signature
+ * appended, ready to hand back through {@link CurrencyConnector#applySignature}:
+ *
+ * <ul>
+ * <li>For the currencies listed in signingRecoverableCurrencies (ETH by default) the hash is signed
+ * with ECDSA and three values are appended: hex r and s, each padded to the curve order's length,
+ * with s always the low one, then v in hex, 27 plus the recovery id ("1b" or "1c").</li>
+ * <li>For everything else one value is appended, the hex encoded DER signature the JDK produces
+ * for the key's algorithm, for example NONEwithECDSA over the hash.</li>
+ * </ul>
+ *
+ * <p>Addresses are looked up exactly as given, since base58 and other encodings are case
+ * sensitive. Only 0x prefixed hex addresses match regardless of case, their mixed case is just a
+ * checksum.
+ *
+ * <p>Entries are independent, so they are signed in parallel on a pool sized to the machine.
+ */
+public class LocalSigner implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(LocalSigner.class);
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final Pattern HEX_ADDRESS = Pattern.compile("0[xX][0-9a-fA-F]+");
+
+  private final Map<String, PrivateKey> keys = new ConcurrentHashMap<>();
+  private final ExecutorService executor;
+  private final int threads;
+  private final Set<String> recoverableCurrencies;
+  private final ThreadLocal<Map<String, Signature>> signatures =
+      ThreadLocal.withInitial(HashMap::new);
+
+  /**
+   * Loads keys from the configured signing keystore.
+   */
+  public LocalSigner() throws IOException, GeneralSecurityException {
+    this(new ClientConfiguration());
+  }
+
+  private LocalSigner(ClientConfiguration config) throws IOException, GeneralSecurityException {
+    this(readKeys(loadKeyStore(config.getSigningKeystore(), config.getSigningKeystorePassword()),
+        config.getSigningKeystorePassword()), config.getSigningThreads(),
+        parseCurrencies(config.getSigningRecoverableCurrencies()));
+  }
+
+  /**
+   * Loads every private key in the keystore, using the alias as the address.
+   *
+   * @param threads number of signing threads, 0 to use one per core.
+   */
+  public LocalSigner(KeyStore keyStore, String password, int threads)
+      throws GeneralSecurityException {
+    this(readKeys(keyStore, password), threads);
+  }
+
+  /**
+   * Signs with keys held elsewhere, mapped by the address they sign for.
+   *
+   * @param threads number of signing threads, 0 to use one per core.
+   */
+  public LocalSigner(Map<String, PrivateKey> keys, int threads) {
+    this(keys, threads,
+        parseCurrencies(new ClientConfiguration().getSigningRecoverableCurrencies()));
+  }
+
+  /**
+   * Signs with keys held elsewhere, mapped by the address they sign for.
+   *
+   * @param threads               number of signing threads, 0 to use one per core.
+   * @param recoverableCurrencies currencies that get r, s, v signatures instead of DER.
+   */
+  public LocalSigner(Map<String, PrivateKey> keys, int threads,
+      Collection<String> recoverableCurrencies) {
+    keys.forEach((address, key) -> this.keys.put(normalize(address), key));
+    logger.info("Loaded {} signing keys", this.keys.size());
+    this.recoverableCurrencies = new HashSet<>(recoverableCurrencies);
+
+    this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+      Thread thread = new Thread(runnable, "local-signer-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Reads a keystore from disk.
+   */
+  public static KeyStore loadKeyStore(String path, String password)
+      throws IOException, GeneralSecurityException {
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    try (InputStream input = Files.newInputStream(Paths.get(path))) {
+      keyStore.load(input, password.toCharArray());
+    }
+    return keyStore;
+  }
+
+  private static List<String> parseCurrencies(String currencies) {
+    return Arrays.stream(currencies.split(",")).map(String::trim)
+        .filter(currency -> !currency.isEmpty()).collect(Collectors.toList());
+  }
+
+  /**
+   * Hex addresses are case insensitive, everything else is matched exactly.
+   */
+  private static String normalize(String address) {
+    return HEX_ADDRESS.matcher(address).matches() ? address.toLowerCase() : address;
+  }
+
+  private static Map<String, PrivateKey> readKeys(KeyStore keyStore, String password)
+      throws GeneralSecurityException {
+    Map<String, PrivateKey> keys = new HashMap<>();
+    Enumeration<String> aliases = keyStore.aliases();
+    while (aliases.hasMoreElements()) {
+      String alias = aliases.nextElement();
+      if (!keyStore.isKeyEntry(alias)) {
+        continue;
+      }
+      Key key = keyStore.getKey(alias, password.toCharArray());
+      if (key instanceof PrivateKey) {
+        keys.put(alias, (PrivateKey) key);
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * True if a key is available for the address.
+   */
+  public boolean canSign(String address) {
+    return address != null && keys.containsKey(normalize(address));
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * True if the currency gets r, s, v signatures instead of DER.
+   */
+  public boolean isRecoverable(String currency) {
+    return currency != null && recoverableCurrencies.contains(currency);
+  }
+
+  /**
+   * Signs every entry with DER signatures, splitting the work evenly across the signing threads.
+   */
+  public Iterable<Iterable<String>> sign(Iterable<Iterable<String>> signatureData)
+      throws GeneralSecurityException {
+    return sign(null, signatureData);
+  }
+
+  /**
+   * Signs every entry in the format the currency expects, splitting the work evenly across the
+   * signing threads.
+   */
+  public Iterable<Iterable<String>> sign(String currency,
+      Iterable<Iterable<String>> signatureData) throws GeneralSecurityException {
+    boolean recoverable = isRecoverable(currency);
+    List<List<String>> entries = new ArrayList<>();
+    for (Iterable<String> entry : signatureData) {
+      List<String> values = new ArrayList<>();
+      entry.forEach(values::add);
+      entries.add(values);
+    }
+    if (entries.size() <= 1) {
+      List<Iterable<String>> signed = new ArrayList<>(entries.size());
+      for (List<String> entry : entries) {
+        signed.add(signEntry(entry, recoverable));
+      }
+      return signed;
+    }
+
+    int chunkSize = (entries.size() + threads - 1) / threads;
+    List<CompletableFuture<List<Iterable<String>>>> chunks = new ArrayList<>();
+    for (int i = 0; i < entries.size(); i += chunkSize) {
+      List<List<String>> chunk = entries.subList(i, Math.min(i + chunkSize, entries.size()));
+      chunks.add(CompletableFuture.supplyAsync(() -> {
+        List<Iterable<String>> signed = new ArrayList<>(chunk.size());
+        for (List<String> entry : chunk) {
+          try {
+            signed.add(signEntry(entry, recoverable));
+          } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+        return signed;
+      }, executor));
+    }
+
+    List<Iterable<String>> signed = new ArrayList<>(entries.size());
+    for (CompletableFuture<List<Iterable<String>>> chunk : chunks) {
+      try {
+        signed.addAll(chunk.join());
+      } catch (RuntimeException e) {
+        Throwable cause = e.getCause();
+        while (cause != null && !(cause instanceof GeneralSecurityException)) {
+          cause = cause.getCause();
+        }
+        if (cause != null) {
+          throw (GeneralSecurityException) cause;
+        }
+        throw e;
+      }
+    }
+    return signed;
+  }
+
+  /**
+   * Signs a single hash with the key for the address, returns the hex encoded DER signature.
+   */
+  public String sign(String address, String hash) throws GeneralSecurityException {
+    PrivateKey key = getKey(address);
+    Signature signature = signatures.get().get(key.getAlgorithm());
+    if (signature == null) {
+      signature = Signature.getInstance("NONEwith" + ("EC".equals(key.getAlgorithm())
+          ? "ECDSA" : key.getAlgorithm()));
+      signatures.get().put(key.getAlgorithm(), signature);
+    }
+    signature.initSign(key);
+    signature.update(fromHex(hash));
+    return toHex(signature.sign());
+  }
+
+  /**
+   * Signs a single hash with the EC key for the address, returns hex r, low s and v.
+   */
+  public List<String> signRecoverable(String address, String hash)
+      throws GeneralSecurityException {
+    PrivateKey key = getKey(address);
+    if (!(key instanceof ECPrivateKey)) {
+      throw new GeneralSecurityException("Recoverable signatures need an EC key for " + address);
+    }
+    return RecoverableSignature.sign((ECPrivateKey) key, fromHex(hash));
+  }
+
+  private PrivateKey getKey(String address) throws GeneralSecurityException {
+    PrivateKey key = address == null ? null : keys.get(normalize(address));
+    if (key == null) {
+      throw new GeneralSecurityException("No signing key for " + address);
+    }
+    return key;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private Iterable<String> signEntry(List<String> entry, boolean recoverable)
+      throws GeneralSecurityException {
+    if (entry.size() < 2) {
+      throw new GeneralSecurityException("Signing data needs an address and a hash: " + entry);
+    }
+    List<String> signed = new ArrayList<>(entry);
+    if (recoverable) {
+      signed.addAll(signRecoverable(entry.get(0), entry.get(1)));
+    } else {
+      signed.add(sign(entry.get(0), entry.get(1)));
+    }
+    return Collections.unmodifiableList(signed);
+  }
+
+  private static byte[] fromHex(String hex) {
+    String digits = hex.startsWith("0x") ? hex.substring(2) : hex;
+    if (digits.length() % 2 != 0) {
+      throw new IllegalArgumentException("Odd length hex string: " + hex);
+    }
+    byte[] bytes = new byte[digits.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) ((Character.digit(digits.charAt(2 * i), 16) << 4)
+          | Character.digit(digits.charAt(2 * i + 1), 16));
+    }
+    return bytes;
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+      hex[2 * i + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+}
@@ -0,0 +1,85 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+
+import java.math.BigDecimal;
+
+/**
+ * A balance change or new transaction seen by a monitor, as delivered by {@link MonitorPublisher}.
+ */
+public final class MonitorEvent {
+  public enum Type {
+    BALANCE, TRANSACTION
+  }
+
+  private final Type type;
+  private final String address;
+  private final BigDecimal previousBalance;
+  private final BigDecimal balance;
+  private final CurrencyParameters transaction;
+
+  private MonitorEvent(Type type, String address, BigDecimal previousBalance, BigDecimal balance,
+      CurrencyParameters transaction) {
+    this.type = type;
+    this.address = address;
+    this.previousBalance = previousBalance;
+    this.balance = balance;
+    this.transaction = transaction;
+  }
+
+  static MonitorEvent balance(String address, BigDecimal previousBalance, BigDecimal balance) {
+    return new MonitorEvent(Type.BALANCE, address, previousBalance, balance, null);
+  }
+
+  static MonitorEvent transaction(CurrencyParameters transaction) {
+    return new MonitorEvent(Type.TRANSACTION, null, null, null, transaction);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * The address whose balance changed, null for transactions.
+   */
+  public String getAddress() {
+    return address;
+  }
+
+  /**
+   * The balance before this change, null for transactions and the first report of an address.
+   */
+  public BigDecimal getPreviousBalance() {
+    return previousBalance;
+  }
+
+  /**
+   * The new balance, null for transactions.
+   */
+  public BigDecimal getBalance() {
+    return balance;
+  }
+
+  /**
+   * How much the balance moved, the whole balance the first time an address is reported.
+   */
+  public BigDecimal getChange() {
+    if (balance == null) {
+      return null;
+    }
+    return previousBalance == null ? balance : balance.subtract(previousBalance);
+  }
+
+  /**
+   * The transaction, null for balance updates.
+   */
+  public CurrencyParameters getTransaction() {
+    return transaction;
+  }
+
+  @Override
+  public String toString() {
+    return type == Type.BALANCE ? "Balance " + address + ": " + previousBalance + " -> " + balance
+        : "Transaction " + transaction.getTransactionData();
+  }
+}
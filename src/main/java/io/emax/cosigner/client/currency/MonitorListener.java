@@ -0,0 +1,36 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+
+import java.math.BigDecimal;
+
+/**
+ * Receives monitor events as they arrive.
+ *
+ * <p>Callbacks for a monitor are made one update at a time, on a websocket client thread or, for
+ * transactions fetched after a reconnect, on a backfill thread. Implementations should hand off
+ * anything slow, it holds up the monitor's next message.
+ */
+public interface MonitorListener {
+  /**
+   * Called when the balance of a monitored address changes, with the new balance.
+   *
+   * <p>Balances the server repeats unchanged are not reported.
+   */
+  default void onBalance(String address, String balance) {
+  }
+
+  /**
+   * Called when the balance of a monitored address changes, before {@link #onBalance}.
+   *
+   * @param previous the balance before the change, null the first time the address is reported.
+   */
+  default void onBalanceChange(String address, BigDecimal previous, BigDecimal balance) {
+  }
+
+  /**
+   * Called the first time a transaction is seen by the monitor.
+   */
+  default void onTransaction(CurrencyParameters transaction) {
+  }
+}
@@ -0,0 +1,110 @@
+package io.emax.cosigner.client.currency;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.api.core.CurrencyParametersRecipient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pulls the fields a monitor cares about out of a pushed message as it streams in.
+ *
+ * <p>Only currencySymbol, account, receivingAccount and transactionData are kept, everything else
+ * is skipped without being decoded into objects.
+ */
+final class MonitorMessageParser {
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private MonitorMessageParser() {
+  }
+
+  static CurrencyParameters parse(Reader reader) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(reader)) {
+      return parse(parser);
+    }
+  }
+
+  static CurrencyParameters parse(InputStream input) throws IOException {
+    try (JsonParser parser = jsonFactory.createParser(input)) {
+      return parse(parser);
+    }
+  }
+
+  private static CurrencyParameters parse(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new JsonParseException("Expected a JSON object", parser.getCurrentLocation());
+    }
+
+    CurrencyParameters params = new CurrencyParameters();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if (value == JsonToken.VALUE_NULL) {
+        continue;
+      }
+      switch (field) {
+        case "currencySymbol":
+          params.setCurrencySymbol(parser.getValueAsString());
+          break;
+        case "transactionData":
+          params.setTransactionData(parser.getValueAsString());
+          break;
+        case "account":
+          params.setAccount(readStrings(parser));
+          break;
+        case "receivingAccount":
+          params.setReceivingAccount(readRecipients(parser));
+          break;
+        default:
+          parser.skipChildren();
+          break;
+      }
+    }
+    return params;
+  }
+
+  private static List<String> readStrings(JsonParser parser) throws IOException {
+    List<String> values = new ArrayList<>();
+    if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return values;
+    }
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      values.add(parser.getValueAsString());
+    }
+    return values;
+  }
+
+  private static List<CurrencyParametersRecipient> readRecipients(JsonParser parser)
+      throws IOException {
+    List<CurrencyParametersRecipient> recipients = new ArrayList<>();
+    if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return recipients;
+    }
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      CurrencyParametersRecipient recipient = new CurrencyParametersRecipient();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        parser.nextToken();
+        if ("recipientAddress".equals(field)) {
+          recipient.setRecipientAddress(parser.getValueAsString());
+        } else if ("amount".equals(field)) {
+          recipient.setAmount(parser.getValueAsString());
+        } else {
+          parser.skipChildren();
+        }
+      }
+      recipients.add(recipient);
+    }
+    return recipients;
+  }
+}
@@ -0,0 +1,321 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.ClientConfiguration;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes a monitor's balance changes and new transactions as a Reactive Streams
+ * {@link Publisher}.
+ *
+ * <p>Every subscriber gets its own bounded buffer, filled by the monitor's listener callbacks and
+ * drained on a separate thread as the subscriber requests more. What happens when a buffer fills
+ * up is down to the subscriber's {@link OverflowPolicy}, by default monitorBufferSize events and
+ * monitorOverflowPolicy. Subscribers only see events published after they subscribe, the snapshot
+ * getters on {@link MonitorState} cover what came before.
+ *
+ * <p>Subscribers are completed when the monitor is closed, reconnects are invisible to them.
+ */
+public class MonitorPublisher implements Publisher<MonitorEvent>, MonitorListener {
+  private static final Logger logger = LoggerFactory.getLogger(MonitorPublisher.class);
+  private static final AtomicInteger threadCount = new AtomicInteger();
+  private static final Executor defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "monitor-publisher-" + threadCount.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final CopyOnWriteArrayList<BufferedSubscription> subscriptions =
+      new CopyOnWriteArrayList<>();
+  private final Executor executor;
+  private final int bufferSize;
+  private final OverflowPolicy overflowPolicy;
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile boolean completed = false;
+
+  MonitorPublisher() {
+    this(new ClientConfiguration());
+  }
+
+  private MonitorPublisher(ClientConfiguration config) {
+    this(config.getMonitorBufferSize(),
+        OverflowPolicy.fromString(config.getMonitorOverflowPolicy()), defaultExecutor);
+  }
+
+  /**
+   * Creates a publisher that delivers to subscribers on the given executor.
+   *
+   * @param bufferSize default number of events buffered per subscriber.
+   * @param overflowPolicy default policy once a subscriber's buffer is full.
+   */
+  public MonitorPublisher(int bufferSize, OverflowPolicy overflowPolicy, Executor executor) {
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+    }
+    this.bufferSize = bufferSize;
+    this.overflowPolicy = overflowPolicy;
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super MonitorEvent> subscriber) {
+    subscribe(subscriber, bufferSize, overflowPolicy);
+  }
+
+  /**
+   * Subscribes with a buffer size and overflow policy of its own.
+   */
+  public void subscribe(Subscriber<? super MonitorEvent> subscriber, int bufferSize,
+      OverflowPolicy overflowPolicy) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber");
+    }
+    BufferedSubscription subscription =
+        new BufferedSubscription(subscriber, Math.max(bufferSize, 1), overflowPolicy);
+    subscriptions.add(subscription);
+    if (completed) {
+      subscription.complete();
+    }
+    subscription.signal();
+  }
+
+  public int getSubscriberCount() {
+    return subscriptions.size();
+  }
+
+  /**
+   * Events dropped so far across all subscribers because their buffers were full. Balances folded
+   * into a newer one for the same address under LATEST_BALANCE aren't counted, their change still
+   * reaches the subscriber.
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  @Override
+  public void onBalanceChange(String address, BigDecimal previous, BigDecimal balance) {
+    publish(MonitorEvent.balance(address, previous, balance));
+  }
+
+  @Override
+  public void onTransaction(CurrencyParameters transaction) {
+    publish(MonitorEvent.transaction(transaction));
+  }
+
+  private void publish(MonitorEvent event) {
+    for (BufferedSubscription subscription : subscriptions) {
+      subscription.offer(event);
+    }
+  }
+
+  /**
+   * Completes every subscriber once its buffer has been delivered.
+   */
+  void complete() {
+    completed = true;
+    for (BufferedSubscription subscription : subscriptions) {
+      subscription.complete();
+    }
+  }
+
+  private class BufferedSubscription implements Subscription, Runnable {
+    private final Subscriber<? super MonitorEvent> subscriber;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final ArrayDeque<MonitorEvent> buffer = new ArrayDeque<>();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicInteger pendingSignals = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile IllegalArgumentException badRequest;
+    private boolean done = false;
+    private boolean subscribed = false;
+
+    BufferedSubscription(Subscriber<? super MonitorEvent> subscriber, int capacity,
+        OverflowPolicy policy) {
+      this.subscriber = subscriber;
+      this.capacity = capacity;
+      this.policy = policy;
+    }
+
+    void offer(MonitorEvent published) {
+      synchronized (this) {
+        if (cancelled || done) {
+          return;
+        }
+        MonitorEvent event = published;
+        if (policy == OverflowPolicy.LATEST_BALANCE
+            && event.getType() == MonitorEvent.Type.BALANCE) {
+          event = mergeQueuedBalance(event);
+          if (event == null) {
+            return;
+          }
+        }
+        while (buffer.size() >= capacity && !cancelled) {
+          if (policy == OverflowPolicy.BLOCK) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              dropped.incrementAndGet();
+              return;
+            }
+          } else {
+            if (policy != OverflowPolicy.LATEST_BALANCE || !removeOldestBalance()) {
+              buffer.removeFirst();
+            }
+            dropped.incrementAndGet();
+          }
+        }
+        if (cancelled) {
+          return;
+        }
+        buffer.addLast(event);
+      }
+      signal();
+    }
+
+    /**
+     * Folds a still buffered change for the same address into the new one, so the subscriber sees
+     * a single change from the amount it last saw. Returns null if the two cancel out.
+     */
+    private MonitorEvent mergeQueuedBalance(MonitorEvent event) {
+      Iterator<MonitorEvent> queued = buffer.iterator();
+      while (queued.hasNext()) {
+        MonitorEvent earlier = queued.next();
+        if (earlier.getType() == MonitorEvent.Type.BALANCE
+            && earlier.getAddress().equals(event.getAddress())) {
+          queued.remove();
+          BigDecimal previous = earlier.getPreviousBalance();
+          if (previous != null && previous.compareTo(event.getBalance()) == 0) {
+            return null;
+          }
+          return MonitorEvent.balance(event.getAddress(), previous, event.getBalance());
+        }
+      }
+      return event;
+    }
+
+    private boolean removeOldestBalance() {
+      Iterator<MonitorEvent> queued = buffer.iterator();
+      while (queued.hasNext()) {
+        if (queued.next().getType() == MonitorEvent.Type.BALANCE) {
+          queued.remove();
+          return true;
+        }
+      }
+      return false;
+    }
+
+    void complete() {
+      synchronized (this) {
+        done = true;
+      }
+      signal();
+    }
+
+    @Override
+    public void request(long count) {
+      if (count <= 0) {
+        badRequest = new IllegalArgumentException(
+            "Requested " + count + " events, must be > 0 (Reactive Streams rule 3.9)");
+      } else {
+        long current;
+        long updated;
+        do {
+          current = requested.get();
+          updated = current + count < 0 ? Long.MAX_VALUE : current + count;
+        } while (!requested.compareAndSet(current, updated));
+      }
+      signal();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      subscriptions.remove(this);
+      synchronized (this) {
+        buffer.clear();
+        notifyAll();
+      }
+    }
+
+    void signal() {
+      // Only one drain runs at a time, signals that arrive meanwhile make it loop again
+      if (pendingSignals.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        try {
+          drain();
+        } catch (RuntimeException e) {
+          logger.warn("Monitor subscriber failed, cancelling it", e);
+          cancel();
+        }
+        missed = pendingSignals.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void drain() {
+      if (!subscribed) {
+        subscribed = true;
+        subscriber.onSubscribe(this);
+      }
+      if (cancelled) {
+        return;
+      }
+      if (badRequest != null) {
+        cancel();
+        subscriber.onError(badRequest);
+        return;
+      }
+
+      long demand = requested.get();
+      long emitted = 0;
+      while (emitted < demand && !cancelled) {
+        MonitorEvent event;
+        synchronized (this) {
+          event = buffer.poll();
+          if (event != null && policy == OverflowPolicy.BLOCK) {
+            notifyAll();
+          }
+        }
+        if (event == null) {
+          break;
+        }
+        subscriber.onNext(event);
+        emitted++;
+      }
+      if (emitted > 0 && demand != Long.MAX_VALUE) {
+        requested.addAndGet(-emitted);
+      }
+
+      boolean finished;
+      synchronized (this) {
+        finished = done && buffer.isEmpty();
+      }
+      if (finished && !cancelled) {
+        cancel();
+        subscriber.onComplete();
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package io.emax.cosigner.client.currency;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.api.core.CurrencyParametersRecipient;
+import io.emax.cosigner.client.ClientConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Re-opens a dropped monitor session and fills in the transactions missed while it was down.
+ *
+ * <p>Attempts back off exponentially with jitter. After reconnecting the subscription is sent
+ * again and the recent transactions of every monitored address are fetched with ListTransactions,
+ * anything the monitor hasn't seen is delivered as if the server had pushed it. Backfill runs on
+ * the connector's backfill pool, up to monitorBackfillParallelism addresses at a time, so a large
+ * subscription doesn't hold up the scheduler.
+ *
+ * <p>Only one chain of attempts runs per socket. A close reported while an attempt is in progress,
+ * such as a session that drops right after opening, is left to that attempt's own retry.
+ */
+class MonitorReconnector {
+  private static final Logger logger = LoggerFactory.getLogger(MonitorReconnector.class);
+  private final ClientConfiguration config = new ClientConfiguration();
+  private final CurrencyConnector connector;
+  private final MonitorWebSocket socket;
+  private final Supplier<CurrencyParameters> subscription;
+  private final ScheduledExecutorService scheduler;
+  private int attempt = 0;
+  private volatile boolean reconnecting = false;
+
+  MonitorReconnector(CurrencyConnector connector, MonitorWebSocket socket,
+      Supplier<CurrencyParameters> subscription, ScheduledExecutorService scheduler) {
+    this.connector = connector;
+    this.socket = socket;
+    this.subscription = subscription;
+    this.scheduler = scheduler;
+    socket.setReconnectHandler(this::onDisconnect);
+  }
+
+  /**
+   * True from the moment the socket drops until a new session is open and subscribed.
+   */
+  boolean isReconnecting() {
+    return reconnecting;
+  }
+
+  private synchronized void onDisconnect() {
+    if (reconnecting) {
+      logger.debug("Monitor already reconnecting");
+      return;
+    }
+    reconnecting = true;
+    scheduleReconnect();
+  }
+
+  private synchronized void scheduleReconnect() {
+    long ceiling = config.getMonitorReconnectInitialDelay() << Math.min(attempt, 20);
+    ceiling = Math.min(ceiling, config.getMonitorReconnectMaxDelay());
+    long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    attempt++;
+
+    connector.getMetrics().monitorReconnect();
+    logger.info("Monitor disconnected, reconnecting in {}ms (attempt {})", delay, attempt);
+    try {
+      scheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      reconnecting = false;
+      logger.debug("Connector closed, not reconnecting monitor");
+    }
+  }
+
+  private void reconnect() {
+    CurrencyParameters params = subscription.get();
+    try {
+      connector.connectMonitor(socket, params);
+    } catch (Exception e) {
+      logger.warn("Monitor reconnect failed", e);
+      scheduleReconnect();
+      return;
+    }
+    synchronized (this) {
+      attempt = 0;
+      reconnecting = false;
+    }
+    if (!socket.isConnected()) {
+      // Dropped again before the flag was cleared, its close was ignored
+      onDisconnect();
+      return;
+    }
+
+    // Addresses added while reconnecting were only recorded, send them now
+    CurrencyParameters latest = subscription.get();
+    if (!sameAccounts(params, latest)) {
+      try {
+        socket.subscribe(latest);
+      } catch (Exception e) {
+        logger.warn("Could not resubscribe monitor", e);
+      }
+    }
+    backfill(latest);
+  }
+
+  private static boolean sameAccounts(CurrencyParameters first, CurrencyParameters second) {
+    if (first.getAccount() == null || second.getAccount() == null) {
+      return first.getAccount() == second.getAccount();
+    }
+    return new HashSet<>(first.getAccount()).equals(new HashSet<>(second.getAccount()));
+  }
+
+  private void backfill(CurrencyParameters params) {
+    if (params.getAccount() == null) {
+      return;
+    }
+
+    ExecutorService backfillPool = connector.getBackfillExecutor();
+    for (String address : params.getAccount()) {
+      try {
+        backfillPool.execute(() -> backfill(params, address));
+      } catch (RejectedExecutionException e) {
+        logger.debug("Connector closed, not backfilling monitor");
+        return;
+      }
+    }
+  }
+
+  private void backfill(CurrencyParameters params, String address) {
+    CurrencyParameters query = new CurrencyParameters();
+    query.setCurrencySymbol(params.getCurrencySymbol());
+    query.setAccount(Collections.singletonList(address));
+    query.setTransactionData(config.getMonitorBackfillDepth() + ":0");
+    try (Stream<JsonNode> transactions = connector.streamTransactions(query)) {
+      transactions.forEach(transaction -> {
+        String txHash = transaction.path("txHash").asText("");
+        if (!txHash.isEmpty() && !socket.getState().hasTransaction(txHash)) {
+          socket.addBackfilledTransaction(toMonitorMessage(params, address, transaction));
+        }
+      });
+    } catch (Exception e) {
+      logger.warn("Could not backfill transactions for {}", address, e);
+    }
+  }
+
+  private static CurrencyParameters toMonitorMessage(CurrencyParameters params, String address,
+      JsonNode transaction) {
+    CurrencyParameters message = new CurrencyParameters();
+    message.setCurrencySymbol(params.getCurrencySymbol());
+    message.setAccount(Collections.singletonList(address));
+    message.setTransactionData(transaction.path("txHash").asText());
+
+    List<CurrencyParametersRecipient> recipients = new LinkedList<>();
+    for (JsonNode toAddress : transaction.path("toAddress")) {
+      CurrencyParametersRecipient recipient = new CurrencyParametersRecipient();
+      recipient.setRecipientAddress(toAddress.asText());
+      recipient.setAmount(transaction.path("amount").asText());
+      recipients.add(recipient);
+    }
+    message.setReceivingAccount(recipients);
+    return message;
+  }
+}
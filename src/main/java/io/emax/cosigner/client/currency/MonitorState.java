@@ -0,0 +1,265 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.ClientConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Balances and transactions seen by a monitor, safe to read while the websocket updates them.
+ *
+ * <p>The server repeats every balance in its periodic updates. Balances are compared with the
+ * stored amount and listeners only hear about the ones that changed, so their work follows what
+ * moved rather than how many addresses are watched.
+ */
+public class MonitorState {
+  private static final Logger logger = LoggerFactory.getLogger(MonitorState.class);
+
+  private final ConcurrentHashMap<String, TrackedBalance> balances = new ConcurrentHashMap<>();
+  private volatile boolean active = true;
+  private final ClientConfiguration config = new ClientConfiguration();
+  private final TransactionDedupIndex seenTransactions =
+      new TransactionDedupIndex(config.getMonitorDedupSize(), config.getMonitorDedupWindow());
+  private final ArrayDeque<CurrencyParameters> recentTransactions = new ArrayDeque<>();
+  // Guarded by recentTransactions and capped at monitorHistorySize like it
+  private final ArrayDeque<CurrencyParameters> newTransactions = new ArrayDeque<>();
+  private final CopyOnWriteArrayList<MonitorListener> listeners = new CopyOnWriteArrayList<>();
+  private MonitorPublisher publisher;
+  private Runnable closeHandler;
+
+  private static final class TrackedBalance {
+    private final BigDecimal amount;
+    // Refreshed in place while the amount stays the same, so repeats don't touch the map
+    private volatile long updated;
+
+    TrackedBalance(BigDecimal amount, long updated) {
+      this.amount = amount;
+      this.updated = updated;
+    }
+  }
+
+  /**
+   * Copy of the latest balances, with amounts as plain strings.
+   */
+  public Map<String, String> getAllBalances() {
+    Map<String, String> copy = new HashMap<>(balances.size() * 2);
+    balances.forEach((address, balance) -> copy.put(address, balance.amount.toPlainString()));
+    return Collections.unmodifiableMap(copy);
+  }
+
+  /**
+   * Copy of the latest balances.
+   */
+  public Map<String, BigDecimal> getBalances() {
+    Map<String, BigDecimal> copy = new HashMap<>(balances.size() * 2);
+    balances.forEach((address, balance) -> copy.put(address, balance.amount));
+    return Collections.unmodifiableMap(copy);
+  }
+
+  /**
+   * The latest balance of the address, null if the server hasn't reported it.
+   */
+  public BigDecimal getBalance(String address) {
+    TrackedBalance balance = balances.get(address);
+    return balance == null ? null : balance.amount;
+  }
+
+  /**
+   * Returns the balance of the address if it was reported within maxAgeMillis, null otherwise.
+   */
+  public BigDecimal getFreshBalance(String address, long maxAgeMillis) {
+    TrackedBalance balance = balances.get(address);
+    if (balance == null || System.currentTimeMillis() - balance.updated > maxAgeMillis) {
+      return null;
+    }
+    return balance.amount;
+  }
+
+  /**
+   * False once the monitor behind this state has been closed.
+   */
+  public boolean isActive() {
+    return active;
+  }
+
+  void deactivate() {
+    active = false;
+    Runnable handler;
+    synchronized (this) {
+      if (publisher != null) {
+        publisher.complete();
+      }
+      handler = closeHandler;
+      closeHandler = null;
+    }
+    if (handler != null) {
+      handler.run();
+    }
+  }
+
+  /**
+   * Sets a handler that runs once when the monitor is closed, straight away if it already is.
+   */
+  void setCloseHandler(Runnable closeHandler) {
+    synchronized (this) {
+      if (active) {
+        this.closeHandler = closeHandler;
+        return;
+      }
+    }
+    closeHandler.run();
+  }
+
+  /**
+   * Balance updates and new transactions as a Reactive Streams publisher, created on first use.
+   */
+  public synchronized MonitorPublisher getPublisher() {
+    if (publisher == null) {
+      publisher = new MonitorPublisher();
+      addListener(publisher);
+      if (!active) {
+        publisher.complete();
+      }
+    }
+    return publisher;
+  }
+
+  /**
+   * Returns the most recent transactions, up to monitorHistorySize of them.
+   */
+  public Set<CurrencyParameters> getAllTransactions() {
+    synchronized (recentTransactions) {
+      return Collections.unmodifiableSet(new LinkedHashSet<>(recentTransactions));
+    }
+  }
+
+  /**
+   * Checks whether a transaction with the given hash has already been seen.
+   */
+  public boolean hasTransaction(String txHash) {
+    return seenTransactions.contains(txHash);
+  }
+
+  /**
+   * The index used to drop duplicate transactions, exposed for size and eviction metrics.
+   */
+  public TransactionDedupIndex getDedupIndex() {
+    return seenTransactions;
+  }
+
+  /**
+   * Number of transactions waiting to be returned by getNewTransactions.
+   */
+  public int getPendingTransactionCount() {
+    synchronized (recentTransactions) {
+      return newTransactions.size();
+    }
+  }
+
+  /**
+   * Returns the new transactions since the last time this was called.
+   *
+   * <p>At most monitorHistorySize are kept between calls, the oldest are dropped first. Monitors
+   * that are only read through listeners never call this, so the queue can't rely on it.
+   */
+  public Set<CurrencyParameters> getNewTransactions() {
+    synchronized (recentTransactions) {
+      Set<CurrencyParameters> retSet = new LinkedHashSet<>(newTransactions);
+      newTransactions.clear();
+      return retSet;
+    }
+  }
+
+  /**
+   * Registers a listener that is called for every balance update and new transaction.
+   */
+  public void addListener(MonitorListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(MonitorListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Records a balance reported by the server, notifying listeners if it changed.
+   *
+   * <p>Returns false if the amount is the same as before, only its freshness is updated then.
+   */
+  boolean updateBalance(String address, BigDecimal balance) {
+    long now = System.currentTimeMillis();
+    TrackedBalance current = balances.get(address);
+    if (current != null && current.amount.compareTo(balance) == 0) {
+      current.updated = now;
+      return false;
+    }
+
+    // Compare and replace in one step, so concurrent updates each see the amount they replaced
+    TrackedBalance[] replaced = new TrackedBalance[1];
+    boolean[] changed = new boolean[1];
+    balances.compute(address, (key, existing) -> {
+      if (existing != null && existing.amount.compareTo(balance) == 0) {
+        existing.updated = now;
+        return existing;
+      }
+      replaced[0] = existing;
+      changed[0] = true;
+      return new TrackedBalance(balance, now);
+    });
+    if (!changed[0]) {
+      return false;
+    }
+    BigDecimal previousAmount = replaced[0] == null ? null : replaced[0].amount;
+    if (listeners.isEmpty()) {
+      return true;
+    }
+    String plainBalance = balance.toPlainString();
+    listeners.forEach(listener -> {
+      try {
+        listener.onBalanceChange(address, previousAmount, balance);
+        listener.onBalance(address, plainBalance);
+      } catch (RuntimeException e) {
+        logger.warn("Monitor listener failed", e);
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Records a transaction, returns false if its hash had already been seen.
+   */
+  boolean addTransaction(CurrencyParameters transaction) {
+    if (!seenTransactions.add(transaction.getTransactionData())) {
+      return false;
+    }
+    synchronized (recentTransactions) {
+      recentTransactions.addLast(transaction);
+      while (recentTransactions.size() > config.getMonitorHistorySize()) {
+        recentTransactions.removeFirst();
+      }
+      newTransactions.addLast(transaction);
+      while (newTransactions.size() > config.getMonitorHistorySize()) {
+        newTransactions.removeFirst();
+      }
+    }
+    listeners.forEach(listener -> {
+      try {
+        listener.onTransaction(transaction);
+      } catch (RuntimeException e) {
+        logger.warn("Monitor listener failed", e);
+      }
+    });
+    return true;
+  }
+}
@@ -0,0 +1,42 @@
+package io.emax.cosigner.client.currency;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * One set of addresses watched through a {@link MonitorSubscriptionManager}.
+ *
+ * <p>Only updates for this subscription's addresses show up in its state and listeners, even though
+ * the underlying sessions are shared with other subscriptions.
+ */
+public class MonitorSubscription extends MonitorState implements AutoCloseable {
+  private final MonitorSubscriptionManager manager;
+  private final String currency;
+  private final Set<String> addresses;
+
+  MonitorSubscription(MonitorSubscriptionManager manager, String currency,
+      Collection<String> addresses) {
+    this.manager = manager;
+    this.currency = currency;
+    this.addresses = Collections.unmodifiableSet(new LinkedHashSet<>(addresses));
+  }
+
+  public String getCurrency() {
+    return currency;
+  }
+
+  public Set<String> getAddresses() {
+    return addresses;
+  }
+
+  /**
+   * Stops routing updates to this subscription.
+   */
+  @Override
+  public void close() {
+    deactivate();
+    manager.unsubscribe(this);
+  }
+}
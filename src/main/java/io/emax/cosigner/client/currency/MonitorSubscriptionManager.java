@@ -0,0 +1,204 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.ClientConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Multiplexes many monitor subscriptions over a small number of websocket sessions.
+ *
+ * <p>Addresses are spread across a fixed number of sessions per currency by hash, and all sessions
+ * share the connector's websocket client. Incoming updates are routed through an address index, so
+ * the cost of delivering a message doesn't depend on how many subscriptions exist.
+ *
+ * <p>The server can't be told to stop watching an address, closing a subscription only stops
+ * routing its updates.
+ */
+public class MonitorSubscriptionManager implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(MonitorSubscriptionManager.class);
+  private final CurrencyConnector connector;
+  private final int sessionsPerCurrency;
+  private final ConcurrentHashMap<String, MonitorShard[]> shards = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Set<MonitorSubscription>> routes =
+      new ConcurrentHashMap<>();
+
+  public MonitorSubscriptionManager(CurrencyConnector connector) {
+    this(connector, new ClientConfiguration().getMonitorSessionsPerCurrency());
+  }
+
+  /**
+   * Creates a manager that spreads each currency's addresses over the given number of sessions.
+   */
+  public MonitorSubscriptionManager(CurrencyConnector connector, int sessionsPerCurrency) {
+    if (sessionsPerCurrency < 1) {
+      throw new IllegalArgumentException("Need at least one session per currency");
+    }
+    this.connector = connector;
+    this.sessionsPerCurrency = sessionsPerCurrency;
+  }
+
+  /**
+   * Watches the currency and accounts given in the parameters.
+   */
+  public MonitorSubscription subscribe(CurrencyParameters params, MonitorListener listener)
+      throws Exception {
+    return subscribe(params.getCurrencySymbol(), params.getAccount(), listener);
+  }
+
+  /**
+   * Watches the given addresses, the listener is registered before any session is updated.
+   */
+  public MonitorSubscription subscribe(String currency, Collection<String> addresses,
+      MonitorListener listener) throws Exception {
+    MonitorSubscription subscription = new MonitorSubscription(this, currency, addresses);
+    if (listener != null) {
+      subscription.addListener(listener);
+    }
+
+    Map<Integer, List<String>> addressesByShard = new HashMap<>();
+    subscription.getAddresses().forEach(address -> {
+      routes.computeIfAbsent(routeKey(currency, address), key -> ConcurrentHashMap.newKeySet())
+          .add(subscription);
+      addressesByShard.computeIfAbsent(shardIndex(address), key -> new ArrayList<>())
+          .add(address);
+    });
+
+    MonitorShard[] currencyShards = shards.computeIfAbsent(currency, this::createShards);
+    for (Map.Entry<Integer, List<String>> entry : addressesByShard.entrySet()) {
+      MonitorShard shard = currencyShards[entry.getKey()];
+      shard.addAddresses(entry.getValue());
+      // Seed with what the shared session already knows, the server only sends updates.
+      entry.getValue().forEach(address -> {
+        BigDecimal balance = shard.socket.getState().getBalance(address);
+        if (balance != null) {
+          subscription.updateBalance(address, balance);
+        }
+      });
+    }
+    connector.registerMonitor(currency, subscription.getAddresses(), subscription);
+    return subscription;
+  }
+
+  void unsubscribe(MonitorSubscription subscription) {
+    subscription.getAddresses().forEach(address -> routes
+        .computeIfPresent(routeKey(subscription.getCurrency(), address), (key, subscribers) -> {
+          subscribers.remove(subscription);
+          return subscribers.isEmpty() ? null : subscribers;
+        }));
+  }
+
+  /**
+   * Closes every session opened by this manager.
+   */
+  @Override
+  public void close() {
+    shards.values().forEach(currencyShards -> {
+      for (MonitorShard shard : currencyShards) {
+        shard.socket.closeConnection();
+      }
+    });
+    shards.clear();
+    routes.values().forEach(subscribers -> subscribers.forEach(MonitorState::deactivate));
+    routes.clear();
+  }
+
+  private MonitorShard[] createShards(String currency) {
+    MonitorShard[] currencyShards = new MonitorShard[sessionsPerCurrency];
+    for (int i = 0; i < sessionsPerCurrency; i++) {
+      currencyShards[i] = new MonitorShard(currency);
+    }
+    return currencyShards;
+  }
+
+  private int shardIndex(String address) {
+    return Math.floorMod(address.hashCode(), sessionsPerCurrency);
+  }
+
+  private static String routeKey(String currency, String address) {
+    return currency + ":" + address;
+  }
+
+  /**
+   * One websocket session carrying a slice of a currency's addresses.
+   */
+  private class MonitorShard implements MonitorListener {
+    private final String currency;
+    private final MonitorWebSocket socket = new MonitorWebSocket();
+    private final Set<String> addresses = new HashSet<>();
+    private final MonitorReconnector reconnector;
+
+    MonitorShard(String currency) {
+      this.currency = currency;
+      socket.addListener(this);
+      // Every report is forwarded, not just changes, so subscriptions keep their balances fresh
+      socket.setBalanceForwarder(this::forwardBalance);
+      reconnector = new ClientConfiguration().useMonitorAutoReconnect()
+          ? connector.enableReconnect(socket, this::currentSubscription) : null;
+    }
+
+    synchronized CurrencyParameters currentSubscription() {
+      CurrencyParameters params = new CurrencyParameters();
+      params.setCurrencySymbol(currency);
+      params.setAccount(new ArrayList<>(addresses));
+      return params;
+    }
+
+    synchronized void addAddresses(Collection<String> newAddresses) throws Exception {
+      if (!addresses.addAll(newAddresses) && socket.isConnected()) {
+        return;
+      }
+
+      CurrencyParameters params = currentSubscription();
+      if (socket.isConnected()) {
+        socket.subscribe(params);
+      } else if (reconnector == null || !reconnector.isReconnecting()) {
+        connector.connectMonitor(socket, params);
+      }
+      // Otherwise the reconnect in progress subscribes to the new addresses once it's connected
+    }
+
+    private void forwardBalance(String address, BigDecimal balance) {
+      Set<MonitorSubscription> subscribers = routes.get(routeKey(currency, address));
+      if (subscribers != null) {
+        subscribers.forEach(subscription -> subscription.updateBalance(address, balance));
+      }
+    }
+
+    @Override
+    public void onTransaction(CurrencyParameters transaction) {
+      Set<String> involved = new HashSet<>();
+      if (transaction.getAccount() != null) {
+        involved.addAll(transaction.getAccount());
+      }
+      if (transaction.getReceivingAccount() != null) {
+        transaction.getReceivingAccount()
+            .forEach(recipient -> involved.add(recipient.getRecipientAddress()));
+      }
+
+      Set<MonitorSubscription> targets = new LinkedHashSet<>();
+      involved.forEach(address -> {
+        Set<MonitorSubscription> subscribers = routes.get(routeKey(currency, address));
+        if (subscribers != null) {
+          targets.addAll(subscribers);
+        }
+      });
+      if (targets.isEmpty()) {
+        logger.debug("No subscription for transaction: {}", transaction.getTransactionData());
+      }
+      targets.forEach(subscription -> subscription.addTransaction(transaction));
+    }
+  }
+}
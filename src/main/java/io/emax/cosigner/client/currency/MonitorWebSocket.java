@@ -1,90 +1,325 @@
 package io.emax.cosigner.client.currency;
 
 import io.emax.cosigner.api.core.CurrencyParameters;
-import io.emax.cosigner.common.Json;
+import io.emax.cosigner.api.core.CurrencyParametersRecipient;
+import io.emax.cosigner.client.metrics.ClientMetrics;
 
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketFrame;
 import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
 import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
 
 @WebSocket(maxIdleTime = 1200000)
 public class MonitorWebSocket {
   private static final Logger logger = LoggerFactory.getLogger(MonitorWebSocket.class);
-  private Session session;
+  private volatile Session session;
+  private volatile boolean closing = false;
+  private volatile Runnable reconnectHandler;
+  private volatile ClientMetrics metrics = ClientMetrics.NONE;
+  private volatile BiConsumer<String, BigDecimal> balanceForwarder;
 
-  private final HashMap<String, String> balances = new HashMap<>();
-  private final HashSet<CurrencyParameters> allTransactions = new HashSet<>();
-  private final HashSet<CurrencyParameters> newTransactions = new HashSet<>();
+  private final MonitorState state = new MonitorState();
+  // Held while an update is applied to the state, so listeners see one update at a time
+  private final Object delivery = new Object();
+  // Taken on the read thread when a message starts, given back once its handler is done
+  private final Semaphore handlerIdle = new Semaphore(1);
 
-  public HashMap<String, String> getAllBalances() {
-    return balances;
+  public MonitorState getState() {
+    return state;
   }
 
-  public HashSet<CurrencyParameters> getAllTransactions() {
-    return allTransactions;
+  public Map<String, String> getAllBalances() {
+    return state.getAllBalances();
+  }
+
+  public Set<CurrencyParameters> getAllTransactions() {
+    return state.getAllTransactions();
   }
 
   /**
    * Returns the new transactions since the last time this was called.
    */
-  public HashSet<CurrencyParameters> getNewTransactions() {
-    HashSet<CurrencyParameters> retSet = new HashSet<>();
-    retSet.addAll(newTransactions);
-    newTransactions.clear();
-    return retSet;
+  public Set<CurrencyParameters> getNewTransactions() {
+    return state.getNewTransactions();
+  }
+
+  /**
+   * Registers a listener that is called for every balance update and new transaction.
+   */
+  public void addListener(MonitorListener listener) {
+    state.addListener(listener);
+  }
+
+  public void removeListener(MonitorListener listener) {
+    state.removeListener(listener);
+  }
+
+  /**
+   * Balance updates and new transactions with backpressure, see {@link MonitorPublisher}.
+   */
+  public MonitorPublisher getPublisher() {
+    return state.getPublisher();
+  }
+
+  public boolean isConnected() {
+    return session != null;
+  }
+
+  /**
+   * Receives every balance the server reports, changed or not, after the state is updated.
+   */
+  void setBalanceForwarder(BiConsumer<String, BigDecimal> balanceForwarder) {
+    this.balanceForwarder = balanceForwarder;
+  }
+
+  void setMetrics(ClientMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Sets a handler that runs whenever the connection drops without closeConnection being called.
+   */
+  void setReconnectHandler(Runnable reconnectHandler) {
+    this.reconnectHandler = reconnectHandler;
   }
 
+  /**
+   * Connection closed, hand over to the reconnect handler unless we closed it ourselves.
+   */
   @OnWebSocketClose
   public void onClose(int statusCode, String reason) {
-    logger.info("Connection closed: " + statusCode + " - " + reason);
+    logger.info("Connection closed: {} - {}", statusCode, reason);
     this.session = null;
+    Runnable handler = reconnectHandler;
+    if (!closing && handler != null) {
+      handler.run();
+    }
   }
 
   @OnWebSocketConnect
   public void onConnect(Session session) {
-    logger.debug("Got connect: " + session);
+    logger.debug("Got connect: {}", session);
     this.session = session;
   }
 
   /**
-   * We got a message.
+   * Holds back the start of each new message until the previous message has been handled.
+   *
+   * <p>Jetty calls this on the connection's read thread for every frame, before it dispatches the
+   * streaming message handler to the session executor. Without the wait each message would get its
+   * own handler thread, so messages from one socket could be handled concurrently and out of order.
+   * Waiting here keeps the handlers of a socket serial and in the order the server sent them, while
+   * each message is still parsed as its frames stream in. It also stops the read thread from
+   * buffering further messages while the parser is behind.
+   */
+  @OnWebSocketFrame
+  public void onFrame(Frame frame) {
+    if (frame.getType().isData()) {
+      handlerIdle.acquireUninterruptibly();
+    }
+  }
+
+  /**
+   * A text message, parsed from the reader as its frames arrive.
    */
   @OnWebSocketMessage
+  public void onStreamedMessage(Reader reader) {
+    try {
+      onMessage(reader);
+    } finally {
+      handlerIdle.release();
+    }
+  }
+
+  /**
+   * A binary message carrying UTF-8 JSON, parsed from the stream as its frames arrive.
+   */
+  @OnWebSocketMessage
+  public void onStreamedMessage(InputStream input) {
+    try {
+      onMessage(input);
+    } finally {
+      handlerIdle.release();
+    }
+  }
+
+  /**
+   * Handles a whole text message on the calling thread.
+   */
   public void onMessage(String msg) {
-    logger.debug("Got message: " + msg);
+    onMessage(new StringReader(msg));
+  }
 
-    // Parse the incoming message into a CurrencyParameters object
-    CurrencyParameters params =
-        (CurrencyParameters) Json.objectifyString(CurrencyParameters.class, msg);
+  /**
+   * Parses a text message from the reader as it's read.
+   */
+  public void onMessage(Reader reader) {
+    CountingReader counted = new CountingReader(reader);
+    try {
+      handleMessage(MonitorMessageParser.parse(counted));
+    } catch (IOException e) {
+      logger.warn("Got bad websocket message: {}", e.getMessage());
+    } finally {
+      metrics.monitorMessage((int) Math.min(counted.getCount(), Integer.MAX_VALUE));
+    }
+  }
+
+  /**
+   * Parses a UTF-8 JSON message from the stream as it's read.
+   */
+  public void onMessage(InputStream input) {
+    CountingInputStream counted = new CountingInputStream(input);
+    try {
+      handleMessage(MonitorMessageParser.parse(counted));
+    } catch (IOException e) {
+      logger.warn("Got bad websocket message: {}", e.getMessage());
+    } finally {
+      metrics.monitorMessage((int) Math.min(counted.getCount(), Integer.MAX_VALUE));
+    }
+  }
 
-    if (params == null) {
-      logger.warn("Got bad websocket message: " + msg);
-      return;
+  private void handleMessage(CurrencyParameters params) {
+    synchronized (delivery) {
+      applyMessage(params);
     }
+  }
 
+  private void applyMessage(CurrencyParameters params) {
     if (params.getTransactionData() == null || params.getTransactionData().isEmpty()) {
       if (params.getReceivingAccount() == null) {
         return;
       }
-      params.getReceivingAccount()
-          .forEach(account -> balances.put(account.getRecipientAddress(), account.getAmount()));
+      BiConsumer<String, BigDecimal> forwarder = balanceForwarder;
+      for (CurrencyParametersRecipient account : params.getReceivingAccount()) {
+        if (account.getRecipientAddress() == null || account.getAmount() == null) {
+          continue;
+        }
+        BigDecimal amount;
+        try {
+          amount = new BigDecimal(account.getAmount());
+        } catch (NumberFormatException e) {
+          logger.warn("Got bad balance for {}: {}", account.getRecipientAddress(),
+              account.getAmount());
+          continue;
+        }
+        state.updateBalance(account.getRecipientAddress(), amount);
+        if (forwarder != null) {
+          forwarder.accept(account.getRecipientAddress(), amount);
+        }
+      }
     } else {
       // TX update
-      if (!allTransactions.contains(params)) {
-        newTransactions.add(params);
-        allTransactions.add(params);
+      logger.debug("Got transaction: {}", params.getTransactionData());
+      state.addTransaction(params);
+    }
+  }
+
+  private static class CountingReader extends FilterReader {
+    private long count = 0;
+
+    CountingReader(Reader in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = super.read();
+      if (read != -1) {
+        count++;
+      }
+      return read;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      int read = super.read(buffer, offset, length);
+      if (read > 0) {
+        count += read;
       }
+      return read;
+    }
+
+    long getCount() {
+      return count;
     }
   }
 
+  private static class CountingInputStream extends FilterInputStream {
+    private long count = 0;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = super.read();
+      if (read != -1) {
+        count++;
+      }
+      return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int read = super.read(buffer, offset, length);
+      if (read > 0) {
+        count += read;
+      }
+      return read;
+    }
+
+    long getCount() {
+      return count;
+    }
+  }
+
+  /**
+   * Delivers a transaction fetched after a reconnect as if the server had pushed it.
+   */
+  void addBackfilledTransaction(CurrencyParameters transaction) {
+    synchronized (delivery) {
+      state.addTransaction(transaction);
+    }
+  }
+
+  /**
+   * Sends a subscription request over the open session.
+   */
+  void subscribe(CurrencyParameters params) throws IOException {
+    Session current = session;
+    if (current == null) {
+      throw new IOException("Monitor is not connected");
+    }
+    current.getRemote().sendString(CurrencyParametersCodec.toString(params));
+  }
+
+  /**
+   * Closes the websocket if it's still connected.
+   */
   public void closeConnection() {
-    session.close();
+    closing = true;
+    state.deactivate();
+    Session current = session;
+    if (current != null) {
+      current.close();
+    }
   }
 }
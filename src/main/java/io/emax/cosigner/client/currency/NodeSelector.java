@@ -0,0 +1,210 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.client.ClientConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the cosigner server for each request from the configured list.
+ *
+ * <p>nodeSelection is one of:
+ *
+ * <ul>
+ * <li>round-robin: each healthy node in turn.</li>
+ * <li>least-outstanding: the healthy node with the fewest requests in flight.</li>
+ * <li>latency-weighted: the better of two random healthy nodes, scored by average latency times
+ * requests in flight.</li>
+ * </ul>
+ *
+ * <p>Nodes that fail nodeEjectionFailures requests in a row are left out for nodeEjectionTime
+ * milliseconds. If every node is ejected the one due back first is used.
+ *
+ * <p>Transaction data can be pinned to the node that produced it, so the stages of a transaction
+ * all go to the server holding its state.
+ */
+class NodeSelector {
+  private static final Logger logger = LoggerFactory.getLogger(NodeSelector.class);
+  private static final int MAX_PINNED = 10000;
+
+  private final ClientConfiguration config;
+  private final List<CosignerNode> nodes;
+  private final String strategy;
+  private final AtomicInteger next = new AtomicInteger();
+  private final Map<String, CosignerNode> pinned =
+      new LinkedHashMap<String, CosignerNode>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CosignerNode> eldest) {
+          return size() > MAX_PINNED;
+        }
+      };
+
+  NodeSelector() {
+    this(new ClientConfiguration(), null);
+  }
+
+  /**
+   * Builds a selector for a reloaded configuration.
+   *
+   * <p>Servers that are still configured keep their node from the previous selector, along with
+   * its health, in-flight count and pinned transactions.
+   */
+  NodeSelector(ClientConfiguration config, NodeSelector previous) {
+    this.config = config;
+    List<String> rsUrls = config.getRsServerUrls();
+    List<String> wsUrls = config.getWsServerUrls();
+    List<CosignerNode> configured = new ArrayList<>(rsUrls.size());
+    for (int i = 0; i < rsUrls.size(); i++) {
+      String rsUrl = rsUrls.get(i);
+      String wsUrl = wsUrls.get(i % wsUrls.size());
+      CosignerNode node = previous == null ? null : previous.findNode(rsUrl, wsUrl);
+      configured.add(node != null ? node : new CosignerNode(rsUrl, wsUrl));
+    }
+    nodes = Collections.unmodifiableList(configured);
+    strategy = config.getNodeSelection().toLowerCase();
+
+    if (previous != null) {
+      synchronized (previous.pinned) {
+        for (Map.Entry<String, CosignerNode> pin : previous.pinned.entrySet()) {
+          if (nodes.contains(pin.getValue())) {
+            pinned.put(pin.getKey(), pin.getValue());
+          }
+        }
+      }
+    }
+  }
+
+  private CosignerNode findNode(String rsUrl, String wsUrl) {
+    for (CosignerNode node : nodes) {
+      if (node.getRsUrl().equals(rsUrl) && node.getWsUrl().equals(wsUrl)) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  List<CosignerNode> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Chooses a node for the next request.
+   */
+  CosignerNode select() {
+    if (nodes.size() == 1) {
+      return nodes.get(0);
+    }
+
+    List<CosignerNode> healthy = healthyNodes(Collections.emptySet());
+    if (healthy.isEmpty()) {
+      return Collections.min(nodes, Comparator.comparingLong(CosignerNode::getEjectedUntil));
+    }
+    return choose(healthy);
+  }
+
+  /**
+   * The node the transaction data is pinned to, or a newly selected one if it isn't pinned.
+   *
+   * <p>Pinned nodes are used even while ejected, no other server knows the transaction.
+   */
+  CosignerNode select(String transactionData) {
+    if (transactionData != null && nodes.size() > 1) {
+      CosignerNode node;
+      synchronized (pinned) {
+        node = pinned.get(transactionData);
+      }
+      if (node != null) {
+        return node;
+      }
+    }
+    return select();
+  }
+
+  /**
+   * Chooses a healthy node that isn't one of the given ones, for retrying a request they failed.
+   * Returns null if there's none left.
+   */
+  CosignerNode selectOther(Collection<CosignerNode> tried) {
+    List<CosignerNode> healthy = healthyNodes(tried);
+    return healthy.isEmpty() ? null : choose(healthy);
+  }
+
+  private List<CosignerNode> healthyNodes(Collection<CosignerNode> excluded) {
+    List<CosignerNode> healthy = new ArrayList<>(nodes.size());
+    for (CosignerNode node : nodes) {
+      if (!node.isEjected() && !excluded.contains(node)) {
+        healthy.add(node);
+      }
+    }
+    return healthy;
+  }
+
+  private CosignerNode choose(List<CosignerNode> healthy) {
+    switch (strategy) {
+      case "least-outstanding":
+        return leastOutstanding(healthy);
+      case "latency-weighted":
+        return latencyWeighted(healthy);
+      default:
+        return healthy.get(Math.floorMod(next.getAndIncrement(), healthy.size()));
+    }
+  }
+
+  /**
+   * Sends later stages for the transaction data to the node.
+   */
+  void pin(String transactionData, CosignerNode node) {
+    if (transactionData != null && nodes.size() > 1) {
+      synchronized (pinned) {
+        pinned.put(transactionData, node);
+      }
+    }
+  }
+
+  /**
+   * Records the outcome of a request to the node.
+   */
+  void completed(CosignerNode node, long durationNanos, boolean failed) {
+    if (!failed) {
+      node.requestSucceeded(durationNanos);
+    } else if (node.requestFailed(config.getNodeEjectionFailures(),
+        config.getNodeEjectionTime())) {
+      logger.warn("Ejecting cosigner node {} for {}ms", node, config.getNodeEjectionTime());
+    }
+  }
+
+  private CosignerNode leastOutstanding(List<CosignerNode> healthy) {
+    // Start from a rotating offset so ties don't all land on the first node
+    int offset = Math.floorMod(next.getAndIncrement(), healthy.size());
+    CosignerNode best = null;
+    for (int i = 0; i < healthy.size(); i++) {
+      CosignerNode node = healthy.get((offset + i) % healthy.size());
+      if (best == null || node.getOutstanding() < best.getOutstanding()) {
+        best = node;
+      }
+    }
+    return best;
+  }
+
+  private static CosignerNode latencyWeighted(List<CosignerNode> healthy) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    CosignerNode first = healthy.get(random.nextInt(healthy.size()));
+    CosignerNode second = healthy.get(random.nextInt(healthy.size()));
+    return score(first) <= score(second) ? first : second;
+  }
+
+  private static double score(CosignerNode node) {
+    // Nodes without a latency sample yet score as if instant, so they get tried
+    return node.getLatencyNanos() * (node.getOutstanding() + 1);
+  }
+}
@@ -0,0 +1,29 @@
+package io.emax.cosigner.client.currency;
+
+/**
+ * What a {@link MonitorPublisher} does when a subscriber's buffer is full.
+ */
+public enum OverflowPolicy {
+  /**
+   * Drops the oldest buffered event to make room.
+   */
+  DROP_OLDEST,
+  /**
+   * Keeps only the latest balance per address. A new balance replaces any buffered one for the same
+   * address, and when the buffer is full the oldest balance goes first. Transactions are only
+   * dropped if the buffer holds nothing else.
+   */
+  LATEST_BALANCE,
+  /**
+   * Holds up the websocket until the subscriber makes room, pushing back on the server. Every other
+   * subscriber of the same monitor waits too.
+   */
+  BLOCK;
+
+  /**
+   * Parses the monitorOverflowPolicy setting: drop-oldest, latest-balance or block.
+   */
+  public static OverflowPolicy fromString(String policy) {
+    return valueOf(policy.trim().toUpperCase().replace('-', '_'));
+  }
+}
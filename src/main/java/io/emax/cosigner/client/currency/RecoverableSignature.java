@@ -0,0 +1,129 @@
+package io.emax.cosigner.client.currency;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ECDSA signatures in the r, s, v form that Ethereum style currencies apply.
+ *
+ * <p>The JDK only produces DER encoded signatures without a recovery id, and newer releases no
+ * longer know secp256k1 at all, so this signs directly over the curve parameters of the key. s is
+ * always the lower of its two valid values and v is 27 plus the recovery id.
+ */
+final class RecoverableSignature {
+  private static final SecureRandom random = new SecureRandom();
+
+  private RecoverableSignature() {
+  }
+
+  /**
+   * Signs the hash as is, returns hex encoded r and s padded to the curve order's length, followed
+   * by v in hex, "1b" or "1c".
+   */
+  static List<String> sign(ECPrivateKey key, byte[] hash) throws GeneralSecurityException {
+    ECParameterSpec spec = key.getParams();
+    if (!(spec.getCurve().getField() instanceof ECFieldFp)) {
+      throw new InvalidKeyException("Recoverable signatures need a prime field curve");
+    }
+    BigInteger order = spec.getOrder();
+    BigInteger digest = toInteger(hash, order);
+    BigInteger nonce;
+    ECPoint point;
+    BigInteger sigR;
+    BigInteger sigS;
+    do {
+      nonce = new BigInteger(order.bitLength(), random);
+      if (nonce.signum() == 0 || nonce.compareTo(order) >= 0) {
+        sigR = BigInteger.ZERO;
+        sigS = BigInteger.ZERO;
+        point = null;
+      } else {
+        point = multiply(spec, spec.getGenerator(), nonce);
+        sigR = point.getAffineX().mod(order);
+        sigS = nonce.modInverse(order).multiply(digest.add(sigR.multiply(key.getS())))
+            .mod(order);
+      }
+    } while (sigR.signum() == 0 || sigS.signum() == 0);
+
+    int recoveryId = (point.getAffineY().testBit(0) ? 1 : 0)
+        | (point.getAffineX().compareTo(order) >= 0 ? 2 : 0);
+    if (sigS.compareTo(order.shiftRight(1)) > 0) {
+      // The other s is just as valid, but only the low one is accepted
+      sigS = order.subtract(sigS);
+      recoveryId ^= 1;
+    }
+    int length = (order.bitLength() + 7) / 8;
+    return Arrays.asList(toHex(sigR, length), toHex(sigS, length),
+        Integer.toHexString(27 + recoveryId));
+  }
+
+  /**
+   * The hash as an integer, keeping only as many leading bits as the curve order has.
+   */
+  static BigInteger toInteger(byte[] hash, BigInteger order) {
+    BigInteger digest = new BigInteger(1, hash);
+    int excess = hash.length * 8 - order.bitLength();
+    return excess > 0 ? digest.shiftRight(excess) : digest;
+  }
+
+  /**
+   * Multiplies a point on the curve by a scalar.
+   */
+  static ECPoint multiply(ECParameterSpec spec, ECPoint point, BigInteger scalar) {
+    ECPoint result = ECPoint.POINT_INFINITY;
+    for (int i = scalar.bitLength() - 1; i >= 0; i--) {
+      result = add(spec, result, result);
+      if (scalar.testBit(i)) {
+        result = add(spec, result, point);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds two points on the curve.
+   */
+  static ECPoint add(ECParameterSpec spec, ECPoint first, ECPoint second) {
+    if (ECPoint.POINT_INFINITY.equals(first)) {
+      return second;
+    }
+    if (ECPoint.POINT_INFINITY.equals(second)) {
+      return first;
+    }
+    BigInteger prime = ((ECFieldFp) spec.getCurve().getField()).getP();
+    BigInteger slope;
+    if (first.getAffineX().equals(second.getAffineX())) {
+      if (!first.getAffineY().equals(second.getAffineY()) || first.getAffineY().signum() == 0) {
+        return ECPoint.POINT_INFINITY;
+      }
+      BigInteger firstX = first.getAffineX();
+      slope = firstX.multiply(firstX).multiply(BigInteger.valueOf(3)).add(spec.getCurve().getA())
+          .multiply(first.getAffineY().shiftLeft(1).modInverse(prime)).mod(prime);
+    } else {
+      slope = second.getAffineY().subtract(first.getAffineY())
+          .multiply(second.getAffineX().subtract(first.getAffineX()).modInverse(prime))
+          .mod(prime);
+    }
+    BigInteger sumX = slope.multiply(slope).subtract(first.getAffineX())
+        .subtract(second.getAffineX()).mod(prime);
+    BigInteger sumY = slope.multiply(first.getAffineX().subtract(sumX))
+        .subtract(first.getAffineY()).mod(prime);
+    return new ECPoint(sumX, sumY);
+  }
+
+  private static String toHex(BigInteger value, int length) {
+    StringBuilder hex = new StringBuilder(value.toString(16));
+    while (hex.length() < length * 2) {
+      hex.insert(0, '0');
+    }
+    return hex.toString();
+  }
+}
@@ -0,0 +1,123 @@
+package io.emax.cosigner.client.currency;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LRU cache for results of read-only cosigner calls.
+ *
+ * <p>Entries are keyed by endpoint and request body. Only endpoints that have been given a TTL are
+ * cached, and each endpoint can be invalidated as a whole when a call changes what it would return.
+ */
+public class ResponseCache {
+  private final int maxEntries;
+  private final ConcurrentHashMap<String, Long> ttls = new ConcurrentHashMap<>();
+  private final LinkedHashMap<String, CachedResponse> entries;
+  private long hits = 0;
+  private long misses = 0;
+
+  private static class CachedResponse {
+    private final String response;
+    private final long expires;
+
+    CachedResponse(String response, long expires) {
+      this.response = response;
+      this.expires = expires;
+    }
+  }
+
+  /**
+   * Creates a cache that holds at most maxEntries responses across all endpoints.
+   */
+  public ResponseCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+        return size() > ResponseCache.this.maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Enables caching for the endpoint, a TTL of zero or less disables it again.
+   */
+  public void setTtl(String endpoint, long ttlMillis) {
+    if (ttlMillis > 0) {
+      ttls.put(endpoint, ttlMillis);
+    } else {
+      ttls.remove(endpoint);
+      invalidate(endpoint);
+    }
+  }
+
+  public boolean isCacheable(String endpoint) {
+    return ttls.containsKey(endpoint);
+  }
+
+  /**
+   * Returns the cached response, or null if there's no live entry.
+   */
+  public synchronized String get(String endpoint, String content) {
+    String key = key(endpoint, content);
+    CachedResponse cached = entries.get(key);
+    if (cached == null || cached.expires < System.currentTimeMillis()) {
+      if (cached != null) {
+        entries.remove(key);
+      }
+      misses++;
+      return null;
+    }
+    hits++;
+    return cached.response;
+  }
+
+  /**
+   * Stores a response if the endpoint is cacheable.
+   */
+  public synchronized void put(String endpoint, String content, String response) {
+    Long ttl = ttls.get(endpoint);
+    if (ttl == null || response == null) {
+      return;
+    }
+    entries.put(key(endpoint, content),
+        new CachedResponse(response, System.currentTimeMillis() + ttl));
+  }
+
+  /**
+   * Drops every cached response for the endpoint.
+   */
+  public synchronized void invalidate(String endpoint) {
+    String prefix = endpoint + "\n";
+    Iterator<String> keys = entries.keySet().iterator();
+    while (keys.hasNext()) {
+      if (keys.next().startsWith(prefix)) {
+        keys.remove();
+      }
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  private static String key(String endpoint, String content) {
+    return endpoint + "\n" + (content == null ? "" : content);
+  }
+}
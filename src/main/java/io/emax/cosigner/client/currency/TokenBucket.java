@@ -0,0 +1,50 @@
+package io.emax.cosigner.client.currency;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limit, callers are queued behind each other rather than rejected.
+ *
+ * <p>The bucket can go into debt, each caller reserves the next token and sleeps until it's due,
+ * so waiting callers are served in order without a background refill thread.
+ */
+class TokenBucket {
+  private final double permitsPerNano;
+  private final double burst;
+  private final LongSupplier nanoClock;
+  private double tokens;
+  private long lastRefill;
+
+  TokenBucket(double permitsPerSecond, int burst) {
+    this(permitsPerSecond, burst, System::nanoTime);
+  }
+
+  TokenBucket(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+    this.permitsPerNano = permitsPerSecond / 1e9;
+    this.burst = Math.max(burst, 1);
+    this.tokens = this.burst;
+    this.nanoClock = nanoClock;
+    this.lastRefill = nanoClock.getAsLong();
+  }
+
+  /**
+   * Takes a token, sleeping until one is available.
+   */
+  void acquire() throws InterruptedException {
+    long wait = reserve();
+    if (wait > 0) {
+      Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+    }
+  }
+
+  /**
+   * Takes a token, returning how many nanoseconds the caller has to wait before using it.
+   */
+  synchronized long reserve() {
+    long now = nanoClock.getAsLong();
+    tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerNano);
+    lastRefill = now;
+    tokens -= 1;
+    return tokens >= 0 ? 0 : (long) (-tokens / permitsPerNano);
+  }
+}
@@ -0,0 +1,99 @@
+package io.emax.cosigner.client.currency;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers which transaction hashes have been seen, within a size and age limit.
+ *
+ * <p>Only the hash and the time it was first seen are kept. Once the index is full, or an entry is
+ * older than the window, the oldest hashes are forgotten.
+ */
+public class TransactionDedupIndex {
+  // Rough per-entry cost of the map node, the boxed timestamp and the String header.
+  private static final int ENTRY_OVERHEAD_BYTES = 120;
+
+  private final int maxSize;
+  private final long maxAgeMillis;
+  private final LinkedHashMap<String, Long> seen = new LinkedHashMap<>();
+  private long keyChars = 0;
+  private long evictions = 0;
+
+  /**
+   * Creates an index holding at most maxSize hashes, each for at most maxAgeMillis.
+   *
+   * <p>A maxAgeMillis of zero or less disables the age limit.
+   */
+  public TransactionDedupIndex(int maxSize, long maxAgeMillis) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("Dedup index needs room for at least one entry");
+    }
+    this.maxSize = maxSize;
+    this.maxAgeMillis = maxAgeMillis;
+  }
+
+  /**
+   * Records the hash, returns false if it was already in the index.
+   */
+  public synchronized boolean add(String txHash) {
+    long now = System.currentTimeMillis();
+    expire(now);
+    if (seen.containsKey(txHash)) {
+      return false;
+    }
+    seen.put(txHash, now);
+    keyChars += txHash.length();
+
+    Iterator<Map.Entry<String, Long>> entries = seen.entrySet().iterator();
+    while (seen.size() > maxSize && entries.hasNext()) {
+      remove(entries);
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether the hash is in the index.
+   */
+  public synchronized boolean contains(String txHash) {
+    expire(System.currentTimeMillis());
+    return seen.containsKey(txHash);
+  }
+
+  public synchronized int size() {
+    return seen.size();
+  }
+
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Approximate heap used by the index.
+   */
+  public synchronized long getEstimatedBytes() {
+    return seen.size() * (long) ENTRY_OVERHEAD_BYTES + keyChars * 2;
+  }
+
+  private void expire(long now) {
+    if (maxAgeMillis <= 0) {
+      return;
+    }
+    Iterator<Map.Entry<String, Long>> entries = seen.entrySet().iterator();
+    while (entries.hasNext()) {
+      Map.Entry<String, Long> entry = entries.next();
+      if (now - entry.getValue() <= maxAgeMillis) {
+        return;
+      }
+      keyChars -= entry.getKey().length();
+      entries.remove();
+      evictions++;
+    }
+  }
+
+  private void remove(Iterator<Map.Entry<String, Long>> entries) {
+    keyChars -= entries.next().getKey().length();
+    entries.remove();
+    evictions++;
+  }
+}
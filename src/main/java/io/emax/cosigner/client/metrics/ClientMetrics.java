@@ -0,0 +1,70 @@
+package io.emax.cosigner.client.metrics;
+
+import com.codahale.metrics.SharedMetricRegistries;
+
+import java.util.function.Supplier;
+
+/**
+ * Receives measurements from the connectors and monitors.
+ *
+ * <p>Calls are made on request and websocket threads, implementations must be thread safe and
+ * cheap.
+ */
+public interface ClientMetrics {
+  /**
+   * Metrics that are thrown away.
+   */
+  ClientMetrics NONE = new ClientMetrics() {
+  };
+
+  /**
+   * Creates the metrics named by the metricsProvider setting: none, builtin or dropwizard.
+   */
+  static ClientMetrics create(String provider) {
+    switch (provider == null ? "" : provider.toLowerCase()) {
+      case "builtin":
+        return new DefaultMetrics();
+      case "dropwizard":
+        return new DropwizardMetrics(SharedMetricRegistries.getOrCreate("cosigner-client"));
+      default:
+        return NONE;
+    }
+  }
+
+  /**
+   * A request was sent to the endpoint.
+   */
+  default void requestStarted(String endpoint) {
+  }
+
+  /**
+   * A request to the endpoint finished, successfully or not.
+   */
+  default void requestCompleted(String endpoint, long durationNanos, long bytesSent,
+      long bytesReceived, boolean success) {
+  }
+
+  /**
+   * A monitor received a websocket message.
+   */
+  default void monitorMessage(int length) {
+  }
+
+  /**
+   * A monitor lost its session and is reconnecting.
+   */
+  default void monitorReconnect() {
+  }
+
+  /**
+   * Exposes a value that is read when metrics are reported, such as a queue depth.
+   */
+  default void registerGauge(String name, Supplier<? extends Number> gauge) {
+  }
+
+  /**
+   * Stops exposing a gauge registered under the name.
+   */
+  default void removeGauge(String name) {
+  }
+}
@@ -0,0 +1,86 @@
+package io.emax.cosigner.client.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Built-in metrics kept in memory, read them through the getters or log them periodically.
+ */
+public class DefaultMetrics implements ClientMetrics {
+  private final ConcurrentHashMap<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Supplier<? extends Number>> gauges =
+      new ConcurrentHashMap<>();
+  private final LongAdder monitorMessages = new LongAdder();
+  private final LongAdder monitorBytes = new LongAdder();
+  private final LongAdder monitorReconnects = new LongAdder();
+
+  @Override
+  public void requestStarted(String endpoint) {
+    getEndpoint(endpoint).started();
+  }
+
+  @Override
+  public void requestCompleted(String endpoint, long durationNanos, long bytesSent,
+      long bytesReceived, boolean success) {
+    getEndpoint(endpoint).completed(durationNanos, bytesSent, bytesReceived, success);
+  }
+
+  @Override
+  public void monitorMessage(int length) {
+    monitorMessages.increment();
+    monitorBytes.add(length);
+  }
+
+  @Override
+  public void monitorReconnect() {
+    monitorReconnects.increment();
+  }
+
+  @Override
+  public void registerGauge(String name, Supplier<? extends Number> gauge) {
+    gauges.put(name, gauge);
+  }
+
+  @Override
+  public void removeGauge(String name) {
+    gauges.remove(name);
+  }
+
+  /**
+   * Stats for an endpoint, created on first use.
+   */
+  public EndpointStats getEndpoint(String endpoint) {
+    return endpoints.computeIfAbsent(endpoint, key -> new EndpointStats());
+  }
+
+  public Map<String, EndpointStats> getEndpoints() {
+    return Collections.unmodifiableMap(endpoints);
+  }
+
+  /**
+   * Current value of a registered gauge, or null if there's no such gauge.
+   */
+  public Number getGauge(String name) {
+    Supplier<? extends Number> gauge = gauges.get(name);
+    return gauge == null ? null : gauge.get();
+  }
+
+  public Map<String, Supplier<? extends Number>> getGauges() {
+    return Collections.unmodifiableMap(gauges);
+  }
+
+  public long getMonitorMessages() {
+    return monitorMessages.sum();
+  }
+
+  public long getMonitorBytes() {
+    return monitorBytes.sum();
+  }
+
+  public long getMonitorReconnects() {
+    return monitorReconnects.sum();
+  }
+}
@@ -0,0 +1,70 @@
+package io.emax.cosigner.client.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Publishes client metrics to a dropwizard metrics registry.
+ *
+ * <p>Metrics are named cosigner-client.request.[endpoint].latency and so on, so existing
+ * dropwizard reporters pick them up without extra setup. Request and monitor metrics add up across
+ * connectors sharing the registry, gauges are registered per connector as
+ * cosigner-client.[connector].[name], see {@link ScopedMetrics}.
+ */
+public class DropwizardMetrics implements ClientMetrics {
+  private static final String PREFIX = "cosigner-client";
+  private final MetricRegistry registry;
+
+  public DropwizardMetrics(MetricRegistry registry) {
+    this.registry = registry;
+  }
+
+  public MetricRegistry getRegistry() {
+    return registry;
+  }
+
+  @Override
+  public void requestStarted(String endpoint) {
+    registry.counter(MetricRegistry.name(PREFIX, "request", endpoint, "inFlight")).inc();
+  }
+
+  @Override
+  public void requestCompleted(String endpoint, long durationNanos, long bytesSent,
+      long bytesReceived, boolean success) {
+    registry.counter(MetricRegistry.name(PREFIX, "request", endpoint, "inFlight")).dec();
+    registry.timer(MetricRegistry.name(PREFIX, "request", endpoint, "latency"))
+        .update(durationNanos, TimeUnit.NANOSECONDS);
+    registry.meter(MetricRegistry.name(PREFIX, "request", endpoint, "bytesSent")).mark(bytesSent);
+    registry.meter(MetricRegistry.name(PREFIX, "request", endpoint, "bytesReceived"))
+        .mark(bytesReceived);
+    if (!success) {
+      registry.meter(MetricRegistry.name(PREFIX, "request", endpoint, "errors")).mark();
+    }
+  }
+
+  @Override
+  public void monitorMessage(int length) {
+    registry.meter(MetricRegistry.name(PREFIX, "monitor", "messages")).mark();
+    registry.meter(MetricRegistry.name(PREFIX, "monitor", "bytes")).mark(length);
+  }
+
+  @Override
+  public void monitorReconnect() {
+    registry.counter(MetricRegistry.name(PREFIX, "monitor", "reconnects")).inc();
+  }
+
+  @Override
+  public void registerGauge(String name, Supplier<? extends Number> gauge) {
+    String metricName = MetricRegistry.name(PREFIX, name);
+    registry.remove(metricName);
+    registry.register(metricName, (Gauge<Number>) gauge::get);
+  }
+
+  @Override
+  public void removeGauge(String name) {
+    registry.remove(MetricRegistry.name(PREFIX, name));
+  }
+}
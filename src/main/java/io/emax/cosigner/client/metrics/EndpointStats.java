@@ -0,0 +1,56 @@
+package io.emax.cosigner.client.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counters and latency for one REST endpoint.
+ */
+public class EndpointStats {
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder bytesSent = new LongAdder();
+  private final LongAdder bytesReceived = new LongAdder();
+
+  void started() {
+    inFlight.incrementAndGet();
+  }
+
+  void completed(long durationNanos, long sent, long received, boolean success) {
+    inFlight.decrementAndGet();
+    latency.record(durationNanos);
+    bytesSent.add(sent);
+    bytesReceived.add(received);
+    if (!success) {
+      errors.increment();
+    }
+  }
+
+  /**
+   * Request latency in nanoseconds.
+   */
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  public long getRequests() {
+    return latency.getCount();
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  public long getBytesSent() {
+    return bytesSent.sum();
+  }
+
+  public long getBytesReceived() {
+    return bytesReceived.sum();
+  }
+}
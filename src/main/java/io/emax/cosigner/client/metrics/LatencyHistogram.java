@@ -0,0 +1,99 @@
+package io.emax.cosigner.client.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with bounded relative error, in the style of HdrHistogram.
+ *
+ * <p>Each power of two is split into 32 linear sub-buckets, so any recorded value is reported
+ * within about 3% and the whole range of a long fits in a fixed 2k bucket array.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Records a value, negative values are recorded as zero.
+   */
+  public void record(long value) {
+    long clamped = Math.max(value, 0);
+    counts.incrementAndGet(bucketOf(clamped));
+    count.increment();
+    sum.add(clamped);
+    max.accumulate(clamped);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Mean of the recorded values.
+   */
+  public double getMean() {
+    long samples = getCount();
+    return samples == 0 ? 0 : (double) sum.sum() / samples;
+  }
+
+  /**
+   * Value at the given percentile, between 0 and 100, reported as the top of its bucket.
+   */
+  public long getPercentile(double percentile) {
+    long samples = getCount();
+    if (samples == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(samples * percentile / 100));
+    long seen = 0;
+    for (int bucket = 0; bucket < counts.length(); bucket++) {
+      seen += counts.get(bucket);
+      if (seen >= target) {
+        return Math.min(upperBoundOf(bucket), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Clears all recorded values.
+   */
+  public void reset() {
+    for (int bucket = 0; bucket < counts.length(); bucket++) {
+      counts.set(bucket, 0);
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  private static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value);
+    int shift = magnitude - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+    long upperBound = ((subBucket + 1) << shift) - 1;
+    return upperBound < 0 ? Long.MAX_VALUE : upperBound;
+  }
+}
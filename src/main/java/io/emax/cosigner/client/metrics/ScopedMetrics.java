@@ -0,0 +1,82 @@
+package io.emax.cosigner.client.metrics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * One connector's view of metrics that may be shared with other connectors.
+ *
+ * <p>Gauges are registered as [scope].[name], so connectors reporting to the same registry don't
+ * replace each other's gauges, and {@link #close()} removes them again so a closed connector isn't
+ * kept reachable through its gauges. Everything else is passed through unchanged.
+ */
+public class ScopedMetrics implements ClientMetrics, AutoCloseable {
+  private final ClientMetrics metrics;
+  private final String scope;
+  private final Set<String> gauges = ConcurrentHashMap.newKeySet();
+  private boolean closed;
+
+  public ScopedMetrics(ClientMetrics metrics, String scope) {
+    this.metrics = metrics;
+    this.scope = scope;
+  }
+
+  public String getScope() {
+    return scope;
+  }
+
+  @Override
+  public void requestStarted(String endpoint) {
+    metrics.requestStarted(endpoint);
+  }
+
+  @Override
+  public void requestCompleted(String endpoint, long durationNanos, long bytesSent,
+      long bytesReceived, boolean success) {
+    metrics.requestCompleted(endpoint, durationNanos, bytesSent, bytesReceived, success);
+  }
+
+  @Override
+  public void monitorMessage(int length) {
+    metrics.monitorMessage(length);
+  }
+
+  @Override
+  public void monitorReconnect() {
+    metrics.monitorReconnect();
+  }
+
+  /**
+   * Registers the gauge as [scope].[name], gauges registered after {@link #close()} are ignored.
+   */
+  @Override
+  public synchronized void registerGauge(String name, Supplier<? extends Number> gauge) {
+    if (closed) {
+      return;
+    }
+    String scoped = scope + "." + name;
+    gauges.add(scoped);
+    metrics.registerGauge(scoped, gauge);
+  }
+
+  @Override
+  public synchronized void removeGauge(String name) {
+    String scoped = scope + "." + name;
+    if (gauges.remove(scoped)) {
+      metrics.removeGauge(scoped);
+    }
+  }
+
+  /**
+   * Removes every gauge registered through this scope.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    for (String gauge : gauges) {
+      metrics.removeGauge(gauge);
+    }
+    gauges.clear();
+  }
+}
@@ -0,0 +1,83 @@
+package io.emax.cosigner.client.workflow;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The last known state of a transaction, rebuilt from the journal.
+ */
+public class JournalEntry {
+  private final String id;
+  private CurrencyParameters request;
+  private TransactionState state = TransactionState.QUEUED;
+  private String preparedTransaction;
+  private List<String> signers = Collections.emptyList();
+  private String approvedTransaction;
+  private String broadcastResult;
+
+  JournalEntry(String id) {
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public CurrencyParameters getRequest() {
+    return request;
+  }
+
+  void setRequest(CurrencyParameters request) {
+    this.request = request;
+  }
+
+  public TransactionState getState() {
+    return state;
+  }
+
+  void setState(TransactionState state) {
+    this.state = state;
+  }
+
+  public String getPreparedTransaction() {
+    return preparedTransaction;
+  }
+
+  void setPreparedTransaction(String preparedTransaction) {
+    this.preparedTransaction = preparedTransaction;
+  }
+
+  public List<String> getSigners() {
+    return signers;
+  }
+
+  void setSigners(List<String> signers) {
+    this.signers = signers;
+  }
+
+  public String getApprovedTransaction() {
+    return approvedTransaction;
+  }
+
+  void setApprovedTransaction(String approvedTransaction) {
+    this.approvedTransaction = approvedTransaction;
+  }
+
+  public String getBroadcastResult() {
+    return broadcastResult;
+  }
+
+  void setBroadcastResult(String broadcastResult) {
+    this.broadcastResult = broadcastResult;
+  }
+
+  /**
+   * True once the transaction has been broadcast or has failed before it was signed. A signed
+   * transaction whose broadcast failed is kept so it isn't lost.
+   */
+  public boolean isFinished() {
+    return state == TransactionState.BROADCAST || state == TransactionState.FAILED;
+  }
+}
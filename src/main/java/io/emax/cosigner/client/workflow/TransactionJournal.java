@@ -0,0 +1,459 @@
+package io.emax.cosigner.client.workflow;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.ClientConfiguration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record of what each workflow stage returned, so unfinished transactions survive a
+ * crash.
+ *
+ * <p>Records go to numbered segment files. A single writer thread drains everything that queued up
+ * while the previous batch was being synced and commits it with one fsync, so concurrent stages
+ * share the cost of durability. Each record carries a CRC, a torn write at the end of a segment is
+ * ignored on recovery. A batch that fails to write is cut off the segment again, so records
+ * committed after it aren't stranded behind a partial one. If the segment can't be cut or replaced
+ * the writer starts a new one before the next batch, every write that can't be made durable fails
+ * rather than waiting.
+ *
+ * <p>The journal is compacted on open and whenever a segment fills up: the unfinished transactions
+ * are written to a fresh segment and the old segments are deleted.
+ */
+public class TransactionJournal implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(TransactionJournal.class);
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static final String SEGMENT_PREFIX = "journal-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+  private final Path directory;
+  private final long segmentSize;
+  private final int maxBatch;
+  private final LinkedBlockingQueue<PendingWrite> pending = new LinkedBlockingQueue<>();
+  private final Map<String, JournalEntry> unfinished;
+  // Unfinished transactions as of the last committed batch, only touched by the writer
+  private final Map<String, JournalEntry> live;
+  private final SegmentOpener segmentOpener;
+  private final Thread writer;
+  // Guards running against append, so nothing is queued once close has stopped the writer
+  private final Object appendLock = new Object();
+  private volatile boolean running = true;
+  private FileChannel segment;
+  private long segmentNumber;
+  // Size of the snapshot the current segment starts with
+  private long compactedSize;
+
+  /**
+   * Creates segment files, replaced in tests to inject write failures.
+   */
+  interface SegmentOpener {
+    FileChannel open(Path path) throws IOException;
+  }
+
+  private static class PendingWrite {
+    private final ObjectNode node;
+    private final byte[] record;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    PendingWrite(ObjectNode node) throws IOException {
+      this.node = node;
+      this.record = objectMapper.writeValueAsBytes(node);
+    }
+  }
+
+  /**
+   * Opens the journal in the configured directory.
+   */
+  public TransactionJournal() throws IOException {
+    this(Paths.get(new ClientConfiguration().getJournalDirectory()),
+        new ClientConfiguration().getJournalSegmentSize(),
+        new ClientConfiguration().getJournalMaxBatch());
+  }
+
+  /**
+   * Opens a journal, recovering whatever is already in the directory.
+   */
+  public TransactionJournal(Path directory, long segmentSize, int maxBatch) throws IOException {
+    this(directory, segmentSize, maxBatch, path -> FileChannel.open(path,
+        StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+  }
+
+  TransactionJournal(Path directory, long segmentSize, int maxBatch, SegmentOpener segmentOpener)
+      throws IOException {
+    this.segmentOpener = segmentOpener;
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.maxBatch = maxBatch;
+    Files.createDirectories(directory);
+
+    List<Path> oldSegments = listSegments();
+    Map<String, JournalEntry> entries = new LinkedHashMap<>();
+    for (Path oldSegment : oldSegments) {
+      replay(oldSegment, entries);
+    }
+    entries.values().removeIf(JournalEntry::isFinished);
+    unfinished = Collections.unmodifiableMap(new LinkedHashMap<>(entries));
+    live = entries;
+
+    if (!oldSegments.isEmpty()) {
+      segmentNumber = segmentNumber(oldSegments.get(oldSegments.size() - 1));
+    }
+    compact(oldSegments);
+
+    writer = new Thread(this::writeLoop, "transaction-journal");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Transactions that were in flight when the journal was last closed, keyed by id.
+   */
+  public Map<String, JournalEntry> getUnfinished() {
+    return unfinished;
+  }
+
+  /**
+   * Records that a transaction entered the workflow, returns once it's on disk.
+   */
+  public void recordSubmitted(String id, CurrencyParameters request) throws IOException {
+    ObjectNode record = newRecord(id, TransactionState.QUEUED);
+    record.set("request", objectMapper.valueToTree(request));
+    await(append(record));
+  }
+
+  /**
+   * Records the state a transaction reached and what the stage returned, returns once it's on disk.
+   */
+  public void recordState(WorkflowTransaction transaction) throws IOException {
+    ObjectNode record = newRecord(transaction.getId(), transaction.getState());
+    switch (transaction.getState()) {
+      case PREPARED:
+        record.put("data", transaction.getPreparedTransaction());
+        break;
+      case SIGNERS_FOUND:
+        record.put("data", objectMapper.writeValueAsString(transaction.getSigners()));
+        break;
+      case APPROVED:
+        record.put("data", transaction.getApprovedTransaction());
+        break;
+      case BROADCAST:
+        record.put("data", transaction.getBroadcastResult());
+        break;
+      default:
+        break;
+    }
+    await(append(record));
+  }
+
+  /**
+   * Flushes outstanding records and closes the current segment.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (appendLock) {
+      running = false;
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // Only left over if the writer was interrupted or died
+    PendingWrite leftover;
+    while ((leftover = pending.poll()) != null) {
+      leftover.done.completeExceptionally(new IOException("Journal is closed"));
+    }
+    if (segment.isOpen()) {
+      segment.force(false);
+      segment.close();
+    }
+  }
+
+  private CompletableFuture<Void> append(ObjectNode record) throws IOException {
+    PendingWrite write = new PendingWrite(record);
+    synchronized (appendLock) {
+      if (!running || !writer.isAlive()) {
+        throw new IOException("Journal is closed");
+      }
+      pending.add(write);
+    }
+    return write.done;
+  }
+
+  private static void await(CompletableFuture<Void> write) throws IOException {
+    try {
+      write.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for journal");
+    } catch (ExecutionException e) {
+      throw new IOException("Journal write failed", e.getCause());
+    }
+  }
+
+  private void writeLoop() {
+    List<PendingWrite> batch = new ArrayList<>(maxBatch);
+    while (running || !pending.isEmpty()) {
+      try {
+        PendingWrite first = pending.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        pending.drainTo(batch, maxBatch - 1);
+        writeBatch(batch);
+        if (segment.isOpen() && segment.position() - compactedSize >= segmentSize) {
+          rollOver();
+        }
+      } catch (IOException e) {
+        logger.error("Journal segment could not be replaced", e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Writes and syncs the batch, completing every write in it whether or not that works.
+   */
+  private void writeBatch(List<PendingWrite> batch) {
+    try {
+      if (!segment.isOpen()) {
+        // A failed rollover or truncate left no segment to write to
+        rollOver();
+      }
+      long batchStart = segment.position();
+      try {
+        for (PendingWrite write : batch) {
+          writeRecord(write.record);
+        }
+        segment.force(false);
+      } catch (IOException e) {
+        // Recovery stops at the first bad record, so nothing may be appended after a partial one
+        try {
+          segment.truncate(batchStart);
+          segment.position(batchStart);
+        } catch (IOException truncateError) {
+          logger.error("Could not truncate journal segment, starting a new one", truncateError);
+          segment.close();
+        }
+        throw e;
+      }
+    } catch (IOException e) {
+      logger.error("Journal write failed", e);
+      batch.forEach(write -> write.done.completeExceptionally(e));
+      return;
+    }
+    for (PendingWrite write : batch) {
+      try {
+        apply(write.node, live);
+      } catch (IOException e) {
+        // The record is durable, only the next compaction would miss it
+        logger.error("Could not track journal record {}", write.node, e);
+      }
+    }
+    live.values().removeIf(JournalEntry::isFinished);
+    batch.forEach(write -> write.done.complete(null));
+  }
+
+  /**
+   * Closes the current segment and compacts into a new one. If that fails the segment is left
+   * closed, and the next batch tries again.
+   */
+  private void rollOver() throws IOException {
+    segment.close();
+    List<Path> oldSegments = listSegments();
+    compact(oldSegments);
+  }
+
+  /**
+   * Starts the next segment with a snapshot of the unfinished transactions, then deletes the given
+   * segments. They are kept if the snapshot can't be written.
+   */
+  private void compact(List<Path> oldSegments) throws IOException {
+    openNextSegment();
+    try {
+      for (JournalEntry entry : live.values()) {
+        for (byte[] record : snapshot(entry)) {
+          writeRecord(record);
+        }
+      }
+      segment.force(false);
+    } catch (IOException e) {
+      compactedSize = 0;
+      try {
+        segment.truncate(0);
+        segment.position(0);
+      } catch (IOException truncateError) {
+        segment.close();
+      }
+      throw e;
+    }
+    compactedSize = segment.position();
+    for (Path oldSegment : oldSegments) {
+      Files.delete(oldSegment);
+    }
+  }
+
+  private void writeRecord(byte[] record) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    ByteBuffer buffer = ByteBuffer.allocate(8 + record.length);
+    buffer.putInt(record.length).putInt((int) crc.getValue()).put(record);
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      segment.write(buffer);
+    }
+  }
+
+  private void openNextSegment() throws IOException {
+    segmentNumber++;
+    segment = segmentOpener.open(directory.resolve(
+        String.format("%s%010d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX)));
+  }
+
+  private List<Path> listSegments() throws IOException {
+    List<Path> segments = new ArrayList<>();
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      files.forEach(segments::add);
+    }
+    segments.sort((first, second) -> Long.compare(segmentNumber(first), segmentNumber(second)));
+    return segments;
+  }
+
+  private static long segmentNumber(Path segmentPath) {
+    String name = segmentPath.getFileName().toString();
+    return Long.parseLong(
+        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private static void replay(Path segmentPath, Map<String, JournalEntry> entries)
+      throws IOException {
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentPath)))) {
+      while (true) {
+        byte[] record;
+        int checksum;
+        try {
+          int length = input.readInt();
+          checksum = input.readInt();
+          if (length < 0 || length > MAX_RECORD_SIZE) {
+            logger.warn("Corrupt journal record in {}, skipping rest of segment", segmentPath);
+            return;
+          }
+          record = new byte[length];
+          input.readFully(record);
+        } catch (EOFException e) {
+          return;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        if ((int) crc.getValue() != checksum) {
+          logger.warn("Torn journal record in {}, skipping rest of segment", segmentPath);
+          return;
+        }
+        apply(objectMapper.readTree(record), entries);
+      }
+    }
+  }
+
+  private static void apply(JsonNode record, Map<String, JournalEntry> entries)
+      throws IOException {
+    String id = record.path("id").asText();
+    TransactionState state = TransactionState.valueOf(record.path("state").asText());
+    JournalEntry entry = entries.computeIfAbsent(id, JournalEntry::new);
+    entry.setState(state);
+    String data = record.path("data").isTextual() ? record.path("data").asText() : null;
+    switch (state) {
+      case QUEUED:
+        entry.setRequest(objectMapper.treeToValue(record.path("request"),
+            CurrencyParameters.class));
+        break;
+      case PREPARED:
+        entry.setPreparedTransaction(data);
+        break;
+      case SIGNERS_FOUND:
+        entry.setSigners(objectMapper.readValue(data, new TypeReference<List<String>>() {
+        }));
+        break;
+      case APPROVED:
+        entry.setApprovedTransaction(data);
+        break;
+      case BROADCAST:
+        entry.setBroadcastResult(data);
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static List<byte[]> snapshot(JournalEntry entry) throws IOException {
+    List<ObjectNode> records = new ArrayList<>();
+    ObjectNode submitted = newRecord(entry.getId(), TransactionState.QUEUED);
+    submitted.set("request", objectMapper.valueToTree(entry.getRequest()));
+    records.add(submitted);
+    if (entry.getPreparedTransaction() != null) {
+      records.add(newRecord(entry.getId(), TransactionState.PREPARED)
+          .put("data", entry.getPreparedTransaction()));
+    }
+    if (entry.getState().ordinal() >= TransactionState.SIGNERS_FOUND.ordinal()) {
+      records.add(newRecord(entry.getId(), TransactionState.SIGNERS_FOUND)
+          .put("data", objectMapper.writeValueAsString(entry.getSigners())));
+    }
+    if (entry.getApprovedTransaction() != null) {
+      records.add(newRecord(entry.getId(), TransactionState.APPROVED)
+          .put("data", entry.getApprovedTransaction()));
+    }
+    if (entry.getState() == TransactionState.BROADCAST_FAILED) {
+      records.add(newRecord(entry.getId(), TransactionState.BROADCAST_FAILED));
+    }
+
+    List<byte[]> encoded = new ArrayList<>(records.size());
+    for (ObjectNode record : records) {
+      encoded.add(objectMapper.writeValueAsBytes(record));
+    }
+    return encoded;
+  }
+
+  private static ObjectNode newRecord(String id, TransactionState state) {
+    ObjectNode record = objectMapper.createObjectNode();
+    record.put("id", id);
+    record.put("state", state.name());
+    return record;
+  }
+}
@@ -0,0 +1,16 @@
+package io.emax.cosigner.client.workflow;
+
+/**
+ * Steps a transaction goes through in a {@link TransactionWorkflow}, in order.
+ */
+public enum TransactionStage {
+  PREPARE, GET_SIGNERS, APPROVE, BROADCAST;
+
+  /**
+   * The stage after this one, or null if this is the last.
+   */
+  public TransactionStage next() {
+    int nextIndex = ordinal() + 1;
+    return nextIndex < values().length ? values()[nextIndex] : null;
+  }
+}
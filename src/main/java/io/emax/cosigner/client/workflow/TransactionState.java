@@ -0,0 +1,11 @@
+package io.emax.cosigner.client.workflow;
+
+/**
+ * Where a transaction is in a {@link TransactionWorkflow}.
+ *
+ * <p>BROADCAST_FAILED is a signed transaction that ran out of broadcast retries. Unlike FAILED it
+ * isn't final, the journal keeps it and {@link TransactionWorkflow#resume()} broadcasts it again.
+ */
+public enum TransactionState {
+  QUEUED, PREPARED, SIGNERS_FOUND, APPROVED, BROADCAST, FAILED, BROADCAST_FAILED
+}
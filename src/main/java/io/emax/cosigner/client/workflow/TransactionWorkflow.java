@@ -0,0 +1,388 @@
+package io.emax.cosigner.client.workflow;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.ClientConfiguration;
+import io.emax.cosigner.client.currency.CurrencyConnector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives many transactions through prepare, getSigners, approve and broadcast concurrently.
+ *
+ * <p>Every stage has its own worker pool and admits at most queueSize transactions beyond the ones
+ * its workers are running. When a stage falls behind, the stage before it and callers of submit
+ * wait for room, so a large payout batch can't pile up in memory. Failed stages are retried with a
+ * growing delay before the transaction is marked as failed. Retries never wait for room, one that
+ * finds its stage full is tried again a retry delay later.
+ *
+ * <p>With a {@link TransactionJournal} every stage result is made durable before the transaction
+ * moves on, and {@link #resume()} picks unfinished transactions back up after a restart.
+ */
+public class TransactionWorkflow implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(TransactionWorkflow.class);
+
+  private final ClientConfiguration config = new ClientConfiguration();
+  private final CurrencyConnector connector;
+  private final TransactionJournal journal;
+  private final EnumMap<TransactionStage, ThreadPoolExecutor> stageExecutors =
+      new EnumMap<>(TransactionStage.class);
+  // A permit for every transaction queued or running in the stage
+  private final EnumMap<TransactionStage, Semaphore> admissions =
+      new EnumMap<>(TransactionStage.class);
+  private final EnumMap<TransactionStage, LongAdder> completed =
+      new EnumMap<>(TransactionStage.class);
+  private final EnumMap<TransactionStage, LongAdder> retried =
+      new EnumMap<>(TransactionStage.class);
+  private final EnumMap<TransactionStage, LongAdder> failed =
+      new EnumMap<>(TransactionStage.class);
+  private final ConcurrentHashMap<String, WorkflowTransaction> transactions =
+      new ConcurrentHashMap<>();
+  private final ScheduledExecutorService retryScheduler;
+  private final long startTime = System.nanoTime();
+  private volatile boolean closed = false;
+
+  public TransactionWorkflow(CurrencyConnector connector) {
+    this(connector, new ClientConfiguration().getWorkflowStageThreads(),
+        new ClientConfiguration().getWorkflowQueueSize());
+  }
+
+  /**
+   * Creates a workflow with the given number of workers and queue capacity for every stage.
+   */
+  public TransactionWorkflow(CurrencyConnector connector, int threadsPerStage, int queueSize) {
+    this(connector, threadsPerStage, queueSize, null);
+  }
+
+  /**
+   * Creates a workflow that records progress in the journal, which may be null.
+   */
+  public TransactionWorkflow(CurrencyConnector connector, TransactionJournal journal) {
+    this(connector, new ClientConfiguration().getWorkflowStageThreads(),
+        new ClientConfiguration().getWorkflowQueueSize(), journal);
+  }
+
+  /**
+   * Creates a journaled workflow with the given number of workers and queue capacity per stage.
+   */
+  public TransactionWorkflow(CurrencyConnector connector, int threadsPerStage, int queueSize,
+      TransactionJournal journal) {
+    this.connector = connector;
+    this.journal = journal;
+    for (TransactionStage stage : TransactionStage.values()) {
+      stageExecutors.put(stage,
+          new ThreadPoolExecutor(threadsPerStage, threadsPerStage, 0L, TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(), daemonThreads("workflow-" + stage)));
+      admissions.put(stage, new Semaphore(threadsPerStage + queueSize));
+      completed.put(stage, new LongAdder());
+      retried.put(stage, new LongAdder());
+      failed.put(stage, new LongAdder());
+    }
+    retryScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("workflow-retry"));
+  }
+
+  /**
+   * Queues a transaction for processing, blocking if the prepare stage is full.
+   */
+  public WorkflowTransaction submit(CurrencyParameters params) {
+    return submit(UUID.randomUUID().toString(), params);
+  }
+
+  /**
+   * Queues a transaction under a caller chosen id.
+   */
+  public WorkflowTransaction submit(String id, CurrencyParameters params) {
+    WorkflowTransaction transaction = new WorkflowTransaction(id, params);
+    if (transactions.putIfAbsent(id, transaction) != null) {
+      throw new IllegalArgumentException("Transaction " + id + " is already in the workflow");
+    }
+    if (journal != null) {
+      try {
+        journal.recordSubmitted(id, params);
+      } catch (IOException e) {
+        transactions.remove(id);
+        throw new IllegalStateException("Could not journal transaction " + id, e);
+      }
+    }
+    enqueue(TransactionStage.PREPARE, transaction);
+    return transaction;
+  }
+
+  /**
+   * Re-queues transactions the journal says were still in flight, continuing from the last stage
+   * that completed. Approved transactions are broadcast again as-is rather than re-signed.
+   */
+  public List<WorkflowTransaction> resume() {
+    List<WorkflowTransaction> resumed = new ArrayList<>();
+    if (journal == null) {
+      return resumed;
+    }
+    for (JournalEntry entry : journal.getUnfinished().values()) {
+      WorkflowTransaction transaction = new WorkflowTransaction(entry.getId(), entry.getRequest());
+      transaction.setPreparedTransaction(entry.getPreparedTransaction());
+      transaction.setSigners(entry.getSigners());
+      transaction.setApprovedTransaction(entry.getApprovedTransaction());
+      transaction.setState(entry.getState());
+      if (transactions.putIfAbsent(entry.getId(), transaction) != null) {
+        continue;
+      }
+
+      TransactionStage stage;
+      switch (entry.getState()) {
+        case PREPARED:
+          stage = TransactionStage.GET_SIGNERS;
+          break;
+        case SIGNERS_FOUND:
+          stage = TransactionStage.APPROVE;
+          break;
+        case APPROVED:
+        case BROADCAST_FAILED:
+          stage = TransactionStage.BROADCAST;
+          break;
+        default:
+          stage = TransactionStage.PREPARE;
+          break;
+      }
+      logger.info("Resuming {} at {}", entry.getId(), stage);
+      enqueue(stage, transaction);
+      resumed.add(transaction);
+    }
+    return resumed;
+  }
+
+  /**
+   * Returns a transaction that is still being processed, or null.
+   */
+  public WorkflowTransaction getTransaction(String id) {
+    return transactions.get(id);
+  }
+
+  /**
+   * Transactions that haven't been broadcast or failed yet.
+   */
+  public Collection<WorkflowTransaction> getTransactions() {
+    return Collections.unmodifiableCollection(transactions.values());
+  }
+
+  public long getCompleted(TransactionStage stage) {
+    return completed.get(stage).sum();
+  }
+
+  public long getRetried(TransactionStage stage) {
+    return retried.get(stage).sum();
+  }
+
+  public long getFailed(TransactionStage stage) {
+    return failed.get(stage).sum();
+  }
+
+  public int getQueueDepth(TransactionStage stage) {
+    return stageExecutors.get(stage).getQueue().size();
+  }
+
+  /**
+   * Transactions per second that made it through the stage since the workflow was created.
+   */
+  public double getThroughput(TransactionStage stage) {
+    double seconds = (System.nanoTime() - startTime) / 1e9;
+    return seconds > 0 ? getCompleted(stage) / seconds : 0;
+  }
+
+  /**
+   * Stops accepting work, transactions still queued are abandoned.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    retryScheduler.shutdownNow();
+    stageExecutors.values().forEach(ThreadPoolExecutor::shutdownNow);
+  }
+
+  /**
+   * Queues the transaction for the stage, waiting for room.
+   */
+  private void enqueue(TransactionStage stage, WorkflowTransaction transaction) {
+    Semaphore admission = admissions.get(stage);
+    try {
+      while (!admission.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+        if (closed) {
+          throw new RejectedExecutionException("Workflow is closed");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException(e);
+    }
+    dispatch(stage, transaction);
+  }
+
+  /**
+   * Queues the transaction for the stage if there's room, returns false otherwise.
+   */
+  private boolean tryEnqueue(TransactionStage stage, WorkflowTransaction transaction) {
+    if (!admissions.get(stage).tryAcquire()) {
+      return false;
+    }
+    dispatch(stage, transaction);
+    return true;
+  }
+
+  private void dispatch(TransactionStage stage, WorkflowTransaction transaction) {
+    Semaphore admission = admissions.get(stage);
+    try {
+      stageExecutors.get(stage).execute(() -> {
+        try {
+          runStage(stage, transaction);
+        } finally {
+          admission.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      admission.release();
+      throw e;
+    }
+  }
+
+  private void scheduleRetry(TransactionStage stage, WorkflowTransaction transaction,
+      long delay) {
+    retryScheduler.schedule(() -> {
+      try {
+        if (!tryEnqueue(stage, transaction)) {
+          scheduleRetry(stage, transaction, config.getWorkflowRetryDelay());
+        }
+      } catch (RejectedExecutionException e) {
+        logger.debug("Workflow closed, not retrying {}", transaction.getId());
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void runStage(TransactionStage stage, WorkflowTransaction transaction) {
+    transaction.setAttempts(transaction.getAttempts() + 1);
+    try {
+      performStage(stage, transaction);
+      if (journal != null) {
+        journal.recordState(transaction);
+      }
+    } catch (Exception e) {
+      retryOrFail(stage, transaction, e);
+      return;
+    }
+
+    completed.get(stage).increment();
+    transaction.setAttempts(0);
+    TransactionStage next = stage.next();
+    if (next == null) {
+      transactions.remove(transaction.getId());
+      transaction.getCompletion().complete(transaction);
+    } else {
+      enqueue(next, transaction);
+    }
+  }
+
+  private void retryOrFail(TransactionStage stage, WorkflowTransaction transaction, Exception e) {
+    if (transaction.getAttempts() <= config.getWorkflowMaxRetries()) {
+      retried.get(stage).increment();
+      long delay = config.getWorkflowRetryDelay() * transaction.getAttempts();
+      logger.warn("Stage {} failed for {}, retrying in {}ms", stage, transaction.getId(), delay, e);
+      try {
+        scheduleRetry(stage, transaction, delay);
+        return;
+      } catch (RejectedExecutionException rejected) {
+        logger.debug("Workflow closed, not retrying {}", transaction.getId());
+      }
+    }
+
+    failed.get(stage).increment();
+    logger.error("Stage {} failed for {}", stage, transaction.getId(), e);
+    transaction.setError(e);
+    // The signed transaction stays in the journal, a later resume() broadcasts it again
+    transaction.setState(stage == TransactionStage.BROADCAST ? TransactionState.BROADCAST_FAILED
+        : TransactionState.FAILED);
+    if (journal != null) {
+      try {
+        journal.recordState(transaction);
+      } catch (IOException journalError) {
+        logger.error("Could not journal failure of {}", transaction.getId(), journalError);
+      }
+    }
+    transactions.remove(transaction.getId());
+    transaction.getCompletion().completeExceptionally(e);
+  }
+
+  private void performStage(TransactionStage stage, WorkflowTransaction transaction)
+      throws Exception {
+    String currency = transaction.getRequest().getCurrencySymbol();
+    switch (stage) {
+      case PREPARE:
+        transaction.setPreparedTransaction(connector.prepareTransaction(transaction.getRequest()));
+        transaction.setState(TransactionState.PREPARED);
+        break;
+      case GET_SIGNERS:
+        List<String> signers = new ArrayList<>();
+        connector.getSignersForTransaction(
+            stageParams(currency, null, transaction.getPreparedTransaction()))
+            .forEach(signers::add);
+        transaction.setSigners(signers);
+        transaction.setState(TransactionState.SIGNERS_FOUND);
+        break;
+      case APPROVE:
+        List<String> approvers = transaction.getSigners();
+        if (approvers.isEmpty() && transaction.getRequest().getAccount() != null) {
+          approvers = transaction.getRequest().getAccount();
+        }
+        String approved = transaction.getPreparedTransaction();
+        for (String approver : approvers) {
+          approved = connector.approveTransaction(stageParams(currency, approver, approved));
+        }
+        transaction.setApprovedTransaction(approved);
+        transaction.setState(TransactionState.APPROVED);
+        break;
+      case BROADCAST:
+        transaction.setBroadcastResult(connector.broadcastTransaction(
+            stageParams(currency, null, transaction.getApprovedTransaction())));
+        transaction.setState(TransactionState.BROADCAST);
+        break;
+      default:
+        throw new IllegalStateException("Unknown stage " + stage);
+    }
+  }
+
+  private static CurrencyParameters stageParams(String currency, String account,
+      String transactionData) {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol(currency);
+    if (account != null) {
+      params.setAccount(Collections.singletonList(account));
+    }
+    params.setTransactionData(transactionData);
+    return params;
+  }
+
+  private static ThreadFactory daemonThreads(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,109 @@
+package io.emax.cosigner.client.workflow;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A transaction being driven through a {@link TransactionWorkflow}, along with what each stage
+ * returned so far.
+ */
+public class WorkflowTransaction {
+  private final String id;
+  private final CurrencyParameters request;
+  private final CompletableFuture<WorkflowTransaction> completion = new CompletableFuture<>();
+  private volatile TransactionState state = TransactionState.QUEUED;
+  private volatile String preparedTransaction;
+  private volatile List<String> signers = Collections.emptyList();
+  private volatile String approvedTransaction;
+  private volatile String broadcastResult;
+  private volatile Throwable error;
+  private volatile int attempts = 0;
+
+  WorkflowTransaction(String id, CurrencyParameters request) {
+    this.id = id;
+    this.request = request;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * The parameters originally passed to prepareTransaction.
+   */
+  public CurrencyParameters getRequest() {
+    return request;
+  }
+
+  public TransactionState getState() {
+    return state;
+  }
+
+  void setState(TransactionState state) {
+    this.state = state;
+  }
+
+  public String getPreparedTransaction() {
+    return preparedTransaction;
+  }
+
+  void setPreparedTransaction(String preparedTransaction) {
+    this.preparedTransaction = preparedTransaction;
+  }
+
+  public List<String> getSigners() {
+    return signers;
+  }
+
+  void setSigners(List<String> signers) {
+    this.signers = Collections.unmodifiableList(signers);
+  }
+
+  public String getApprovedTransaction() {
+    return approvedTransaction;
+  }
+
+  void setApprovedTransaction(String approvedTransaction) {
+    this.approvedTransaction = approvedTransaction;
+  }
+
+  /**
+   * What BroadcastTransaction returned, normally the transaction hash.
+   */
+  public String getBroadcastResult() {
+    return broadcastResult;
+  }
+
+  void setBroadcastResult(String broadcastResult) {
+    this.broadcastResult = broadcastResult;
+  }
+
+  public Throwable getError() {
+    return error;
+  }
+
+  void setError(Throwable error) {
+    this.error = error;
+  }
+
+  /**
+   * Attempts made at the current stage.
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  /**
+   * Completes when the transaction has been broadcast, or exceptionally when it fails for good.
+   */
+  public CompletableFuture<WorkflowTransaction> getCompletion() {
+    return completion;
+  }
+}
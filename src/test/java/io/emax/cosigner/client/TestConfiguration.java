@@ -0,0 +1,46 @@
+package io.emax.cosigner.client;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Points the client configuration at a temporary file for the length of a test.
+ */
+public class TestConfiguration implements AutoCloseable {
+  private final String previousConfig = System.getProperty("cosigner.client.config");
+  private final Path config;
+
+  /**
+   * Loads a configuration made of the given properties, everything else keeps its default.
+   */
+  public TestConfiguration(String properties) throws IOException {
+    config = Files.createTempFile("cosigner-client-test", ".properties");
+    System.setProperty("cosigner.client.config", config.toString());
+    load(properties);
+  }
+
+  /**
+   * Replaces the loaded properties.
+   */
+  public final void load(String properties) throws IOException {
+    Files.write(config, properties.getBytes(StandardCharsets.UTF_8));
+    ClientConfiguration.reload();
+  }
+
+  /**
+   * Restores the configuration other tests run with.
+   */
+  @Override
+  public void close() throws IOException {
+    // An empty file reloads the defaults, a missing one would keep this test's settings
+    load("");
+    if (previousConfig == null) {
+      System.clearProperty("cosigner.client.config");
+    } else {
+      System.setProperty("cosigner.client.config", previousConfig);
+    }
+    Files.deleteIfExists(config);
+  }
+}
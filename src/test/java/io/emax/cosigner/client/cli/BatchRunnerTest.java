@@ -0,0 +1,193 @@
+package io.emax.cosigner.client.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BatchRunnerTest {
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+  /**
+   * Runs the input through a batch runner, returning the printed lines.
+   */
+  private List<String> run(BatchRunner.Command command, int parallelism, boolean ordered,
+      String input) throws Exception {
+    try (PrintStream out = new PrintStream(output, true, "UTF-8")) {
+      new BatchRunner(command, parallelism, ordered, out)
+          .execute(new BufferedReader(new StringReader(input)));
+    }
+    return lines();
+  }
+
+  private List<String> lines() {
+    String printed = new String(output.toByteArray(), StandardCharsets.UTF_8);
+    return printed.isEmpty() ? Collections.emptyList()
+        : Arrays.asList(printed.split(System.lineSeparator()));
+  }
+
+  /**
+   * Echoes the arguments back, "slow" commands take 200ms and "fail" commands throw.
+   */
+  private static String echo(String[] args) throws Exception {
+    if ("fail".equals(args[0])) {
+      throw new IllegalStateException("failed " + args[1]);
+    }
+    if ("slow".equals(args[0])) {
+      Thread.sleep(200);
+    }
+    return String.join(",", args);
+  }
+
+  @Test
+  public void textCommandsPrintInInputOrder() throws Exception {
+    List<String> lines = run(BatchRunnerTest::echo, 4, true,
+        "slow 1\n\n# a comment\ngetBalance BTC 1abc\n  listCurrencies  \nfail 4\n");
+    assertEquals(Arrays.asList("slow,1", "getBalance,BTC,1abc", "listCurrencies",
+        "Error: failed 4"), lines);
+  }
+
+  @Test
+  public void unorderedResultsCarryTheirLineNumber() throws Exception {
+    List<String> lines = run(BatchRunnerTest::echo, 4, false,
+        "slow 1\n# a comment\ngetBalance BTC\nfail 4\n");
+    assertEquals(new HashSet<>(Arrays.asList("1\tslow,1", "3\tgetBalance,BTC",
+        "4\tError: failed 4")), new HashSet<>(lines));
+    // The slow first line is overtaken
+    assertEquals("1\tslow,1", lines.get(lines.size() - 1));
+  }
+
+  @Test
+  public void jsonCommandsGetJsonResults() throws Exception {
+    List<String> lines = run(BatchRunnerTest::echo, 2, true,
+        "{\"id\": \"a1\", \"method\": \"getBalance\", \"args\": [\"BTC\", \"1abc\"]}\n"
+            + "{\"method\": \"fail\", \"args\": [\"x\"]}\n"
+            + "{\"id\": \"a3\", \"method\": \"monitorAddress\", \"args\": [\"BTC\"]}\n"
+            + "{not json\n"
+            + "listCurrencies\n");
+    assertEquals(5, lines.size());
+
+    JsonNode first = objectMapper.readTree(lines.get(0));
+    assertEquals("a1", first.get("id").asText());
+    assertEquals("getBalance,BTC,1abc", first.get("result").asText());
+    assertFalse(first.has("error"));
+
+    JsonNode second = objectMapper.readTree(lines.get(1));
+    assertEquals("2", second.get("id").asText());
+    assertEquals("failed x", second.get("error").asText());
+    assertFalse(second.has("result"));
+
+    JsonNode third = objectMapper.readTree(lines.get(2));
+    assertEquals("a3", third.get("id").asText());
+    assertEquals("monitorAddress can't be run in batch mode", third.get("error").asText());
+
+    JsonNode fourth = objectMapper.readTree(lines.get(3));
+    assertEquals("4", fourth.get("id").asText());
+    assertTrue(fourth.has("error"));
+
+    // Text lines stay text alongside JSON ones
+    assertEquals("listCurrencies", lines.get(4));
+  }
+
+  @Test
+  public void orderedReaderStaysWithinTheWindow() throws Exception {
+    readerStaysWithinTheWindow(true);
+  }
+
+  @Test
+  public void unorderedReaderStaysWithinTheWindow() throws Exception {
+    readerStaysWithinTheWindow(false);
+  }
+
+  /**
+   * Blocks every command and checks the reader stops parallelism * 4 lines ahead.
+   */
+  private void readerStaysWithinTheWindow(boolean ordered) throws Exception {
+    int parallelism = 2;
+    int commands = 50;
+    StringBuilder input = new StringBuilder();
+    for (int i = 0; i < commands; i++) {
+      input.append("getBalance ").append(i).append('\n');
+    }
+    AtomicInteger linesRead = new AtomicInteger();
+    BufferedReader reader = new BufferedReader(new StringReader(input.toString())) {
+      @Override
+      public String readLine() throws IOException {
+        String line = super.readLine();
+        if (line != null) {
+          linesRead.incrementAndGet();
+        }
+        return line;
+      }
+    };
+    CountDownLatch blocked = new CountDownLatch(1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    BatchRunner.Command command = args -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        blocked.await();
+      } finally {
+        running.decrementAndGet();
+      }
+      return args[1];
+    };
+
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    Thread batch = new Thread(() -> {
+      try (PrintStream out = new PrintStream(output, true, "UTF-8")) {
+        new BatchRunner(command, parallelism, ordered, out).execute(reader);
+      } catch (Exception e) {
+        failures.add(e);
+      }
+    });
+    batch.start();
+
+    // Give the reader every chance to run ahead
+    Thread.sleep(500);
+    assertEquals(parallelism, maxRunning.get());
+    // Every permit taken, plus the line waiting for one
+    assertEquals(parallelism * 4 + 1, linesRead.get());
+    assertTrue(lines().isEmpty());
+
+    blocked.countDown();
+    batch.join(TimeUnit.SECONDS.toMillis(10));
+    assertFalse(batch.isAlive());
+    assertTrue(failures.toString(), failures.isEmpty());
+    assertEquals(commands, linesRead.get());
+    assertEquals(parallelism, maxRunning.get());
+
+    List<String> lines = lines();
+    assertEquals(commands, lines.size());
+    Set<String> expected = new HashSet<>();
+    for (int i = 0; i < commands; i++) {
+      expected.add(ordered ? String.valueOf(i) : (i + 1) + "\t" + i);
+      if (ordered) {
+        assertEquals(String.valueOf(i), lines.get(i));
+      }
+    }
+    assertEquals(expected, new HashSet<>(lines));
+  }
+}
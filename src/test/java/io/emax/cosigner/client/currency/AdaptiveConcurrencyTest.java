@@ -0,0 +1,119 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertTrue;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.metrics.DefaultMetrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * Runs a steady load through a connector against a stub server that turns slow and then recovers,
+ * and follows the adaptive concurrency limit of the endpoint.
+ */
+public class AdaptiveConcurrencyTest {
+  private static final int WORKERS = 24;
+  private static final int INITIAL_LIMIT = 16;
+  private static final long TIMEOUT = 15000;
+
+  private final DefaultMetrics metrics = new DefaultMetrics();
+  private final AtomicInteger latency = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private final ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+  private volatile boolean running = true;
+  private StubCosignerServer server;
+  private CurrencyConnector connector;
+
+  /**
+   * Stops the load, the connector and the stub server.
+   */
+  @After
+  public void tearDown() throws Exception {
+    running = false;
+    workers.shutdown();
+    workers.awaitTermination(10, TimeUnit.SECONDS);
+    if (connector != null) {
+      connector.close();
+    }
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  private int limit() {
+    Number limit = metrics.getGauge(
+        connector.getMetrics().getScope() + ".limiter./rs/GetBalance.limit");
+    return limit == null ? INITIAL_LIMIT : limit.intValue();
+  }
+
+  private int waitForLimit(IntPredicate condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    int limit = limit();
+    while (!condition.test(limit)) {
+      assertTrue("Limit stuck at " + limit, System.currentTimeMillis() < deadline);
+      Thread.sleep(20);
+      limit = limit();
+    }
+    return limit;
+  }
+
+  @Test
+  public void limitBacksOffWhileTheServerIsSlowAndRecoversAfter() throws Exception {
+    server = new StubCosignerServer((target, body, response) -> {
+      int current = inFlight.incrementAndGet();
+      maxInFlight.accumulateAndGet(current, Math::max);
+      try {
+        Thread.sleep(latency.get());
+      } finally {
+        inFlight.decrementAndGet();
+      }
+      return "{\"result\":\"1\"}";
+    });
+    server.configure("useAdaptiveConcurrency=true\nconcurrencyInitialLimit=" + INITIAL_LIMIT
+        + "\nconcurrencyMinLimit=2\nconcurrencyMaxLimit=64\nconcurrencyLatencyTarget=100\n"
+        + "useMonitorBalances=false\n");
+    connector = new CurrencyConnector(metrics);
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    params.setAccount(Collections.singletonList("1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2"));
+
+    // Three times the latency target, the server is queueing
+    latency.set(300);
+    List<Runnable> load = new ArrayList<>();
+    for (int i = 0; i < WORKERS; i++) {
+      load.add(() -> {
+        while (running) {
+          try {
+            connector.getBalance(params);
+          } catch (Exception e) {
+            // Counted by the limiter, keep the load up
+          }
+        }
+      });
+    }
+    load.forEach(workers::execute);
+
+    int backedOff = waitForLimit(limit -> limit <= INITIAL_LIMIT / 2);
+    // The limiter, not the worker count, decides how much reaches the server
+    Thread.sleep(1000);
+    maxInFlight.set(0);
+    Thread.sleep(1000);
+    assertTrue("Server saw " + maxInFlight.get() + " requests at once with a limit of "
+        + limit(), maxInFlight.get() <= INITIAL_LIMIT / 2);
+
+    latency.set(5);
+    int recovered = waitForLimit(limit -> limit >= INITIAL_LIMIT);
+    assertTrue(recovered > backedOff);
+  }
+}
@@ -0,0 +1,112 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConcurrencyLimiterTest {
+  private static final long TARGET_MILLIS = 100;
+  private static final long FAST = 10_000_000;
+  private static final long SLOW = 500_000_000;
+
+  private long now = 0;
+
+  private ConcurrencyLimiter limiter(int initialLimit) {
+    return new ConcurrencyLimiter(initialLimit, 2, 100, TARGET_MILLIS, () -> now);
+  }
+
+  private static void fill(ConcurrencyLimiter limiter, int requests) {
+    for (int i = 0; i < requests; i++) {
+      assertTrue(limiter.tryAcquire(() -> { }));
+    }
+  }
+
+  @Test
+  public void fastResponsesAtTheLimitGrowItByOnePerRoundTrip() {
+    ConcurrencyLimiter limiter = limiter(10);
+    fill(limiter, 10);
+
+    // Each response adds 1/limit, ten leave it just short of 11 and the eleventh crosses it
+    for (int i = 0; i < 10; i++) {
+      limiter.release(FAST, false);
+      fill(limiter, 1);
+    }
+    assertEquals(10, limiter.getLimit());
+    limiter.release(FAST, false);
+
+    assertEquals(9, limiter.getInFlight());
+    assertEquals(11, limiter.getLimit());
+  }
+
+  @Test
+  public void fastResponsesWellBelowTheLimitLeaveIt() {
+    ConcurrencyLimiter limiter = limiter(10);
+
+    for (int i = 0; i < 50; i++) {
+      fill(limiter, 1);
+      limiter.release(FAST, false);
+    }
+
+    assertEquals(10, limiter.getLimit());
+  }
+
+  @Test
+  public void slowResponseCutsTheLimit() {
+    ConcurrencyLimiter limiter = limiter(20);
+    fill(limiter, 1);
+
+    limiter.release(SLOW, false);
+
+    assertEquals(18, limiter.getLimit());
+  }
+
+  @Test
+  public void burstOfFailuresCutsOncePerLatencyWindow() {
+    ConcurrencyLimiter limiter = limiter(20);
+    fill(limiter, 20);
+
+    for (int i = 0; i < 10; i++) {
+      limiter.release(0, true);
+    }
+    assertEquals(18, limiter.getLimit());
+
+    now += TARGET_MILLIS * 1_000_000;
+    for (int i = 0; i < 10; i++) {
+      limiter.release(SLOW, false);
+    }
+    assertEquals(16, limiter.getLimit());
+  }
+
+  @Test
+  public void limitNeverDropsBelowTheMinimum() {
+    ConcurrencyLimiter limiter = limiter(3);
+
+    for (int i = 0; i < 20; i++) {
+      fill(limiter, 1);
+      limiter.release(SLOW, false);
+      now += TARGET_MILLIS * 1_000_000;
+    }
+
+    assertEquals(2, limiter.getLimit());
+  }
+
+  @Test
+  public void queuedTasksRunAsSlotsFreeUp() {
+    ConcurrencyLimiter limiter = limiter(2);
+    List<String> ran = new ArrayList<>();
+    fill(limiter, 2);
+
+    assertFalse(limiter.tryAcquire(() -> ran.add("first")));
+    assertFalse(limiter.tryAcquire(() -> ran.add("second")));
+    limiter.release(FAST, false);
+
+    assertEquals(1, ran.size());
+    assertEquals("first", ran.get(0));
+    assertEquals(2, limiter.getInFlight());
+  }
+}
@@ -0,0 +1,44 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.codahale.metrics.MetricRegistry;
+
+import io.emax.cosigner.client.metrics.DropwizardMetrics;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class ConnectorMetricsTest {
+  private static Set<String> gauges(MetricRegistry registry, CurrencyConnector connector) {
+    String scope = "cosigner-client." + connector.getMetrics().getScope() + ".";
+    return registry.getGauges().keySet().stream().filter(name -> name.startsWith(scope))
+        .collect(Collectors.toSet());
+  }
+
+  @Test
+  public void connectorsSharingARegistryKeepTheirOwnGauges() {
+    MetricRegistry registry = new MetricRegistry();
+    DropwizardMetrics metrics = new DropwizardMetrics(registry);
+    try (CurrencyConnector first = new CurrencyConnector(metrics);
+        CurrencyConnector second = new CurrencyConnector(metrics)) {
+      Set<String> firstGauges = gauges(registry, first);
+      Set<String> secondGauges = gauges(registry, second);
+      assertTrue(firstGauges.contains("cosigner-client." + first.getMetrics().getScope()
+          + ".monitor.pendingTransactions"));
+      assertEquals(firstGauges.size(), secondGauges.size());
+      assertEquals(firstGauges.size() + secondGauges.size(), registry.getGauges().size());
+
+      first.close();
+      assertTrue(gauges(registry, first).isEmpty());
+      assertEquals(secondGauges, gauges(registry, second));
+
+      // Late registrations from a closed connector don't come back
+      first.getMetrics().registerGauge("late", () -> 1);
+      assertTrue(gauges(registry, first).isEmpty());
+    }
+  }
+}
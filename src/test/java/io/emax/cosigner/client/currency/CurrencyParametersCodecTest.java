@@ -0,0 +1,58 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.currency.CurrencyParametersCodec.PooledContent;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class CurrencyParametersCodecTest {
+  private static CurrencyParameters params(String account) {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    params.setTransactionData(account);
+    return params;
+  }
+
+  private static String read(PooledContent content) {
+    ByteBuffer buffer = content.iterator().next();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static byte[] backing(PooledContent content) {
+    return content.iterator().next().array();
+  }
+
+  @Test
+  public void unreleasedBodyIsNotOverwritten() throws Exception {
+    PooledContent first = CurrencyParametersCodec.toPooledContent(params("first"));
+    String encoded = read(first);
+
+    // Say the first send timed out and the client is still writing it
+    PooledContent second = CurrencyParametersCodec.toPooledContent(params("second"));
+    assertEquals(encoded, read(first));
+    assertEquals(CurrencyParametersCodec.toString(params("second")), read(second));
+    assertNotSame(backing(first), backing(second));
+    second.release();
+    first.release();
+  }
+
+  @Test
+  public void releasedBufferIsReused() throws Exception {
+    PooledContent first = CurrencyParametersCodec.toPooledContent(params("first"));
+    first.release();
+    PooledContent second = CurrencyParametersCodec.toPooledContent(params("second"));
+    second.onComplete(null);
+
+    assertSame(backing(first), backing(second));
+    assertEquals(CurrencyParametersCodec.toString(params("second")), second.asString());
+  }
+}
@@ -0,0 +1,138 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class JsonResultIteratorTest {
+  private static List<String> readAll(String response) throws Exception {
+    List<String> elements = new ArrayList<>();
+    try (JsonResultIterator results = new JsonResultIterator(
+        new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)))) {
+      results.forEachRemaining(element -> elements.add(element.toString()));
+    }
+    return elements;
+  }
+
+  @Test
+  public void walksTheEscapedResultArray() throws Exception {
+    List<String> elements = readAll("{\"result\":\"[{\\\"txHash\\\":\\\"a\\\\\\\"b\\\"},"
+        + "{\\\"txHash\\\":\\\"\\\\u00e9\\\\n\\\"}]\"}");
+
+    assertEquals(2, elements.size());
+    assertEquals("{\"txHash\":\"a\\\"b\"}", elements.get(0));
+    assertEquals("{\"txHash\":\"é\\n\"}", elements.get(1));
+  }
+
+  @Test
+  public void skipsOtherFieldsBeforeTheResult() throws Exception {
+    List<String> elements = readAll("{ \"meta\" : {\"a\":[1,\"}\"]}, \"count\": 2, \"ok\":true,"
+        + " \"error\":\"\", \"result\" : \"[1,2]\"}");
+
+    assertEquals(2, elements.size());
+    assertEquals("1", elements.get(0));
+  }
+
+  @Test(expected = Exception.class)
+  public void reportsServerErrors() throws Exception {
+    readAll("{\"error\":\"Unknown currency\",\"result\":\"[]\"}");
+  }
+
+  @Test(expected = Exception.class)
+  public void reportsServerErrorsAfterTheResult() throws Exception {
+    readAll("{\"result\":\"[]\",\"error\":\"Unknown currency\"}");
+  }
+
+  @Test
+  public void emptyErrorAfterTheResultIsIgnored() throws Exception {
+    assertEquals(2, readAll("{\"result\":\"[1,2]\", \"count\": 2, \"error\":\"\"}").size());
+  }
+
+  @Test
+  public void responseWithoutResultIsEmpty() throws Exception {
+    assertTrue(readAll("{\"error\":\"\"}").isEmpty());
+  }
+
+  @Test
+  public void readsOnlyAsFarAsTheCurrentElement() throws Exception {
+    GeneratedResponse response = new GeneratedResponse(1_000_000);
+    try (JsonResultIterator results = new JsonResultIterator(response)) {
+      assertTrue(results.hasNext());
+      JsonNode first = results.next();
+      assertEquals("tx0", first.path("txHash").asText());
+      // A few buffers in, not the 40MB the whole response would take
+      assertTrue("Read " + response.bytesRead, response.bytesRead < 64 * 1024);
+
+      int count = 1;
+      while (results.hasNext()) {
+        results.next();
+        count++;
+      }
+      assertEquals(1_000_000, count);
+    }
+    assertFalse(response.bytesRead < 30_000_000);
+  }
+
+  /**
+   * A ListTransactions response produced as it's read, never held in memory as a whole.
+   */
+  private static final class GeneratedResponse extends InputStream {
+    private final int elements;
+    private int produced = 0;
+    private byte[] chunk = "{\"result\":\"[".getBytes(StandardCharsets.UTF_8);
+    private int position = 0;
+    private long bytesRead = 0;
+
+    GeneratedResponse(int elements) {
+      this.elements = elements;
+    }
+
+    @Override
+    public int read() {
+      if (position == chunk.length && !refill()) {
+        return -1;
+      }
+      bytesRead++;
+      return chunk[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] target, int offset, int length) {
+      if (position == chunk.length && !refill()) {
+        return -1;
+      }
+      int count = Math.min(length, chunk.length - position);
+      System.arraycopy(chunk, position, target, offset, count);
+      position += count;
+      bytesRead += count;
+      return count;
+    }
+
+    private boolean refill() {
+      String next;
+      if (produced < elements) {
+        next = (produced == 0 ? "" : ",") + "{\\\"txHash\\\":\\\"tx" + produced
+            + "\\\",\\\"amount\\\":\\\"1.0\\\"}";
+        produced++;
+      } else if (produced == elements) {
+        next = "]\"}";
+        produced++;
+      } else {
+        return false;
+      }
+      chunk = next.getBytes(StandardCharsets.UTF_8);
+      position = 0;
+      return true;
+    }
+  }
+}
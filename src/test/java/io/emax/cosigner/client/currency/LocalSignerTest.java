@@ -0,0 +1,246 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.common.Json;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.EllipticCurve;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LocalSignerTest {
+  private static final ECParameterSpec SECP256K1 = new ECParameterSpec(
+      new EllipticCurve(new ECFieldFp(new BigInteger(
+          "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFC2F", 16)),
+          BigInteger.ZERO, BigInteger.valueOf(7)),
+      new ECPoint(
+          new BigInteger("79BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F81798", 16),
+          new BigInteger("483ADA7726A3C4655DA4FBFC0E1108A8FD17B448A68554199C47D08FFB10D4B8", 16)),
+      new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141", 16), 1);
+  private static final String HASH =
+      "9c22ff5f21f0b81b113e63f7db6da94fedef11b2119b4088b89664fb9a3cb658";
+
+  private final AtomicReference<String> applied = new AtomicReference<>();
+  private StubCosignerServer server;
+  private CurrencyConnector connector;
+  private LocalSigner signer;
+
+  /**
+   * Closes the signer, the connector and the stub server.
+   */
+  @After
+  public void tearDown() throws Exception {
+    if (signer != null) {
+      signer.close();
+    }
+    if (connector != null) {
+      connector.close();
+    }
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  /**
+   * Serves the signing data for the address and records what's handed to ApplySignature.
+   */
+  private void start(String address) throws Exception {
+    String signatureString = Json.stringifyObject(Iterable.class,
+        Collections.singletonList(Arrays.asList(address, HASH)));
+    server = new StubCosignerServer((target, body, response) -> {
+      if ("/rs/ApplySignature".equals(target)) {
+        applied.set(body);
+        return result("signed");
+      }
+      return result(signatureString);
+    });
+    server.configure("");
+    connector = new CurrencyConnector();
+  }
+
+  private static String result(String result) throws Exception {
+    return new ObjectMapper().writeValueAsString(Collections.singletonMap("result", result));
+  }
+
+  /**
+   * Signs through the connector and hands the result back, returns the entry the server received.
+   */
+  private List<String> roundTrip(String currency) throws Exception {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol(currency);
+    params.setTransactionData("tx");
+    Iterable<Iterable<String>> signed = connector.signLocally(params, signer);
+
+    params.setTransactionData(Json.stringifyObject(Iterable.class, signed));
+    assertEquals("signed", connector.applySignature(params));
+
+    CurrencyParameters received =
+        (CurrencyParameters) Json.objectifyString(CurrencyParameters.class, applied.get());
+    assertEquals(currency, received.getCurrencySymbol());
+    List<List<String>> entries = new ArrayList<>();
+    for (Object entry : (Iterable<?>) Json.objectifyString(Iterable.class,
+        received.getTransactionData())) {
+      List<String> values = new ArrayList<>();
+      ((Iterable<?>) entry).forEach(value -> values.add((String) value));
+      entries.add(values);
+    }
+    assertEquals(1, entries.size());
+    return entries.get(0);
+  }
+
+  @Test
+  public void addressesKeepTheirCaseUnlessTheyAreHex() throws Exception {
+    KeyPair upper = generate();
+    KeyPair lower = generate();
+    Map<String, PrivateKey> keys = new HashMap<>();
+    keys.put("1BoatSLRHtKNngkdXEeobR76b53LETtpyT", upper.getPrivate());
+    keys.put("1boatslrhtknngkdxeeobr76b53lettpyt", lower.getPrivate());
+    keys.put("0x52908400098527886E0F7030069857D2E4169EE7", generate().getPrivate());
+    signer = new LocalSigner(keys, 1, Collections.emptyList());
+
+    assertTrue(signer.canSign("1BoatSLRHtKNngkdXEeobR76b53LETtpyT"));
+    assertTrue(signer.canSign("1boatslrhtknngkdxeeobr76b53lettpyt"));
+    assertFalse(signer.canSign("1BOATSLRHTKNNGKDXEEOBR76B53LETTPYT"));
+    assertTrue(signer.canSign("0x52908400098527886e0f7030069857d2e4169ee7"));
+
+    // Each address signs with its own key rather than whichever was loaded last
+    assertTrue(verify(upper, signer.sign("1BoatSLRHtKNngkdXEeobR76b53LETtpyT", HASH)));
+    assertTrue(verify(lower, signer.sign("1boatslrhtknngkdxeeobr76b53lettpyt", HASH)));
+  }
+
+  @Test
+  public void derSignaturesRoundTrip() throws Exception {
+    KeyPair keyPair = generate();
+    signer = new LocalSigner(Collections.singletonMap("mkey", keyPair.getPrivate()), 2,
+        Collections.singletonList("ETH"));
+    start("mkey");
+
+    List<String> entry = roundTrip("BTC");
+    assertEquals(3, entry.size());
+    assertEquals(Arrays.asList("mkey", HASH), entry.subList(0, 2));
+    assertTrue(verify(keyPair, entry.get(2)));
+  }
+
+  @Test
+  public void recoverableSignaturesRoundTrip() throws Exception {
+    BigInteger secret = new BigInteger(
+        "4c0883a69102937d6231471b5decb208e6aee7fd3ea23a4bc1a3a1bfa1a35c8a", 16);
+    String address = "0x2c7536E3605D9C16a7a3D7b1898e529396a65c23";
+    signer = new LocalSigner(Collections.singletonMap(address, secp256k1Key(secret)), 2,
+        Collections.singletonList("ETH"));
+    start(address.toLowerCase());
+
+    for (int i = 0; i < 20; i++) {
+      List<String> entry = roundTrip("ETH");
+      assertEquals(5, entry.size());
+      assertEquals(64, entry.get(2).length());
+      assertEquals(64, entry.get(3).length());
+      BigInteger sigR = new BigInteger(entry.get(2), 16);
+      BigInteger sigS = new BigInteger(entry.get(3), 16);
+      int sigV = Integer.parseInt(entry.get(4), 16);
+
+      BigInteger order = SECP256K1.getOrder();
+      assertTrue("s must be low", sigS.compareTo(order.shiftRight(1)) <= 0);
+      assertTrue("v must be 27 or 28", sigV == 27 || sigV == 28);
+      assertEquals(RecoverableSignature.multiply(SECP256K1, SECP256K1.getGenerator(), secret),
+          recover(sigR, sigS, sigV - 27));
+    }
+  }
+
+  /**
+   * Recovers the public key from a signature of HASH the way Ethereum's ecrecover does.
+   */
+  private static ECPoint recover(BigInteger sigR, BigInteger sigS, int recoveryId) {
+    BigInteger prime = ((ECFieldFp) SECP256K1.getCurve().getField()).getP();
+    BigInteger order = SECP256K1.getOrder();
+    BigInteger pointX = sigR.add(order.multiply(BigInteger.valueOf(recoveryId >> 1)));
+    BigInteger pointY = pointX.pow(3).add(BigInteger.valueOf(7)).mod(prime)
+        .modPow(prime.add(BigInteger.ONE).shiftRight(2), prime);
+    if (pointY.testBit(0) != ((recoveryId & 1) == 1)) {
+      pointY = prime.subtract(pointY);
+    }
+    BigInteger digest = RecoverableSignature.toInteger(bytes(HASH), order);
+    BigInteger inverse = sigR.modInverse(order);
+    ECPoint point = RecoverableSignature.multiply(SECP256K1, new ECPoint(pointX, pointY),
+        sigS.multiply(inverse).mod(order));
+    ECPoint offset = RecoverableSignature.multiply(SECP256K1, SECP256K1.getGenerator(),
+        order.subtract(digest).multiply(inverse).mod(order));
+    return RecoverableSignature.add(SECP256K1, point, offset);
+  }
+
+  private static KeyPair generate() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+    generator.initialize(new ECGenParameterSpec("secp256r1"));
+    return generator.generateKeyPair();
+  }
+
+  private static boolean verify(KeyPair keyPair, String signature) throws Exception {
+    Signature verifier = Signature.getInstance("NONEwithECDSA");
+    verifier.initVerify(keyPair.getPublic());
+    verifier.update(bytes(HASH));
+    return verifier.verify(bytes(signature));
+  }
+
+  private static byte[] bytes(String hex) {
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+    }
+    return bytes;
+  }
+
+  /**
+   * The JDK no longer builds secp256k1 keys, so the test holds the scalar itself.
+   */
+  private static ECPrivateKey secp256k1Key(BigInteger secret) {
+    return new ECPrivateKey() {
+      @Override
+      public BigInteger getS() {
+        return secret;
+      }
+
+      @Override
+      public ECParameterSpec getParams() {
+        return SECP256K1;
+      }
+
+      @Override
+      public String getAlgorithm() {
+        return "EC";
+      }
+
+      @Override
+      public String getFormat() {
+        return null;
+      }
+
+      @Override
+      public byte[] getEncoded() {
+        return null;
+      }
+    };
+  }
+}
@@ -0,0 +1,34 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.testng.ITestResult;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The TCK is written for TestNG, this runs it as part of the JUnit suite.
+ */
+public class MonitorPublisherTckTest {
+  @Test
+  public void publisherPassesTheReactiveStreamsTck() {
+    TestNG testng = new TestNG();
+    testng.setTestClasses(new Class<?>[] {MonitorPublisherVerification.class});
+    testng.setUseDefaultListeners(false);
+    testng.setVerbose(0);
+    TestListenerAdapter results = new TestListenerAdapter();
+    testng.addListener(results);
+    testng.run();
+
+    List<String> failures = new ArrayList<>();
+    for (ITestResult result : results.getFailedTests()) {
+      failures.add(result.getName() + ": " + result.getThrowable());
+    }
+    assertTrue(String.join("\n", failures), failures.isEmpty());
+    assertTrue(results.getPassedTests().size() > 20);
+  }
+}
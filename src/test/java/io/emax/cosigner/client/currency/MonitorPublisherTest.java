@@ -0,0 +1,270 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class MonitorPublisherTest {
+  /**
+   * Delivers on the publishing thread, so every signal has arrived once a call returns.
+   */
+  private static final Executor direct = Runnable::run;
+
+  /**
+   * Records what it receives, requesting nothing by itself.
+   */
+  private static class RecordingSubscriber implements Subscriber<MonitorEvent> {
+    private final List<MonitorEvent> events = new ArrayList<>();
+    private volatile Subscription subscription;
+    private volatile Throwable error;
+    private volatile boolean completed = false;
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public synchronized void onNext(MonitorEvent event) {
+      events.add(event);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      this.error = error;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+
+    synchronized List<String> received() {
+      List<String> received = new ArrayList<>();
+      for (MonitorEvent event : events) {
+        received.add(event.getType() == MonitorEvent.Type.BALANCE
+            ? event.getAddress() + ":" + event.getPreviousBalance() + "->" + event.getBalance()
+            : event.getTransaction().getTransactionData());
+      }
+      return received;
+    }
+  }
+
+  private static void balance(MonitorPublisher publisher, String address, int previous,
+      int balance) {
+    publisher.onBalanceChange(address, BigDecimal.valueOf(previous), BigDecimal.valueOf(balance));
+  }
+
+  private static void transaction(MonitorPublisher publisher, String txid) {
+    CurrencyParameters transaction = new CurrencyParameters();
+    transaction.setTransactionData(txid);
+    publisher.onTransaction(transaction);
+  }
+
+  @Test
+  public void deliversOnlyWhatWasRequested() {
+    MonitorPublisher publisher = new MonitorPublisher(10, OverflowPolicy.DROP_OLDEST, direct);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    for (int i = 1; i <= 5; i++) {
+      transaction(publisher, "tx" + i);
+    }
+    assertTrue(subscriber.received().isEmpty());
+
+    subscriber.subscription.request(2);
+    assertEquals(Arrays.asList("tx1", "tx2"), subscriber.received());
+
+    subscriber.subscription.request(10);
+    assertEquals(Arrays.asList("tx1", "tx2", "tx3", "tx4", "tx5"), subscriber.received());
+    // Outstanding demand is served straight away
+    transaction(publisher, "tx6");
+    assertEquals(6, subscriber.received().size());
+    assertEquals(0, publisher.getDropped());
+  }
+
+  @Test
+  public void dropOldestKeepsTheNewestEvents() {
+    MonitorPublisher publisher = new MonitorPublisher(3, OverflowPolicy.DROP_OLDEST, direct);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    balance(publisher, "a", 0, 1);
+    for (int i = 1; i <= 4; i++) {
+      transaction(publisher, "tx" + i);
+    }
+
+    subscriber.subscription.request(10);
+    assertEquals(Arrays.asList("tx2", "tx3", "tx4"), subscriber.received());
+    assertEquals(2, publisher.getDropped());
+  }
+
+  @Test
+  public void latestBalanceFoldsBalancesAndEvictsThemFirst() {
+    MonitorPublisher publisher = new MonitorPublisher(3, OverflowPolicy.LATEST_BALANCE, direct);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    balance(publisher, "a", 0, 1);
+    transaction(publisher, "tx1");
+    balance(publisher, "a", 1, 5);
+    balance(publisher, "b", 0, 2);
+    // Folding isn't dropping, the subscriber still sees the whole change
+    assertEquals(0, publisher.getDropped());
+
+    // Back to where the subscriber last saw it, nothing to report
+    balance(publisher, "b", 2, 0);
+    assertEquals(0, publisher.getDropped());
+
+    balance(publisher, "c", 0, 3);
+    balance(publisher, "d", 0, 4);
+    // Full with tx1, a and c: the oldest balance makes room
+    assertEquals(1, publisher.getDropped());
+
+    subscriber.subscription.request(10);
+    assertEquals(Arrays.asList("tx1", "c:0->3", "d:0->4"), subscriber.received());
+  }
+
+  @Test
+  public void latestBalanceKeepsTheFoldedChange() {
+    MonitorPublisher publisher = new MonitorPublisher(3, OverflowPolicy.LATEST_BALANCE, direct);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    balance(publisher, "a", 0, 1);
+    balance(publisher, "a", 1, 2);
+    balance(publisher, "a", 2, 7);
+
+    subscriber.subscription.request(10);
+    assertEquals(Arrays.asList("a:0->7"), subscriber.received());
+    assertEquals(0, publisher.getDropped());
+  }
+
+  @Test
+  public void blockHoldsThePublisherUntilThereIsRoom() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      MonitorPublisher publisher = new MonitorPublisher(2, OverflowPolicy.BLOCK, executor);
+      RecordingSubscriber subscriber = new RecordingSubscriber();
+      publisher.subscribe(subscriber);
+      CountDownLatch published = new CountDownLatch(1);
+      executor.execute(() -> {
+        for (int i = 1; i <= 5; i++) {
+          transaction(publisher, "tx" + i);
+        }
+        published.countDown();
+      });
+
+      assertFalse(published.await(200, TimeUnit.MILLISECONDS));
+      subscriber.subscription.request(3);
+      assertTrue(published.await(5, TimeUnit.SECONDS));
+      long deadline = System.currentTimeMillis() + 5000;
+      while (subscriber.received().size() < 3 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(Arrays.asList("tx1", "tx2", "tx3"), subscriber.received());
+      assertEquals(0, publisher.getDropped());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void everySubscriberGetsEveryEventAtItsOwnPace() {
+    MonitorPublisher publisher = new MonitorPublisher(10, OverflowPolicy.DROP_OLDEST, direct);
+    RecordingSubscriber fast = new RecordingSubscriber();
+    RecordingSubscriber slow = new RecordingSubscriber();
+    publisher.subscribe(fast);
+    publisher.subscribe(slow);
+    assertEquals(2, publisher.getSubscriberCount());
+    fast.subscription.request(Long.MAX_VALUE);
+
+    transaction(publisher, "tx1");
+    balance(publisher, "a", 0, 1);
+    assertEquals(Arrays.asList("tx1", "a:0->1"), fast.received());
+    assertTrue(slow.received().isEmpty());
+
+    slow.subscription.request(1);
+    assertEquals(Arrays.asList("tx1"), slow.received());
+
+    // Late subscribers only see what's published after they subscribe
+    RecordingSubscriber late = new RecordingSubscriber();
+    publisher.subscribe(late);
+    late.subscription.request(10);
+    transaction(publisher, "tx2");
+    assertEquals(Arrays.asList("tx2"), late.received());
+    assertEquals(3, fast.received().size());
+  }
+
+  @Test
+  public void cancelStopsDelivery() {
+    MonitorPublisher publisher = new MonitorPublisher(10, OverflowPolicy.DROP_OLDEST, direct);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    subscriber.subscription.request(10);
+    transaction(publisher, "tx1");
+
+    subscriber.subscription.cancel();
+    assertEquals(0, publisher.getSubscriberCount());
+    transaction(publisher, "tx2");
+    subscriber.subscription.request(10);
+    publisher.complete();
+    assertEquals(Arrays.asList("tx1"), subscriber.received());
+    assertFalse(subscriber.completed);
+    assertNull(subscriber.error);
+  }
+
+  @Test
+  public void requestingNothingIsAnError() {
+    for (long count : new long[] {0, -1}) {
+      MonitorPublisher publisher = new MonitorPublisher(10, OverflowPolicy.DROP_OLDEST, direct);
+      RecordingSubscriber subscriber = new RecordingSubscriber();
+      publisher.subscribe(subscriber);
+      transaction(publisher, "tx1");
+
+      subscriber.subscription.request(count);
+      assertTrue(subscriber.error instanceof IllegalArgumentException);
+      assertEquals(0, publisher.getSubscriberCount());
+      subscriber.subscription.request(10);
+      assertTrue(subscriber.received().isEmpty());
+    }
+  }
+
+  @Test
+  public void closingCompletesOnceTheBufferIsDelivered() {
+    MonitorPublisher publisher = new MonitorPublisher(10, OverflowPolicy.DROP_OLDEST, direct);
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    transaction(publisher, "tx1");
+    transaction(publisher, "tx2");
+
+    publisher.complete();
+    assertFalse(subscriber.completed);
+    transaction(publisher, "tx3");
+    subscriber.subscription.request(1);
+    assertFalse(subscriber.completed);
+    subscriber.subscription.request(1);
+    assertTrue(subscriber.completed);
+    assertEquals(Arrays.asList("tx1", "tx2"), subscriber.received());
+    assertEquals(0, publisher.getSubscriberCount());
+
+    // Subscribing after the monitor closed completes straight away
+    RecordingSubscriber late = new RecordingSubscriber();
+    publisher.subscribe(late);
+    assertTrue(late.completed);
+    assertNull(late.error);
+  }
+}
@@ -0,0 +1,53 @@
+package io.emax.cosigner.client.currency;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+import org.testng.annotations.AfterClass;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The Reactive Streams TCK against MonitorPublisher, run by {@link MonitorPublisherTckTest}.
+ *
+ * <p>A monitor publisher only delivers what's published after subscribing, so each subscriber here
+ * gets a publisher of its own fed by a thread of its own. BLOCK keeps that thread from running
+ * ahead of the subscriber's demand.
+ */
+public class MonitorPublisherVerification extends PublisherVerification<MonitorEvent> {
+  private static final int BUFFER_SIZE = 4;
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  public MonitorPublisherVerification() {
+    super(new TestEnvironment(500), 1000);
+  }
+
+  @AfterClass
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  public Publisher<MonitorEvent> createPublisher(long elements) {
+    return subscriber -> {
+      MonitorPublisher publisher =
+          new MonitorPublisher(BUFFER_SIZE, OverflowPolicy.BLOCK, executor);
+      publisher.subscribe(subscriber);
+      executor.execute(() -> {
+        for (long i = 0; i < elements && publisher.getSubscriberCount() > 0; i++) {
+          publisher.onBalanceChange("addr", BigDecimal.valueOf(i), BigDecimal.valueOf(i + 1));
+        }
+        publisher.complete();
+      });
+    };
+  }
+
+  @Override
+  public Publisher<MonitorEvent> createFailedPublisher() {
+    // Monitors complete rather than fail, closing the socket ends the stream
+    return null;
+  }
+}
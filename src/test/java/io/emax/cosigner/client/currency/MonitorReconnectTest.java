@@ -0,0 +1,238 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.ClientConfiguration;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.server.WebSocketHandler;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Drops a monitor's connection to a stand-in server and checks that the transactions pushed
+ * before, missed during and pushed after the outage each reach the listener exactly once.
+ */
+public class MonitorReconnectTest {
+  private static final String ADDRESS = "1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2";
+  private static final long TIMEOUT = 10000;
+
+  private final Server server = new Server();
+  private final ServerConnector serverConnector = new ServerConnector(server);
+  private final BlockingQueue<Session> subscribedSessions = new LinkedBlockingQueue<>();
+  private final AtomicInteger connections = new AtomicInteger();
+  private final List<String> history = new CopyOnWriteArrayList<>();
+  private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+  private String previousConfig;
+  private Path config;
+  private CurrencyConnector connector;
+
+  /**
+   * Starts the stand-in server and points the client configuration at it.
+   */
+  @Before
+  public void setUp() throws Exception {
+    WebSocketHandler monitorHandler = new WebSocketHandler() {
+      @Override
+      public void configure(WebSocketServletFactory factory) {
+        factory.setCreator((request, response) -> new MonitorEndpoint());
+      }
+    };
+    monitorHandler.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+          HttpServletResponse response) throws IOException {
+        baseRequest.setHandled(true);
+        response.setContentType("application/json");
+        try (Writer writer = response.getWriter()) {
+          writer.write("/rs/ListTransactions".equals(target) ? transactionHistory()
+              : "{\"result\":\"ok\"}");
+        }
+      }
+    });
+    server.addConnector(serverConnector);
+    server.setHandler(monitorHandler);
+    server.start();
+
+    config = Files.createTempFile("cosigner-client-test", ".properties");
+    String url = "localhost:" + serverConnector.getLocalPort();
+    Files.write(config, ("rsServerUrl=http://" + url + "\nwsServerUrl=ws://" + url + "\n"
+        + "useTls=false\nmonitorAutoReconnect=true\nmonitorReconnectInitialDelay=50\n"
+        + "monitorReconnectMaxDelay=200\n").getBytes(StandardCharsets.UTF_8));
+    previousConfig = System.setProperty("cosigner.client.config", config.toString());
+    ClientConfiguration.reload();
+    connector = new CurrencyConnector();
+  }
+
+  /**
+   * Stops the server and restores the configuration other tests run with.
+   */
+  @After
+  public void tearDown() throws Exception {
+    connector.close();
+    server.stop();
+    // An empty file reloads the defaults, a missing one would keep this test's settings
+    Files.write(config, new byte[0]);
+    ClientConfiguration.reload();
+    if (previousConfig == null) {
+      System.clearProperty("cosigner.client.config");
+    } else {
+      System.setProperty("cosigner.client.config", previousConfig);
+    }
+    Files.deleteIfExists(config);
+  }
+
+  @Test
+  public void transactionsSurviveAReconnectWithoutDuplicates() throws Exception {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    params.setAccount(Collections.singletonList(ADDRESS));
+    MonitorWebSocket monitor = connector.monitorBalance(params, new MonitorListener() {
+      @Override
+      public void onTransaction(CurrencyParameters transaction) {
+        received.add(transaction.getTransactionData());
+      }
+    });
+    assertNotNull(monitor);
+
+    Session first = subscribedSessions.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+    assertNotNull("Monitor never subscribed", first);
+    push(first, "tx1");
+    push(first, "tx2");
+    waitFor(() -> received.size() == 2);
+
+    // tx3 and tx4 happen while the connection is down, only ListTransactions knows about them
+    history.addAll(Arrays.asList("tx1", "tx2", "tx3", "tx4"));
+    first.close();
+
+    Session second = subscribedSessions.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+    assertNotNull("Monitor never resubscribed", second);
+    waitFor(() -> received.size() >= 4);
+    // The server repeats one the backfill already delivered, then carries on
+    push(second, "tx4");
+    push(second, "tx5");
+    waitFor(() -> received.size() >= 5);
+    Thread.sleep(200);
+
+    assertEquals(Arrays.asList("tx1", "tx2", "tx3", "tx4", "tx5"), sorted(received));
+    assertEquals("One reconnect after one drop", 2, connections.get());
+    assertTrue(monitor.isConnected());
+    monitor.closeConnection();
+  }
+
+  @Test
+  public void fragmentedPushesArriveWholeAndInOrder() throws Exception {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    params.setAccount(Collections.singletonList(ADDRESS));
+    MonitorWebSocket monitor = connector.monitorBalance(params, new MonitorListener() {
+      @Override
+      public void onTransaction(CurrencyParameters transaction) {
+        received.add(transaction.getTransactionData());
+      }
+    });
+    Session session = subscribedSessions.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+    assertNotNull("Monitor never subscribed", session);
+
+    // A large first message in small frames, then short ones that would overtake it if messages
+    // were handled in parallel
+    StringBuilder first = new StringBuilder("{\"currencySymbol\":\"BTC\",\"transactionData\":"
+        + "\"tx01\",\"receivingAccount\":[");
+    for (int i = 0; i < 2000; i++) {
+      first.append("{\"recipientAddress\":\"").append(ADDRESS).append("\",\"amount\":\"1\"},");
+    }
+    first.setLength(first.length() - 1);
+    first.append("]}");
+    for (int offset = 0; offset < first.length(); offset += 1000) {
+      session.getRemote().sendPartialString(
+          first.substring(offset, Math.min(offset + 1000, first.length())),
+          offset + 1000 >= first.length());
+    }
+    List<String> expected = new ArrayList<>(Collections.singletonList("tx01"));
+    for (int i = 2; i <= 20; i++) {
+      String txHash = String.format("tx%02d", i);
+      push(session, txHash);
+      expected.add(txHash);
+    }
+    waitFor(() -> received.size() >= 20);
+
+    assertEquals(expected, new ArrayList<>(received));
+    monitor.closeConnection();
+  }
+
+  private static List<String> sorted(List<String> values) {
+    List<String> copy;
+    synchronized (values) {
+      copy = new ArrayList<>(values);
+    }
+    Collections.sort(copy);
+    return copy;
+  }
+
+  private static void push(Session session, String txHash) throws IOException {
+    session.getRemote().sendString("{\"currencySymbol\":\"BTC\",\"transactionData\":\"" + txHash
+        + "\",\"receivingAccount\":[{\"recipientAddress\":\"" + ADDRESS
+        + "\",\"amount\":\"1\"}]}");
+  }
+
+  private String transactionHistory() {
+    StringBuilder result = new StringBuilder("[");
+    for (String txHash : history) {
+      result.append(result.length() == 1 ? "" : ",").append("{\\\"txHash\\\":\\\"")
+          .append(txHash).append("\\\",\\\"toAddress\\\":[\\\"").append(ADDRESS)
+          .append("\\\"],\\\"amount\\\":\\\"1\\\"}");
+    }
+    return "{\"result\":\"" + result.append("]") + "\"}";
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  @WebSocket
+  public class MonitorEndpoint {
+    @OnWebSocketConnect
+    public void onConnect(Session session) {
+      connections.incrementAndGet();
+    }
+
+    @OnWebSocketMessage
+    public void onMessage(Session session, String subscription) {
+      subscribedSessions.add(session);
+    }
+  }
+}
@@ -0,0 +1,282 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+
+import org.eclipse.jetty.websocket.common.frames.ContinuationFrame;
+import org.eclipse.jetty.websocket.common.frames.PingFrame;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MonitorWebSocketTest {
+  private static final String ADDRESS = "1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2";
+
+  private MonitorWebSocket socket;
+  private List<String> events;
+
+  /**
+   * A socket with a listener that records every callback in order.
+   */
+  @Before
+  public void setUp() {
+    socket = new MonitorWebSocket();
+    events = Collections.synchronizedList(new ArrayList<>());
+    socket.addListener(new RecordingListener("listener"));
+  }
+
+  private static String balance(String address, String amount) {
+    return "{\"currencySymbol\":\"BTC\",\"receivingAccount\":[{\"recipientAddress\":\"" + address
+        + "\",\"amount\":\"" + amount + "\"}]}";
+  }
+
+  private static String transaction(String txHash) {
+    return "{\"currencySymbol\":\"BTC\",\"transactionData\":\"" + txHash
+        + "\",\"receivingAccount\":[{\"recipientAddress\":\"" + ADDRESS
+        + "\",\"amount\":\"0.1\"}]}";
+  }
+
+  @Test
+  public void nextMessageWaitsForThePreviousHandler() throws Exception {
+    // What Jetty does for two messages: the read thread sees each first frame before dispatching
+    // the message's streaming handler to its own thread
+    socket.onFrame(new TextFrame());
+    CountDownLatch secondStarted = new CountDownLatch(1);
+    Thread readThread = new Thread(() -> {
+      socket.onFrame(new TextFrame());
+      secondStarted.countDown();
+      socket.onStreamedMessage(new StringReader(transaction("tx2")));
+    });
+    readThread.start();
+
+    assertFalse(secondStarted.await(200, TimeUnit.MILLISECONDS));
+    socket.onStreamedMessage(new StringReader(transaction("tx1")));
+    readThread.join(10000);
+
+    assertEquals(Arrays.asList("listener transaction tx1", "listener transaction tx2"), events);
+  }
+
+  @Test
+  public void controlFramesDoNotWait() {
+    socket.onFrame(new TextFrame());
+    socket.onFrame(new PingFrame());
+    socket.onFrame(new ContinuationFrame());
+    socket.onStreamedMessage(new ByteArrayInputStream(
+        transaction("tx1").getBytes(StandardCharsets.UTF_8)));
+
+    assertEquals(Collections.singletonList("listener transaction tx1"), events);
+  }
+
+  @Test
+  public void firstBalanceReportsChangeThenBalance() {
+    socket.onMessage(balance(ADDRESS, "12.50000000"));
+
+    assertEquals(Arrays.asList("listener change " + ADDRESS + " null -> 12.50000000",
+        "listener balance " + ADDRESS + " 12.50000000"), events);
+    assertEquals(0, new BigDecimal("12.5").compareTo(socket.getState().getBalance(ADDRESS)));
+  }
+
+  @Test
+  public void repeatedBalanceIsNotReported() {
+    socket.onMessage(balance(ADDRESS, "12.50000000"));
+    events.clear();
+
+    socket.onMessage(balance(ADDRESS, "12.5"));
+
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void changedBalanceCarriesPreviousAmount() {
+    socket.onMessage(balance(ADDRESS, "12.5"));
+    events.clear();
+
+    socket.onMessage(balance(ADDRESS, "10"));
+
+    assertEquals(Arrays.asList("listener change " + ADDRESS + " 12.5 -> 10",
+        "listener balance " + ADDRESS + " 10"), events);
+  }
+
+  @Test
+  public void transactionsAreReportedOnceInArrivalOrder() {
+    socket.onMessage(transaction("tx1"));
+    socket.onMessage(transaction("tx2"));
+    socket.onMessage(transaction("tx1"));
+
+    assertEquals(Arrays.asList("listener transaction tx1", "listener transaction tx2"), events);
+    assertEquals(2, socket.getAllTransactions().size());
+  }
+
+  @Test
+  public void listenersAreCalledInRegistrationOrder() {
+    socket.addListener(new RecordingListener("second"));
+
+    socket.onMessage(balance(ADDRESS, "1"));
+    socket.onMessage(transaction("tx1"));
+
+    assertEquals(Arrays.asList("listener change " + ADDRESS + " null -> 1",
+        "listener balance " + ADDRESS + " 1", "second change " + ADDRESS + " null -> 1",
+        "second balance " + ADDRESS + " 1", "listener transaction tx1",
+        "second transaction tx1"), events);
+  }
+
+  @Test
+  public void failingListenerDoesNotStopOthers() {
+    socket.addListener(new MonitorListener() {
+      @Override
+      public void onTransaction(CurrencyParameters transaction) {
+        throw new IllegalStateException("listener failure");
+      }
+    });
+    socket.addListener(new RecordingListener("after"));
+
+    socket.onMessage(transaction("tx1"));
+
+    assertEquals(Arrays.asList("listener transaction tx1", "after transaction tx1"), events);
+  }
+
+  @Test
+  public void removedListenerIsNotCalled() {
+    RecordingListener removed = new RecordingListener("removed");
+    socket.addListener(removed);
+    socket.removeListener(removed);
+
+    socket.onMessage(transaction("tx1"));
+
+    assertEquals(Collections.singletonList("listener transaction tx1"), events);
+  }
+
+  @Test
+  public void badAmountIsSkipped() {
+    socket.onMessage("{\"currencySymbol\":\"BTC\",\"receivingAccount\":["
+        + "{\"recipientAddress\":\"bad\",\"amount\":\"lots\"},"
+        + "{\"recipientAddress\":\"" + ADDRESS + "\",\"amount\":\"2\"}]}");
+
+    assertEquals(Arrays.asList("listener change " + ADDRESS + " null -> 2",
+        "listener balance " + ADDRESS + " 2"), events);
+  }
+
+  @Test
+  public void malformedMessageIsIgnored() {
+    socket.onMessage("{not json");
+    socket.onMessage(transaction("tx1"));
+
+    assertEquals(Collections.singletonList("listener transaction tx1"), events);
+  }
+
+  @Test
+  public void concurrentProducersAndConsumersLoseAndRepeatNothing() throws Exception {
+    // Stays under monitorHistorySize, so no transaction can be evicted before it's drained
+    int producers = 4;
+    int consumers = 3;
+    int perProducer = 200;
+    ExecutorService threads = Executors.newFixedThreadPool(producers + consumers);
+    CyclicBarrier start = new CyclicBarrier(producers + consumers);
+    CountDownLatch produced = new CountDownLatch(producers);
+    Set<String> drained = ConcurrentHashMap.newKeySet();
+    AtomicInteger drainedTwice = new AtomicInteger();
+    AtomicInteger balanceWentBack = new AtomicInteger();
+    List<Future<?>> tasks = new ArrayList<>();
+
+    for (int p = 0; p < producers; p++) {
+      int producer = p;
+      tasks.add(threads.submit(() -> {
+        start.await();
+        for (int i = 1; i <= perProducer; i++) {
+          socket.onMessage(transaction("tx" + producer + "-" + i));
+          // Every producer also repeats its neighbour's transaction
+          socket.onMessage(transaction("tx" + (producer + 1) % producers + "-" + i));
+          socket.onMessage(balance("address" + producer, String.valueOf(i)));
+        }
+        produced.countDown();
+        return null;
+      }));
+    }
+    for (int c = 0; c < consumers; c++) {
+      tasks.add(threads.submit(() -> {
+        start.await();
+        Map<String, BigDecimal> lastSeen = new HashMap<>();
+        do {
+          for (CurrencyParameters transaction : socket.getNewTransactions()) {
+            if (!drained.add(transaction.getTransactionData())) {
+              drainedTwice.incrementAndGet();
+            }
+          }
+          socket.getAllBalances().forEach((address, amount) -> {
+            BigDecimal current = new BigDecimal(amount);
+            BigDecimal last = lastSeen.put(address, current);
+            if (last != null && current.compareTo(last) < 0) {
+              balanceWentBack.incrementAndGet();
+            }
+          });
+        } while (!produced.await(1, TimeUnit.MILLISECONDS));
+        return null;
+      }));
+    }
+    for (Future<?> task : tasks) {
+      task.get(30, TimeUnit.SECONDS);
+    }
+    threads.shutdown();
+    socket.getNewTransactions().forEach(transaction -> drained.add(
+        transaction.getTransactionData()));
+
+    assertEquals(0, drainedTwice.get());
+    assertEquals(0, balanceWentBack.get());
+    assertEquals(producers * perProducer, drained.size());
+    long reported;
+    synchronized (events) {
+      reported = events.stream().filter(event -> event.contains(" transaction ")).count();
+    }
+    assertEquals(producers * perProducer, reported);
+    for (int p = 0; p < producers; p++) {
+      assertEquals(String.valueOf(perProducer), socket.getAllBalances().get("address" + p));
+    }
+    assertFalse(socket.getNewTransactions().iterator().hasNext());
+  }
+
+  private class RecordingListener implements MonitorListener {
+    private final String name;
+
+    RecordingListener(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void onBalance(String address, String balance) {
+      events.add(name + " balance " + address + " " + balance);
+    }
+
+    @Override
+    public void onBalanceChange(String address, BigDecimal previous, BigDecimal balance) {
+      events.add(name + " change " + address + " " + previous + " -> " + balance);
+    }
+
+    @Override
+    public void onTransaction(CurrencyParameters transaction) {
+      events.add(name + " transaction " + transaction.getTransactionData());
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.ClientConfiguration;
+import io.emax.cosigner.client.metrics.DefaultMetrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a connector against one healthy and one failing stub server.
+ */
+public class NodeFailoverTest {
+  private static final String UNREACHABLE = "http://localhost:1";
+
+  private final DefaultMetrics metrics = new DefaultMetrics();
+  private final AtomicInteger healthyHits = new AtomicInteger();
+  private final AtomicInteger failingHits = new AtomicInteger();
+  private StubCosignerServer healthy;
+  private StubCosignerServer failing;
+  private CurrencyConnector connector;
+
+  /**
+   * Closes the connector and both stub servers.
+   */
+  @After
+  public void tearDown() throws Exception {
+    if (connector != null) {
+      connector.close();
+    }
+    if (failing != null) {
+      failing.close();
+    }
+    if (healthy != null) {
+      healthy.close();
+    }
+  }
+
+  private void start(String urls) throws Exception {
+    healthy = new StubCosignerServer((target, body, response) -> {
+      healthyHits.incrementAndGet();
+      return "{\"result\":\"5\"}";
+    });
+    failing = new StubCosignerServer((target, body, response) -> {
+      failingHits.incrementAndGet();
+      response.setStatus(503);
+      return "Service Unavailable";
+    });
+    configure(urls);
+    connector = new CurrencyConnector(metrics);
+  }
+
+  private void configure(String urls) throws Exception {
+    // The later rsServerUrl overrides the stub's own
+    healthy.configure("rsServerUrl=" + urls.replace("healthy", healthy.getUrl())
+        .replace("failing", failing.getUrl())
+        + "\nnodeSelection=round-robin\nnodeEjectionFailures=1000\nuseMonitorBalances=false\n");
+  }
+
+  private static CurrencyParameters params() {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    params.setAccount(Collections.singletonList("1BvBMSEYstWetqTFn5Au4m4GFg7xJaNVN2"));
+    return params;
+  }
+
+  @Test
+  public void idempotentReadsMoveOnToTheNextNode() throws Exception {
+    start("healthy,failing");
+    for (int i = 0; i < 10; i++) {
+      assertEquals("5", connector.getBalance(params()));
+      assertEquals("5", connector.listCurrencies());
+    }
+    assertEquals(20, healthyHits.get());
+    assertTrue(failingHits.get() > 0);
+  }
+
+  @Test
+  public void otherRequestsAreNotRetried() throws Exception {
+    start("healthy,failing");
+    int failures = 0;
+    for (int i = 0; i < 10; i++) {
+      try {
+        assertEquals("5", connector.getNewAddress(params()));
+      } catch (Exception e) {
+        failures++;
+      }
+    }
+    assertTrue(failures > 0);
+    assertEquals(failures, failingHits.get());
+    assertEquals(10 - failures, healthyHits.get());
+  }
+
+  @Test
+  public void readsFailOnceEveryNodeHasBeenTried() throws Exception {
+    start("failing," + UNREACHABLE);
+    try {
+      connector.getBalance(params());
+      throw new AssertionError("Expected the read to fail");
+    } catch (Exception e) {
+      assertEquals(1, failingHits.get());
+    }
+  }
+
+  @Test
+  public void reloadRemovesGaugesOfDroppedNodes() throws Exception {
+    start("healthy,failing," + UNREACHABLE);
+    String scope = connector.getMetrics().getScope() + ".node.";
+    assertNotNull(metrics.getGauge(scope + UNREACHABLE + ".outstanding"));
+    assertNotNull(metrics.getGauge(scope + UNREACHABLE + ".ejected"));
+
+    configure("healthy,failing");
+    connector.applyConfiguration(new ClientConfiguration());
+    assertNull(metrics.getGauge(scope + UNREACHABLE + ".outstanding"));
+    assertNull(metrics.getGauge(scope + UNREACHABLE + ".ejected"));
+    assertNotNull(metrics.getGauge(scope + failing.getUrl() + ".outstanding"));
+    assertNotNull(metrics.getGauge(scope + healthy.getUrl() + ".ejected"));
+
+    // A single server isn't reported per node at all
+    configure("healthy");
+    connector.applyConfiguration(new ClientConfiguration());
+    assertNull(metrics.getGauge(scope + failing.getUrl() + ".outstanding"));
+    assertNull(metrics.getGauge(scope + healthy.getUrl() + ".outstanding"));
+    assertNull(metrics.getGauge(scope + healthy.getUrl() + ".ejected"));
+  }
+}
@@ -0,0 +1,196 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.emax.cosigner.client.ClientConfiguration;
+import io.emax.cosigner.client.TestConfiguration;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class NodeSelectorTest {
+  private static final String URLS = "rsServerUrl=http://a:8080,http://b:8080,http://c:8080\n";
+  private static final long EJECTION_TIME = 200;
+
+  private TestConfiguration config;
+
+  /**
+   * Restores the configuration other tests run with.
+   */
+  @After
+  public void tearDown() throws Exception {
+    if (config != null) {
+      config.close();
+    }
+  }
+
+  private NodeSelector selector(String properties, NodeSelector previous) throws Exception {
+    String loaded =
+        properties + "nodeEjectionFailures=3\nnodeEjectionTime=" + EJECTION_TIME + "\n";
+    if (config == null) {
+      config = new TestConfiguration(loaded);
+    } else {
+      config.load(loaded);
+    }
+    return new NodeSelector(new ClientConfiguration(), previous);
+  }
+
+  private static CosignerNode node(NodeSelector selector, String host) {
+    for (CosignerNode node : selector.getNodes()) {
+      if (node.getRsUrl().equals("http://" + host + ":8080")) {
+        return node;
+      }
+    }
+    throw new AssertionError("No node " + host);
+  }
+
+  private static Map<CosignerNode, Integer> count(NodeSelector selector, int selections) {
+    Map<CosignerNode, Integer> counts = new HashMap<>();
+    for (int i = 0; i < selections; i++) {
+      counts.merge(selector.select(), 1, Integer::sum);
+    }
+    return counts;
+  }
+
+  @Test
+  public void nodeIsEjectedAfterConsecutiveFailures() throws Exception {
+    NodeSelector selector = selector(URLS, null);
+    CosignerNode failing = node(selector, "b");
+
+    selector.completed(failing, 1000, true);
+    selector.completed(failing, 1000, true);
+    // A success in between starts the count again
+    selector.completed(failing, 1000, false);
+    selector.completed(failing, 1000, true);
+    selector.completed(failing, 1000, true);
+    assertFalse(failing.isEjected());
+    assertTrue(count(selector, 30).containsKey(failing));
+
+    selector.completed(failing, 1000, true);
+    assertTrue(failing.isEjected());
+    assertFalse(count(selector, 30).containsKey(failing));
+    assertNull(selector.selectOther(Arrays.asList(node(selector, "a"), node(selector, "c"))));
+  }
+
+  @Test
+  public void ejectedNodeIsReadmittedAfterTheEjectionTime() throws Exception {
+    NodeSelector selector = selector(URLS, null);
+    CosignerNode failing = node(selector, "a");
+    for (int i = 0; i < 3; i++) {
+      selector.completed(failing, 1000, true);
+    }
+    assertTrue(failing.isEjected());
+
+    Thread.sleep(EJECTION_TIME + 50);
+    assertFalse(failing.isEjected());
+    assertTrue(count(selector, 30).containsKey(failing));
+
+    // Back on probation, one more failure ejects it again
+    selector.completed(failing, 1000, true);
+    assertTrue(failing.isEjected());
+
+    Thread.sleep(EJECTION_TIME + 50);
+    selector.completed(failing, 1000, false);
+    selector.completed(failing, 1000, true);
+    assertFalse(failing.isEjected());
+  }
+
+  @Test
+  public void everyNodeEjectedFallsBackToTheOneDueBackFirst() throws Exception {
+    NodeSelector selector = selector(URLS, null);
+    for (String host : Arrays.asList("b", "a", "c")) {
+      for (int i = 0; i < 3; i++) {
+        selector.completed(node(selector, host), 1000, true);
+      }
+      Thread.sleep(5);
+    }
+    assertSame(node(selector, "b"), selector.select());
+    assertNull(selector.selectOther(Arrays.asList(node(selector, "b"))));
+  }
+
+  @Test
+  public void roundRobinTakesEachNodeInTurn() throws Exception {
+    NodeSelector selector = selector(URLS + "nodeSelection=round-robin\n", null);
+    List<CosignerNode> nodes = selector.getNodes();
+    CosignerNode first = selector.select();
+    int offset = nodes.indexOf(first);
+    for (int i = 1; i < 9; i++) {
+      assertSame(nodes.get((offset + i) % nodes.size()), selector.select());
+    }
+  }
+
+  @Test
+  public void leastOutstandingPicksTheIdlestNode() throws Exception {
+    NodeSelector selector = selector(URLS + "nodeSelection=least-outstanding\n", null);
+    node(selector, "a").requestStarted();
+    node(selector, "a").requestStarted();
+    node(selector, "b").requestStarted();
+    for (int i = 0; i < 10; i++) {
+      assertSame(node(selector, "c"), selector.select());
+    }
+
+    node(selector, "c").requestStarted();
+    node(selector, "c").requestStarted();
+    for (int i = 0; i < 10; i++) {
+      assertSame(node(selector, "b"), selector.select());
+    }
+  }
+
+  @Test
+  public void latencyWeightedFavoursTheFasterNode() throws Exception {
+    NodeSelector selector = selector(
+        "rsServerUrl=http://a:8080,http://b:8080\nnodeSelection=latency-weighted\n", null);
+    selector.completed(node(selector, "a"), 1_000_000, false);
+    selector.completed(node(selector, "b"), 50_000_000, false);
+
+    // The slow node only wins when it's drawn twice, a quarter of the time
+    Map<CosignerNode, Integer> counts = count(selector, 400);
+    assertTrue(counts.toString(), counts.get(node(selector, "a")) > 240);
+  }
+
+  @Test
+  public void selectOtherSkipsTriedNodes() throws Exception {
+    NodeSelector selector = selector(URLS, null);
+    CosignerNode first = selector.select();
+    CosignerNode second = selector.selectOther(Arrays.asList(first));
+    assertNotSame(first, second);
+    CosignerNode third = selector.selectOther(Arrays.asList(first, second));
+    assertNotSame(first, third);
+    assertNotSame(second, third);
+    assertNull(selector.selectOther(selector.getNodes()));
+  }
+
+  @Test
+  public void reloadKeepsStateAndPinsOfRetainedNodes() throws Exception {
+    NodeSelector previous = selector(URLS, null);
+    CosignerNode kept = node(previous, "a");
+    kept.requestStarted();
+    for (int i = 0; i < 3; i++) {
+      previous.completed(kept, 1000, true);
+    }
+    previous.pin("tx-a", kept);
+    previous.pin("tx-c", node(previous, "c"));
+
+    NodeSelector reloaded =
+        selector("rsServerUrl=http://a:8080,http://b:8080,http://d:8080\n", previous);
+    assertSame(kept, node(reloaded, "a"));
+    assertTrue(kept.isEjected());
+    assertEquals(1, kept.getOutstanding());
+    assertSame(node(previous, "b"), node(reloaded, "b"));
+
+    assertSame(kept, reloaded.select("tx-a"));
+    // The dropped node's pins go, its transactions are selected afresh
+    assertNotSame(node(previous, "c"), reloaded.select("tx-c"));
+    assertFalse(reloaded.getNodes().contains(node(previous, "c")));
+  }
+}
@@ -0,0 +1,97 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class StreamedResponseTest {
+  private static final String HISTORY = "{\"result\":\"[{\\\"txHash\\\":\\\"a\\\"},"
+      + "{\\\"txHash\\\":\\\"b\\\"}]\"}";
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private StubCosignerServer server;
+  private CurrencyConnector connector;
+
+  private void start(StubCosignerServer.Endpoint endpoint, String properties) throws Exception {
+    server = new StubCosignerServer(endpoint);
+    server.configure(properties);
+    connector = new CurrencyConnector();
+  }
+
+  /**
+   * Closes the connector and the stub server.
+   */
+  @After
+  public void tearDown() throws Exception {
+    release.countDown();
+    if (connector != null) {
+      connector.close();
+    }
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  private List<String> streamHashes() throws Exception {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    try (Stream<JsonNode> transactions = connector.streamTransactions(params)) {
+      return transactions.map(transaction -> transaction.path("txHash").asText())
+          .collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void streamsTheResultArray() throws Exception {
+    start((target, body, response) -> HISTORY, "");
+
+    assertEquals(Arrays.asList("a", "b"), streamHashes());
+  }
+
+  @Test(expected = Exception.class)
+  public void errorStatusFailsInsteadOfParsingTheBody() throws Exception {
+    start((target, body, response) -> {
+      response.setStatus(503);
+      return HISTORY;
+    }, "");
+
+    streamHashes();
+  }
+
+  @Test
+  public void timedOutResponseFreesTheConnection() throws Exception {
+    CountDownLatch first = new CountDownLatch(1);
+    start((target, body, response) -> {
+      if (first.getCount() > 0) {
+        first.countDown();
+        release.await(10, TimeUnit.SECONDS);
+      }
+      return HISTORY;
+    }, "idleTimeout=500\nmaxConnectionsPerDestination=1\n");
+
+    try {
+      streamHashes();
+      fail("Expected a timeout");
+    } catch (Exception expected) {
+      // The server is still holding the first response
+    }
+    // Only one connection is allowed, the aborted exchange must have given it back
+    long start = System.nanoTime();
+    assertEquals(Arrays.asList("a", "b"), streamHashes());
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+  }
+}
@@ -0,0 +1,79 @@
+package io.emax.cosigner.client.currency;
+
+import io.emax.cosigner.client.TestConfiguration;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import java.io.IOException;
+import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A stand-in cosigner REST server, with the client configuration pointed at it until it's closed.
+ */
+class StubCosignerServer implements AutoCloseable {
+  /**
+   * Answers one request, the response is a 200 with the returned body unless the endpoint sets
+   * something else.
+   */
+  interface Endpoint {
+    String handle(String target, String body, HttpServletResponse response) throws Exception;
+  }
+
+  private final Server server = new Server();
+  private final ServerConnector connector = new ServerConnector(server);
+  private TestConfiguration config;
+
+  StubCosignerServer(Endpoint endpoint) throws Exception {
+    server.addConnector(connector);
+    server.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+          HttpServletResponse response) throws IOException {
+        baseRequest.setHandled(true);
+        String body = request.getReader().lines().collect(Collectors.joining("\n"));
+        try {
+          String result = endpoint.handle(target, body, response);
+          if (result != null) {
+            response.setContentType("application/json");
+            response.getWriter().write(result);
+          }
+        } catch (Exception e) {
+          throw new IOException(e);
+        }
+      }
+    });
+    server.start();
+  }
+
+  String getUrl() {
+    return "http://localhost:" + connector.getLocalPort();
+  }
+
+  /**
+   * Loads a client configuration pointing at this server plus the given properties.
+   */
+  void configure(String properties) throws IOException {
+    String loaded = "rsServerUrl=" + getUrl() + "\nuseTls=false\n" + properties;
+    if (config == null) {
+      config = new TestConfiguration(loaded);
+    } else {
+      config.load(loaded);
+    }
+  }
+
+  /**
+   * Stops the server and restores the configuration other tests run with.
+   */
+  @Override
+  public void close() throws Exception {
+    server.stop();
+    if (config != null) {
+      config.close();
+    }
+  }
+}
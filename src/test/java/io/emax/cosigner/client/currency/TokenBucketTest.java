@@ -0,0 +1,40 @@
+package io.emax.cosigner.client.currency;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+  private long now = 0;
+
+  @Test
+  public void burstIsAvailableStraightAway() {
+    TokenBucket bucket = new TokenBucket(10, 3, () -> now);
+
+    assertEquals(0, bucket.reserve());
+    assertEquals(0, bucket.reserve());
+    assertEquals(0, bucket.reserve());
+  }
+
+  @Test
+  public void callersBeyondTheBurstWaitInTurn() {
+    TokenBucket bucket = new TokenBucket(10, 1, () -> now);
+    bucket.reserve();
+
+    assertEquals(100_000_000, bucket.reserve());
+    assertEquals(200_000_000, bucket.reserve());
+  }
+
+  @Test
+  public void tokensRefillWithTimeUpToTheBurst() {
+    TokenBucket bucket = new TokenBucket(10, 2, () -> now);
+    bucket.reserve();
+    bucket.reserve();
+
+    now += 1_000_000_000;
+
+    assertEquals(0, bucket.reserve());
+    assertEquals(0, bucket.reserve());
+    assertEquals(100_000_000, bucket.reserve());
+  }
+}
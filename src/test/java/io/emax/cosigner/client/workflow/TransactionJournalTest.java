@@ -0,0 +1,448 @@
+package io.emax.cosigner.client.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.currency.CurrencyConnector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class TransactionJournalTest {
+  private static final long SEGMENT_SIZE = 1024 * 1024;
+
+  private Path directory;
+  private volatile boolean failWrites = false;
+  private volatile boolean failTruncate = false;
+  private final AtomicInteger opens = new AtomicInteger();
+  private volatile List<Integer> failingOpens = Collections.emptyList();
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("journal-test");
+  }
+
+  /**
+   * Deletes the journal directory.
+   */
+  @After
+  public void tearDown() throws IOException {
+    for (Path segment : segments()) {
+      Files.delete(segment);
+    }
+    Files.delete(directory);
+  }
+
+  private TransactionJournal open(long segmentSize) throws IOException {
+    return new TransactionJournal(directory, segmentSize, 64, path -> {
+      if (failingOpens.contains(opens.incrementAndGet())) {
+        throw new IOException("Injected open failure");
+      }
+      return new FailingChannel(
+          FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+    });
+  }
+
+  private List<Path> segments() throws IOException {
+    List<Path> segments = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      files.forEach(segments::add);
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  private static CurrencyParameters payment(String id) {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    params.setTransactionData(id);
+    return params;
+  }
+
+  /**
+   * Records the transaction's way through every stage up to the given state.
+   */
+  private static WorkflowTransaction advance(TransactionJournal journal, String id,
+      TransactionState state) throws IOException {
+    WorkflowTransaction transaction = new WorkflowTransaction(id, payment(id));
+    journal.recordSubmitted(id, transaction.getRequest());
+    for (TransactionState reached : TransactionState.values()) {
+      if (reached == TransactionState.QUEUED || reached.ordinal() > state.ordinal()
+          || reached == TransactionState.FAILED && state != TransactionState.FAILED) {
+        continue;
+      }
+      switch (reached) {
+        case PREPARED:
+          transaction.setPreparedTransaction("prepared-" + id);
+          break;
+        case SIGNERS_FOUND:
+          transaction.setSigners(Arrays.asList("signer1", "signer2"));
+          break;
+        case APPROVED:
+          transaction.setApprovedTransaction("approved-" + id);
+          break;
+        case BROADCAST:
+          if (state == TransactionState.BROADCAST_FAILED) {
+            continue;
+          }
+          transaction.setBroadcastResult("hash-" + id);
+          break;
+        default:
+          break;
+      }
+      transaction.setState(reached);
+      journal.recordState(transaction);
+    }
+    return transaction;
+  }
+
+  private List<String> unfinishedAfterReopen() throws IOException {
+    try (TransactionJournal journal = open(SEGMENT_SIZE)) {
+      return journal.getUnfinished().values().stream()
+          .map(entry -> entry.getId() + " " + entry.getState()).collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void replaysUnfinishedTransactions() throws IOException {
+    try (TransactionJournal journal = open(SEGMENT_SIZE)) {
+      journal.recordSubmitted("queued", payment("queued"));
+      advance(journal, "prepared", TransactionState.PREPARED);
+      advance(journal, "signed", TransactionState.APPROVED);
+      advance(journal, "sent", TransactionState.BROADCAST);
+      advance(journal, "rejected", TransactionState.FAILED);
+      advance(journal, "unsent", TransactionState.BROADCAST_FAILED);
+    }
+
+    try (TransactionJournal journal = open(SEGMENT_SIZE)) {
+      assertEquals(Arrays.asList("queued", "prepared", "signed", "unsent"),
+          new ArrayList<>(journal.getUnfinished().keySet()));
+      JournalEntry signed = journal.getUnfinished().get("signed");
+      assertEquals(TransactionState.APPROVED, signed.getState());
+      assertEquals("prepared-signed", signed.getPreparedTransaction());
+      assertEquals(Arrays.asList("signer1", "signer2"), signed.getSigners());
+      assertEquals("approved-signed", signed.getApprovedTransaction());
+      assertEquals("queued", journal.getUnfinished().get("queued").getRequest()
+          .getTransactionData());
+      assertEquals("approved-unsent",
+          journal.getUnfinished().get("unsent").getApprovedTransaction());
+    }
+    // Survives a second round of compaction on open
+    assertEquals(Arrays.asList("queued QUEUED", "prepared PREPARED", "signed APPROVED",
+        "unsent BROADCAST_FAILED"), unfinishedAfterReopen());
+  }
+
+  @Test
+  public void tornRecordAtTheEndIsIgnored() throws IOException {
+    try (TransactionJournal journal = open(SEGMENT_SIZE)) {
+      advance(journal, "a", TransactionState.PREPARED);
+      advance(journal, "b", TransactionState.APPROVED);
+    }
+    Path last = segments().get(segments().size() - 1);
+    // A header promising more than was written before the crash
+    Files.write(last, ByteBuffer.allocate(12).putInt(100).putInt(42).putInt(7).array(),
+        StandardOpenOption.APPEND);
+
+    assertEquals(Arrays.asList("a PREPARED", "b APPROVED"), unfinishedAfterReopen());
+  }
+
+  @Test
+  public void recordWithABadChecksumEndsTheSegment() throws IOException {
+    try (TransactionJournal journal = open(SEGMENT_SIZE)) {
+      advance(journal, "a", TransactionState.PREPARED);
+      journal.recordSubmitted("b", payment("b"));
+    }
+    Path last = segments().get(segments().size() - 1);
+    byte[] content = Files.readAllBytes(last);
+    content[content.length - 2] ^= 1;
+    Files.write(last, content);
+
+    assertEquals(Collections.singletonList("a PREPARED"), unfinishedAfterReopen());
+  }
+
+  @Test(timeout = 10000)
+  public void failedBatchIsCutOffTheSegment() throws IOException {
+    try (TransactionJournal journal = open(SEGMENT_SIZE)) {
+      journal.recordSubmitted("a", payment("a"));
+      failWrites = true;
+      try {
+        journal.recordSubmitted("b", payment("b"));
+        fail("Expected the write to fail");
+      } catch (IOException expected) {
+        // Half of the record reached the file
+      }
+      failWrites = false;
+      journal.recordSubmitted("c", payment("c"));
+    }
+
+    assertEquals(Arrays.asList("a QUEUED", "c QUEUED"), unfinishedAfterReopen());
+  }
+
+  @Test(timeout = 10000)
+  public void segmentThatCantBeCutIsReplaced() throws IOException {
+    try (TransactionJournal journal = open(SEGMENT_SIZE)) {
+      journal.recordSubmitted("a", payment("a"));
+      failWrites = true;
+      failTruncate = true;
+      try {
+        journal.recordSubmitted("b", payment("b"));
+        fail("Expected the write to fail");
+      } catch (IOException expected) {
+        // The partial record stays in a segment nothing else is written to
+      }
+      failWrites = false;
+      failTruncate = false;
+      journal.recordSubmitted("c", payment("c"));
+    }
+
+    assertEquals(Arrays.asList("a QUEUED", "c QUEUED"), unfinishedAfterReopen());
+  }
+
+  @Test(timeout = 10000)
+  public void failedRolloverFailsWritesUntilASegmentOpens() throws IOException {
+    // Every batch fills the segment and rolls over. The first open is the journal's own, the
+    // rollover after b fails and so does the retry for c.
+    failingOpens = Arrays.asList(3, 4);
+    try (TransactionJournal journal = open(1)) {
+      journal.recordSubmitted("a", payment("a"));
+      journal.recordSubmitted("b", payment("b"));
+      try {
+        journal.recordSubmitted("c", payment("c"));
+        fail("Expected the write to fail");
+      } catch (IOException expected) {
+        // Nowhere to write it
+      }
+      journal.recordSubmitted("d", payment("d"));
+    }
+    failingOpens = Collections.emptyList();
+
+    assertEquals(Arrays.asList("a QUEUED", "b QUEUED", "d QUEUED"), unfinishedAfterReopen());
+  }
+
+  @Test
+  public void rolloverCompactsToTheUnfinishedTransactions() throws IOException {
+    try (TransactionJournal journal = open(4096)) {
+      for (int i = 0; i < 300; i++) {
+        advance(journal, "tx" + i,
+            i % 100 == 0 ? TransactionState.APPROVED : TransactionState.BROADCAST);
+      }
+      // Far more was written than fits in a segment, only the last few are left
+      assertTrue(segments().size() <= 2);
+    }
+
+    assertEquals(Arrays.asList("tx0 APPROVED", "tx100 APPROVED", "tx200 APPROVED"),
+        unfinishedAfterReopen());
+  }
+
+  @Test(timeout = 20000)
+  public void writesRacingCloseNeverHang() throws Exception {
+    ExecutorService writers = Executors.newFixedThreadPool(8);
+    try {
+      for (int round = 0; round < 20; round++) {
+        TransactionJournal journal = open(SEGMENT_SIZE);
+        int journalRound = round;
+        List<Future<?>> running = new ArrayList<>();
+        for (int w = 0; w < 8; w++) {
+          int writer = w;
+          running.add(writers.submit(() -> {
+            for (int i = 0; ; i++) {
+              try {
+                journal.recordSubmitted(journalRound + "-" + writer + "-" + i, payment("x"));
+              } catch (IOException closed) {
+                return;
+              }
+            }
+          }));
+        }
+        Thread.sleep(5);
+        journal.close();
+        for (Future<?> writer : running) {
+          writer.get(5, TimeUnit.SECONDS);
+        }
+      }
+    } finally {
+      writers.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void resumeBroadcastsSignedTransactionsOnlyOnce() throws Exception {
+    try (TransactionJournal journal = open(SEGMENT_SIZE)) {
+      advance(journal, "signed", TransactionState.APPROVED);
+      advance(journal, "sent", TransactionState.BROADCAST);
+      advance(journal, "unsent", TransactionState.BROADCAST_FAILED);
+    }
+
+    List<String> calls = new CopyOnWriteArrayList<>();
+    CurrencyConnector connector = new CurrencyConnector() {
+      @Override
+      public String prepareTransaction(CurrencyParameters params) {
+        calls.add("prepare " + params.getTransactionData());
+        return params.getTransactionData();
+      }
+
+      @Override
+      public String approveTransaction(CurrencyParameters params) {
+        calls.add("approve " + params.getTransactionData());
+        return params.getTransactionData();
+      }
+
+      @Override
+      public String broadcastTransaction(CurrencyParameters params) {
+        calls.add("broadcast " + params.getTransactionData());
+        return "hash";
+      }
+    };
+    try (TransactionJournal journal = open(SEGMENT_SIZE);
+        TransactionWorkflow workflow = new TransactionWorkflow(connector, 2, 10, journal)) {
+      List<WorkflowTransaction> resumed = workflow.resume();
+      for (WorkflowTransaction transaction : resumed) {
+        transaction.getCompletion().get(5, TimeUnit.SECONDS);
+      }
+
+      assertEquals(Arrays.asList("signed", "unsent"),
+          resumed.stream().map(WorkflowTransaction::getId).collect(Collectors.toList()));
+      Collections.sort(calls);
+      assertEquals(Arrays.asList("broadcast approved-signed", "broadcast approved-unsent"), calls);
+    } finally {
+      connector.close();
+    }
+    assertTrue(unfinishedAfterReopen().isEmpty());
+  }
+
+  /**
+   * A segment file that fails on request, writing half of a buffer before a write fails.
+   */
+  private class FailingChannel extends FileChannel {
+    private final FileChannel file;
+
+    FailingChannel(FileChannel file) {
+      this.file = file;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      if (failWrites) {
+        ByteBuffer half = src.duplicate();
+        half.limit(half.position() + half.remaining() / 2);
+        file.write(half);
+        throw new IOException("Injected write failure");
+      }
+      return file.write(src);
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+      if (failTruncate) {
+        throw new IOException("Injected truncate failure");
+      }
+      file.truncate(size);
+      return this;
+    }
+
+    @Override
+    public long position() throws IOException {
+      return file.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+      file.position(newPosition);
+      return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+      file.force(metaData);
+    }
+
+    @Override
+    public long size() throws IOException {
+      return file.size();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      return file.read(dst);
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+      return file.read(dsts, offset, length);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+      throw new UncheckedIOException(new IOException("Not used by the journal"));
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target)
+        throws IOException {
+      return file.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count)
+        throws IOException {
+      return file.transferFrom(src, position, count);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+      return file.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) {
+      throw new UncheckedIOException(new IOException("Not used by the journal"));
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+      return file.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+      return file.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+      return file.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+      file.close();
+    }
+  }
+}
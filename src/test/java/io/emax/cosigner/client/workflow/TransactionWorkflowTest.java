@@ -0,0 +1,230 @@
+package io.emax.cosigner.client.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.emax.cosigner.api.core.CurrencyParameters;
+import io.emax.cosigner.client.TestConfiguration;
+import io.emax.cosigner.client.currency.CurrencyConnector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class TransactionWorkflowTest {
+  private static final long TIMEOUT = 10000;
+
+  private final List<String> calls = new CopyOnWriteArrayList<>();
+  private final Map<String, List<Long>> attempts = new ConcurrentHashMap<>();
+  private final Map<String, Integer> failuresLeft = new ConcurrentHashMap<>();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private TestConfiguration config;
+  private StubConnector connector;
+
+  /**
+   * Short retry delays so retries happen within the test.
+   */
+  @Before
+  public void setUp() throws Exception {
+    config = new TestConfiguration("workflowMaxRetries=2\nworkflowRetryDelay=100\n");
+    connector = new StubConnector();
+  }
+
+  /**
+   * Lets any held stage finish and restores the configuration.
+   */
+  @After
+  public void tearDown() throws Exception {
+    release.countDown();
+    connector.close();
+    config.close();
+  }
+
+  private static CurrencyParameters payment(String id) {
+    CurrencyParameters params = new CurrencyParameters();
+    params.setCurrencySymbol("BTC");
+    params.setAccount(Collections.singletonList("signer-" + id));
+    params.setTransactionData(id);
+    return params;
+  }
+
+  @Test
+  public void stagesRunInOrder() throws Exception {
+    try (TransactionWorkflow workflow = new TransactionWorkflow(connector, 2, 10)) {
+      WorkflowTransaction transaction = workflow.submit("tx", payment("tx"));
+
+      assertEquals(transaction, transaction.getCompletion().get(TIMEOUT, TimeUnit.MILLISECONDS));
+      assertEquals(Arrays.asList("prepare tx", "signers prepared-tx",
+          "approve signer-tx prepared-tx", "broadcast approved-prepared-tx"), calls);
+      assertEquals(TransactionState.BROADCAST, transaction.getState());
+      assertEquals("hash-approved-prepared-tx", transaction.getBroadcastResult());
+      assertEquals(null, workflow.getTransaction("tx"));
+    }
+  }
+
+  @Test
+  public void failedStageIsRetriedWithAGrowingDelay() throws Exception {
+    failuresLeft.put("prepare tx", 2);
+    try (TransactionWorkflow workflow = new TransactionWorkflow(connector, 2, 10)) {
+      WorkflowTransaction transaction = workflow.submit("tx", payment("tx"));
+      transaction.getCompletion().get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+      List<Long> prepares = attempts.get("prepare tx");
+      assertEquals(3, prepares.size());
+      // workflowRetryDelay times the attempt number
+      assertTrue(prepares.get(1) - prepares.get(0) >= TimeUnit.MILLISECONDS.toNanos(90));
+      assertTrue(prepares.get(2) - prepares.get(1) >= TimeUnit.MILLISECONDS.toNanos(190));
+      assertEquals(2, workflow.getRetried(TransactionStage.PREPARE));
+      assertEquals(1, workflow.getCompleted(TransactionStage.PREPARE));
+      assertEquals(0, workflow.getFailed(TransactionStage.PREPARE));
+    }
+  }
+
+  @Test
+  public void transactionFailsAfterTheLastRetry() throws Exception {
+    failuresLeft.put("approve tx", Integer.MAX_VALUE);
+    try (TransactionWorkflow workflow = new TransactionWorkflow(connector, 2, 10)) {
+      WorkflowTransaction transaction = workflow.submit("tx", payment("tx"));
+      try {
+        transaction.getCompletion().get(TIMEOUT, TimeUnit.MILLISECONDS);
+        fail("Expected the transaction to fail");
+      } catch (ExecutionException expected) {
+        // The stage's own error
+      }
+
+      assertEquals(3, attempts.get("approve tx").size());
+      assertEquals(TransactionState.FAILED, transaction.getState());
+      assertEquals(1, workflow.getFailed(TransactionStage.APPROVE));
+      assertEquals(0, workflow.getCompleted(TransactionStage.BROADCAST));
+      assertTrue(transaction.getError() != null);
+    }
+  }
+
+  @Test
+  public void failedBroadcastKeepsTheSignedTransaction() throws Exception {
+    failuresLeft.put("broadcast tx", Integer.MAX_VALUE);
+    try (TransactionWorkflow workflow = new TransactionWorkflow(connector, 2, 10)) {
+      WorkflowTransaction transaction = workflow.submit("tx", payment("tx"));
+      transaction.getCompletion().handle((result, error) -> null)
+          .get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+      assertEquals(TransactionState.BROADCAST_FAILED, transaction.getState());
+      assertEquals("approved-prepared-tx", transaction.getApprovedTransaction());
+    }
+  }
+
+  @Test
+  public void countersFollowEveryStage() throws Exception {
+    try (TransactionWorkflow workflow = new TransactionWorkflow(connector, 4, 5)) {
+      List<WorkflowTransaction> submitted = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        submitted.add(workflow.submit("tx" + i, payment("tx" + i)));
+      }
+      for (WorkflowTransaction transaction : submitted) {
+        transaction.getCompletion().get(TIMEOUT, TimeUnit.MILLISECONDS);
+      }
+
+      for (TransactionStage stage : TransactionStage.values()) {
+        assertEquals(stage.name(), 50, workflow.getCompleted(stage));
+        assertEquals(0, workflow.getRetried(stage));
+        assertEquals(0, workflow.getFailed(stage));
+        assertEquals(0, workflow.getQueueDepth(stage));
+        assertTrue(workflow.getThroughput(stage) > 0);
+      }
+      assertTrue(workflow.getTransactions().isEmpty());
+    }
+  }
+
+  @Test
+  public void retryIntoAFullStageDoesNotHoldUpOtherRetries() throws Exception {
+    // One worker and one queued transaction per stage
+    failuresLeft.put("broadcast retry", 1);
+    failuresLeft.put("prepare late", 1);
+    try (TransactionWorkflow workflow = new TransactionWorkflow(connector, 1, 1)) {
+      WorkflowTransaction retried = workflow.submit("retry", payment("retry"));
+      waitFor(() -> attempts.containsKey("broadcast retry"));
+
+      // Both held broadcasts fill the stage before the retry comes due
+      workflow.submit("held1", payment("held1"));
+      workflow.submit("held2", payment("held2"));
+      waitFor(() -> attempts.containsKey("broadcast held1")
+          && workflow.getQueueDepth(TransactionStage.BROADCAST) == 1);
+
+      WorkflowTransaction late = workflow.submit("late", payment("late"));
+      waitFor(() -> attempts.containsKey("prepare late")
+          && attempts.get("prepare late").size() == 2);
+
+      release.countDown();
+      retried.getCompletion().get(TIMEOUT, TimeUnit.MILLISECONDS);
+      late.getCompletion().get(TIMEOUT, TimeUnit.MILLISECONDS);
+      assertEquals(2, attempts.get("broadcast retry").size());
+    }
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Answers every stage locally, failing or holding the calls the test asks for.
+   */
+  private class StubConnector extends CurrencyConnector {
+    private String call(String stage, String id, String result) throws Exception {
+      String key = stage + " " + id;
+      attempts.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(System.nanoTime());
+      Integer left = failuresLeft.computeIfPresent(key, (k, count) -> count - 1);
+      if (left != null && left >= 0) {
+        throw new Exception("Stub failure of " + key);
+      }
+      if (stage.equals("broadcast") && id.startsWith("held")) {
+        // Longer than any wait in the tests, so a stalled workflow fails instead of recovering
+        release.await(6 * TIMEOUT, TimeUnit.MILLISECONDS);
+      }
+      return result;
+    }
+
+    @Override
+    public String prepareTransaction(CurrencyParameters params) throws Exception {
+      calls.add("prepare " + params.getTransactionData());
+      return call("prepare", params.getTransactionData(),
+          "prepared-" + params.getTransactionData());
+    }
+
+    @Override
+    public Iterable<String> getSignersForTransaction(CurrencyParameters params) {
+      calls.add("signers " + params.getTransactionData());
+      return Collections.emptyList();
+    }
+
+    @Override
+    public String approveTransaction(CurrencyParameters params) throws Exception {
+      String id = params.getTransactionData().substring("prepared-".length());
+      calls.add("approve " + params.getAccount().get(0) + " " + params.getTransactionData());
+      return call("approve", id, "approved-" + params.getTransactionData());
+    }
+
+    @Override
+    public String broadcastTransaction(CurrencyParameters params) throws Exception {
+      String id = params.getTransactionData().substring("approved-prepared-".length());
+      calls.add("broadcast " + params.getTransactionData());
+      return call("broadcast", id, "hash-" + params.getTransactionData());
+    }
+  }
+}